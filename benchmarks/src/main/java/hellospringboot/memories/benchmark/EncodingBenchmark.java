@@ -0,0 +1,92 @@
+package hellospringboot.memories.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryColumns;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialization cost of a {@code List<Memory>} response per format, with and without gzip. The bytes on the
+ * wire for each combination are printed once per trial, next to the timing they belong to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+	@Param({"json", "cbor", "smile", "columnar"})
+	private String format;
+
+	@Param({"false", "true"})
+	private boolean gzip;
+
+	@Param({"10", "1000", "100000"})
+	private int datasetSize;
+
+	private ObjectWriter writer;
+	private List<Memory> memories;
+
+	@Setup
+	public void setup() throws IOException {
+		ObjectMapper mapper;
+		switch (format) {
+			case "cbor":
+				mapper = new ObjectMapper(new CBORFactory());
+				break;
+			case "smile":
+				mapper = new ObjectMapper(new SmileFactory());
+				break;
+			default:
+				mapper = new ObjectMapper();
+		}
+		writer = mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, Memory.class));
+		memories = new ArrayList<>(datasetSize);
+		for (int i = 0; i < datasetSize; i++) {
+			Memory memory = MemoriesContext.memory(i);
+			memory.setId((long) i + 1);
+			memories.add(memory);
+		}
+		System.out.printf("%n%s%s, %d memories: %d bytes%n", format, gzip ? " + gzip" : "", datasetSize,
+				serialize().length);
+	}
+
+	@Benchmark
+	public byte[] serialize() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		// Tomcat hands the compressor whole buffers, not single bytes
+		try (OutputStream out = gzip ? new BufferedOutputStream(new GZIPOutputStream(bytes), 8192) : bytes) {
+			if ("columnar".equals(format)) {
+				MemoryColumns.write(memories, out);
+			} else {
+				writer.writeValue(out, memories);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+}
@@ -0,0 +1,54 @@
+package hellospringboot.memories.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import hellospringboot.memories.model.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+	@Param({"10", "1000", "100000"})
+	private int datasetSize;
+
+	private ObjectWriter writer;
+	private List<Memory> memories;
+
+	@Setup
+	public void setup() {
+		writer = new ObjectMapper().writerFor(new ObjectMapper().getTypeFactory()
+				.constructCollectionType(List.class, Memory.class));
+		memories = new ArrayList<>(datasetSize);
+		for (int i = 0; i < datasetSize; i++) {
+			Memory memory = MemoriesContext.memory(i);
+			memory.setId((long) i + 1);
+			memories.add(memory);
+		}
+	}
+
+	@Benchmark
+	public byte[] serializeList() throws JsonProcessingException {
+		return writer.writeValueAsBytes(memories);
+	}
+
+}
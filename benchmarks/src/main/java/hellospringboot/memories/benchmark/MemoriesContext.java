@@ -0,0 +1,65 @@
+package hellospringboot.memories.benchmark;
+
+import hellospringboot.memories.MemoriesApplication;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.service.MemoryService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Boots the application without a web server against a private in-memory H2 database and seeds it.
+ */
+final class MemoriesContext {
+
+	static final int[] SIZES = {512, 1024, 2048, 4096, 8192, 16384, 32768, 65536};
+
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	private static final int SEED_BATCH = 1000;
+
+	private MemoriesContext() {
+	}
+
+	static ConfigurableApplicationContext start(String... extraArgs) {
+		return new SpringApplicationBuilder(MemoriesApplication.class)
+				.web(WebApplicationType.NONE)
+				.run(arguments(extraArgs));
+	}
+
+	static String[] arguments(String... extraArgs) {
+		List<String> args = new ArrayList<>(List.of(
+				"--spring.datasource.driver-class-name=org.h2.Driver",
+				"--spring.datasource.url=jdbc:h2:mem:benchmark" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+				"--spring.datasource.username=sa",
+				"--spring.datasource.password=",
+				"--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+				"--logging.level.root=WARN"));
+		args.addAll(List.of(extraArgs));
+		return args.toArray(new String[0]);
+	}
+
+	static long[] seed(MemoryService service, int datasetSize) {
+		long[] ids = new long[datasetSize];
+		for (int from = 0; from < datasetSize; from += SEED_BATCH) {
+			List<Memory> batch = new ArrayList<>();
+			for (int i = from; i < Math.min(from + SEED_BATCH, datasetSize); i++) {
+				batch.add(memory(i));
+			}
+			service.createAll(batch);
+			for (int i = 0; i < batch.size(); i++) {
+				ids[from + i] = batch.get(i).getId();
+			}
+		}
+		return ids;
+	}
+
+	static Memory memory(int i) {
+		return new Memory("memory-" + i, SIZES[i % SIZES.length], i % 4 != 0);
+	}
+
+}
@@ -0,0 +1,74 @@
+package hellospringboot.memories.benchmark;
+
+import hellospringboot.memories.model.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryEqualityBenchmark {
+
+	@Param({"1000", "100000"})
+	private int datasetSize;
+
+	private Memory[] memories;
+	private Memory[] copies;
+
+	@Setup
+	public void setup() {
+		memories = new Memory[datasetSize];
+		copies = new Memory[datasetSize];
+		for (int i = 0; i < datasetSize; i++) {
+			memories[i] = MemoriesContext.memory(i);
+			memories[i].setId((long) i + 1);
+			copies[i] = new Memory(memories[i]);
+		}
+	}
+
+	@Benchmark
+	public int hashCodes() {
+		int result = 0;
+		for (Memory memory : memories) {
+			result += memory.hashCode();
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int equalsCopies() {
+		int equal = 0;
+		for (int i = 0; i < datasetSize; i++) {
+			if (memories[i].equals(copies[i])) {
+				equal++;
+			}
+		}
+		return equal;
+	}
+
+	@Benchmark
+	public Set<Memory> hashSet() {
+		Set<Memory> set = new HashSet<>(datasetSize * 2);
+		for (Memory memory : memories) {
+			set.add(memory);
+		}
+		return set;
+	}
+
+}
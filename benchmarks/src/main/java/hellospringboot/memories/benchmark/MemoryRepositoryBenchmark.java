@@ -0,0 +1,74 @@
+package hellospringboot.memories.benchmark;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.repository.MemoryRepository;
+import hellospringboot.memories.service.MemoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryRepositoryBenchmark {
+
+	@Param({"1000", "100000"})
+	private int datasetSize;
+
+	private ConfigurableApplicationContext context;
+	private MemoryRepository repository;
+	private long[] ids;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		context = MemoriesContext.start();
+		repository = context.getBean(MemoryRepository.class);
+		ids = MemoriesContext.seed(context.getBean(MemoryService.class), datasetSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Optional<Memory> findById() {
+		return repository.findById(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+	}
+
+	@Benchmark
+	public List<Memory> findBySizeGreaterThanEqualAndInStockIsTrue() {
+		return repository.findBySizeGreaterThanEqualAndInStockIsTrue(65536, Sort.by("size"));
+	}
+
+	@Benchmark
+	public List<Memory> findBySizeAndInStockIsTrue() {
+		return repository.findBySizeAndInStockIsTrue(8192);
+	}
+
+	@Benchmark
+	public List<Memory> findAll() {
+		return repository.findAll();
+	}
+
+}
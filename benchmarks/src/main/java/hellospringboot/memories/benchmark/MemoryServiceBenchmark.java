@@ -0,0 +1,73 @@
+package hellospringboot.memories.benchmark;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.service.MemoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryServiceBenchmark {
+
+	@Param({"1000", "100000"})
+	private int datasetSize;
+
+	private ConfigurableApplicationContext context;
+	private MemoryService service;
+	private long[] ids;
+	private final AtomicLong created = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		context = MemoriesContext.start();
+		service = context.getBean(MemoryService.class);
+		ids = MemoriesContext.seed(service, datasetSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Memory create() {
+		return service.create(new Memory("created-" + created.incrementAndGet(), 8192, true));
+	}
+
+	@Benchmark
+	public Memory findById() {
+		return service.findById(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+	}
+
+	@Benchmark
+	public List<Memory> findBySizeGreaterThanEqualAndInStockIsTrue() {
+		return service.findBySizeGreaterThanEqualAndInStockIsTrue(65536);
+	}
+
+	@Benchmark
+	public List<Memory> findAll() {
+		return service.findAll();
+	}
+
+}
@@ -0,0 +1,72 @@
+package hellospringboot.memories.benchmark;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.service.MemoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading the whole table as managed entities in a read-write transaction, as the list endpoints
+ * used to, with the read-only transaction and query hints they use now. The GC profiler's
+ * gc.alloc.rate.norm shows the heap churn per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadOnlyLoadingBenchmark {
+
+	@Param({"1000", "100000"})
+	private int datasetSize;
+
+	private ConfigurableApplicationContext context;
+	private MemoryService service;
+	private EntityManager entityManager;
+	private TransactionTemplate transaction;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		context = MemoriesContext.start();
+		service = context.getBean(MemoryService.class);
+		entityManager = context.getBean(EntityManager.class);
+		transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+		MemoriesContext.seed(service, datasetSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public List<Memory> managedFindAll() {
+		return transaction.execute(status ->
+				entityManager.createQuery("select m from Memory m", Memory.class).getResultList());
+	}
+
+	@Benchmark
+	public List<Memory> readOnlyFindAll() {
+		return service.findAll();
+	}
+
+}
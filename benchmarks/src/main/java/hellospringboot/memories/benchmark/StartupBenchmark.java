@@ -0,0 +1,87 @@
+package hellospringboot.memories.benchmark;
+
+import hellospringboot.memories.MemoriesApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from starting the application to the first answered {@code GET /memories}, one cold start per fork
+ * so class loading and an unwarmed JIT count as they do for a new pod. Run through {@link #main} it also
+ * fails when the fast-startup profile is slower than {@code -Dstartup.budget=<millis>}, which is how the
+ * {@code startup-guard} build profile catches regressions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class StartupBenchmark {
+
+	static final String FAST_STARTUP = "fast-startup";
+
+	@Param({"default", FAST_STARTUP})
+	private String profile;
+
+	private ConfigurableApplicationContext context;
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public int timeToFirstRequest() throws Exception {
+		context = new SpringApplicationBuilder(MemoriesApplication.class)
+				.run(MemoriesContext.arguments("--server.port=0", "--spring.profiles.active=" + profile));
+		int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/memories")
+				.openConnection();
+		int status = connection.getResponseCode();
+		try (InputStream body = connection.getInputStream()) {
+			body.readAllBytes();
+		}
+		if (status != 200) {
+			throw new IllegalStateException("First request answered with " + status);
+		}
+		return status;
+	}
+
+	public static void main(String[] args) throws Exception {
+		long budget = Long.getLong("startup.budget", 0);
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(new CommandLineOptions(args)).include(StartupBenchmark.class.getSimpleName());
+		boolean failed = false;
+		for (RunResult result : new Runner(options.build()).run()) {
+			double millis = result.getPrimaryResult().getScore();
+			if (budget > 0 && FAST_STARTUP.equals(result.getParams().getParam("profile")) && millis > budget) {
+				System.err.printf("Time to first request with %s was %.0f ms, over the %d ms budget%n",
+						FAST_STARTUP, millis, budget);
+				failed = true;
+			}
+		}
+		System.exit(failed ? 1 : 0);
+	}
+
+}
@@ -0,0 +1,67 @@
+package hellospringboot.memories.benchmark;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.service.MemoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent single creates, each in its own transaction or grouped by the write-behind queue. H2 commits
+ * without an fsync, so the gap against MySQL is larger than what this shows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+	@Param({"false", "true"})
+	private boolean writeBehind;
+
+	@Param({"100", "500"})
+	private int batchSize;
+
+	private final AtomicInteger titles = new AtomicInteger();
+
+	private ConfigurableApplicationContext context;
+	private MemoryService service;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		context = MemoriesContext.start("--memories.write-behind.enabled=" + writeBehind,
+				"--memories.write-behind.batch-size=" + batchSize,
+				"--memories.write-behind.max-delay=2ms");
+		service = context.getBean(MemoryService.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Memory create() {
+		int i = titles.incrementAndGet();
+		return service.create(new Memory("create-" + i, MemoriesContext.SIZES[i % MemoriesContext.SIZES.length], true));
+	}
+
+}
@@ -0,0 +1,169 @@
+package hellospringboot.memories.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency per operation in microseconds, kept twice: response time from when a request was due to be sent,
+ * which is what a user at the target rate would have waited, and service time from when it actually went
+ * out. The difference is the time requests spent queued behind slow ones, which a closed-loop test that only
+ * measures service time leaves out.
+ * <p>
+ * Recording happens on the client's threads; {@link #interval} moves what was recorded into the run totals
+ * and, per operation, into an HdrHistogram interval log.
+ */
+final class LatencyReport {
+
+	static final String ALL = "all";
+
+	private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+	private final Map<Operation, Recorder> responseRecorders = new EnumMap<>(Operation.class);
+	private final Map<Operation, Recorder> serviceRecorders = new EnumMap<>(Operation.class);
+	private final Map<Operation, Histogram> responseTimes = new EnumMap<>(Operation.class);
+	private final Map<Operation, Histogram> serviceTimes = new EnumMap<>(Operation.class);
+	private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+	private final Map<Operation, LongAdder> notFound = new EnumMap<>(Operation.class);
+	private final long recordFrom;
+
+	/**
+	 * @param recordFrom {@link System#nanoTime} before which requests are due during the warmup and ignored
+	 */
+	LatencyReport(Iterable<Operation> operations, long recordFrom) {
+		for (Operation operation : operations) {
+			responseRecorders.put(operation, new Recorder(HIGHEST_MICROS, 3));
+			serviceRecorders.put(operation, new Recorder(HIGHEST_MICROS, 3));
+			responseTimes.put(operation, new Histogram(HIGHEST_MICROS, 3));
+			serviceTimes.put(operation, new Histogram(HIGHEST_MICROS, 3));
+			errors.put(operation, new LongAdder());
+			notFound.put(operation, new LongAdder());
+		}
+		this.recordFrom = recordFrom;
+	}
+
+	/**
+	 * Records one finished request; {@code status} is 0 when no response came back.
+	 */
+	void record(Operation operation, long due, long sent, long done, int status) {
+		if (due < recordFrom) {
+			return;
+		}
+		responseRecorders.get(operation).recordValue(micros(done - due));
+		serviceRecorders.get(operation).recordValue(micros(done - sent));
+		if (status == 404 && operation.needsMemory()) {
+			// a delete got to the memory first
+			notFound.get(operation).increment();
+		} else if (status < 200 || status >= 300) {
+			errors.get(operation).increment();
+		}
+	}
+
+	/**
+	 * Adds what was recorded since the last call to the totals and writes it to {@code log}, one tagged
+	 * histogram of response times per operation.
+	 */
+	synchronized void interval(HistogramLogWriter log) {
+		responseRecorders.forEach((operation, recorder) -> {
+			Histogram interval = recorder.getIntervalHistogram();
+			interval.setTag(operation.getName());
+			responseTimes.get(operation).add(interval);
+			if (log != null && interval.getTotalCount() > 0) {
+				log.outputIntervalHistogram(interval);
+			}
+		});
+		serviceRecorders.forEach((operation, recorder) ->
+				serviceTimes.get(operation).add(recorder.getIntervalHistogram()));
+	}
+
+	/**
+	 * Prints a percentile table and writes, under {@code directory}: one row per operation appended to
+	 * {@code summary.csv}, so runs with different labels line up, and the full response time distribution of
+	 * each operation as {@code <label>-<operation>.hgrm}, which the HdrHistogram plotter reads.
+	 */
+	synchronized void write(String label, double seconds, Path directory, PrintStream out) {
+		interval(null);
+		Histogram allResponses = new Histogram(HIGHEST_MICROS, 3);
+		Histogram allServices = new Histogram(HIGHEST_MICROS, 3);
+		long allErrors = 0;
+		long allNotFound = 0;
+		StringBuilder csv = new StringBuilder();
+		String timestamp = Instant.now().toString();
+		out.printf("%-11s %9s %9s %7s %7s %9s %9s %9s %9s %9s %9s %12s%n", "operation", "count", "req/s",
+				"errors", "404s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "p99.99 ms", "max ms", "svc p99 ms");
+		for (Operation operation : responseTimes.keySet()) {
+			Histogram responses = responseTimes.get(operation);
+			Histogram services = serviceTimes.get(operation);
+			long operationErrors = errors.get(operation).sum();
+			long operationNotFound = notFound.get(operation).sum();
+			allResponses.add(responses);
+			allServices.add(services);
+			allErrors += operationErrors;
+			allNotFound += operationNotFound;
+			row(out, csv, label, timestamp, operation.getName(), responses, services, operationErrors,
+					operationNotFound, seconds);
+			distribution(directory.resolve(label + "-" + operation.getName() + ".hgrm"), responses);
+		}
+		row(out, csv, label, timestamp, ALL, allResponses, allServices, allErrors, allNotFound, seconds);
+		distribution(directory.resolve(label + "-" + ALL + ".hgrm"), allResponses);
+		try {
+			Path summary = directory.resolve("summary.csv");
+			if (Files.notExists(summary)) {
+				Files.writeString(summary, "label,timestamp,operation,count,throughput,errors,not_found,"
+						+ "p50_ms,p90_ms,p99_ms,p99_9_ms,p99_99_ms,max_ms,service_p99_ms" + System.lineSeparator());
+			}
+			Files.writeString(summary, csv, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void row(PrintStream out, StringBuilder csv, String label, String timestamp, String operation,
+							Histogram responses, Histogram services, long errors, long notFound, double seconds) {
+		double throughput = responses.getTotalCount() / seconds;
+		double[] millis = new double[PERCENTILES.length];
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			millis[i] = millis(responses.getValueAtPercentile(PERCENTILES[i]));
+		}
+		double max = millis(responses.getMaxValue());
+		double serviceP99 = millis(services.getValueAtPercentile(99));
+		out.printf("%-11s %9d %9.1f %7d %7d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f %12.3f%n", operation,
+				responses.getTotalCount(), throughput, errors, notFound, millis[0], millis[1], millis[2], millis[3],
+				millis[4], max, serviceP99);
+		csv.append(String.format(Locale.ROOT, "%s,%s,%s,%d,%.1f,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f%n",
+				label, timestamp, operation, responses.getTotalCount(), throughput, errors, notFound, millis[0],
+				millis[1], millis[2], millis[3], millis[4], max, serviceP99));
+	}
+
+	private static void distribution(Path file, Histogram histogram) {
+		try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+			histogram.outputPercentileDistribution(out, 1000.0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static long micros(long nanos) {
+		return Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_MICROS);
+	}
+
+	private static double millis(long micros) {
+		return micros / 1000.0;
+	}
+
+}
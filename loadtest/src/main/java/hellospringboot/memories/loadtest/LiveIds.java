@@ -0,0 +1,47 @@
+package hellospringboot.memories.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Ids of the memories that exist, as far as the load test knows, for gets, updates and deletes to pick from.
+ * Deletes take their id out before the request is sent so nothing else picks it afterwards; a get already in
+ * flight for it may still find it gone.
+ */
+final class LiveIds {
+
+	private long[] ids = new long[1024];
+	private int size;
+
+	synchronized void add(long id) {
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+		}
+		ids[size++] = id;
+	}
+
+	/**
+	 * A random id, or -1 when there is none.
+	 */
+	synchronized long pick(Random random) {
+		return size == 0 ? -1 : ids[random.nextInt(size)];
+	}
+
+	/**
+	 * Removes and returns a random id, or -1 when there is none.
+	 */
+	synchronized long take(Random random) {
+		if (size == 0) {
+			return -1;
+		}
+		int index = random.nextInt(size);
+		long id = ids[index];
+		ids[index] = ids[--size];
+		return id;
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+}
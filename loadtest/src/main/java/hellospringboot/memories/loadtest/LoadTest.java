@@ -0,0 +1,109 @@
+package hellospringboot.memories.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hellospringboot.memories.MemoriesApplication;
+import org.HdrHistogram.HistogramLogWriter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end load test of the memories api: starts the application on a random port against an in-memory H2
+ * database (or targets {@code --url}), seeds it, sends a weighted mix of requests at a fixed rate through
+ * {@link OpenLoopDriver}, and reports latency percentiles per operation through {@link LatencyReport}.
+ * Running each release with the same options and its own {@code --label} appends comparable rows to the
+ * same {@code summary.csv}.
+ */
+public class LoadTest {
+
+	public static void main(String[] args) throws Exception {
+		LoadTestOptions options;
+		try {
+			options = LoadTestOptions.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(LoadTestOptions.USAGE);
+			System.exit(2);
+			return;
+		}
+		ConfigurableApplicationContext context = options.url == null ? start(options) : null;
+		try {
+			URI base = URI.create(context == null ? options.url
+					: "http://localhost:" + context.getEnvironment().getRequiredProperty("local.server.port"));
+			run(options, base);
+		} finally {
+			if (context != null) {
+				context.close();
+			}
+		}
+		System.exit(0);
+	}
+
+	private static void run(LoadTestOptions options, URI base) throws Exception {
+		ExecutorService responses = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+				daemonThreads());
+		HttpClient client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofSeconds(10))
+				.executor(responses)
+				.build();
+		LiveIds ids = new LiveIds();
+		OpenLoopDriver driver = new OpenLoopDriver(client, base, new ObjectMapper(), ids, options);
+		driver.seed(options.dataset);
+
+		Files.createDirectories(options.report);
+		System.out.printf("%s: %.0f requests/s for %ss after a %ss warmup, mix %s, %d memories, against %s%n",
+				options.label, options.rate, options.duration.toSeconds(), options.warmup.toSeconds(), options.mix,
+				ids.size(), base);
+		long start = System.nanoTime();
+		long recordFrom = start + options.warmup.toNanos();
+		long end = recordFrom + options.duration.toNanos();
+		LatencyReport report = new LatencyReport(options.mix.keySet(), recordFrom);
+		try (PrintStream intervals = new PrintStream(
+				Files.newOutputStream(options.report.resolve(options.label + ".hlog")))) {
+			HistogramLogWriter log = new HistogramLogWriter(intervals);
+			long wallStart = System.currentTimeMillis();
+			log.outputStartTime(wallStart);
+			log.setBaseTime(wallStart);
+			log.outputLegend();
+			driver.run(options.rate, start, end, report, log);
+			report.write(options.label, options.duration.toNanos() / 1e9, options.report, System.out);
+		}
+		responses.shutdownNow();
+		System.out.println("Reports written to " + options.report.toAbsolutePath());
+	}
+
+	private static ConfigurableApplicationContext start(LoadTestOptions options) {
+		List<String> args = new ArrayList<>(List.of(
+				"--server.port=0",
+				"--spring.datasource.driver-class-name=org.h2.Driver",
+				"--spring.datasource.url=jdbc:h2:mem:loadtest;MODE=MySQL;DB_CLOSE_DELAY=-1",
+				"--spring.datasource.username=sa",
+				"--spring.datasource.password=",
+				"--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+				"--logging.level.root=WARN"));
+		args.addAll(options.applicationArgs);
+		return new SpringApplicationBuilder(MemoriesApplication.class).run(args.toArray(new String[0]));
+	}
+
+	private static ThreadFactory daemonThreads() {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, "loadtest-client-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+}
@@ -0,0 +1,110 @@
+package hellospringboot.memories.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line options of {@link LoadTest}, each given as {@code --name=value}.
+ */
+final class LoadTestOptions {
+
+	static final String USAGE = String.join(System.lineSeparator(),
+			"Options:",
+			"  --rate=500             requests per second, spread evenly over the run",
+			"  --duration=60s         measured time, after the warmup",
+			"  --warmup=10s           time at the same rate before recording starts",
+			"  --mix=create:10,get:60,size-range:15,update:10,delete:5",
+			"                         relative weight of each operation",
+			"  --connections=64       most requests in flight; later ones wait, and their wait counts",
+			"  --dataset=1000         memories created before the run",
+			"  --url=                 base url of a running instance instead of starting one on H2",
+			"  --label=memories       name of the run in summary.csv, e.g. the release",
+			"  --report=target/loadtest-report",
+			"                         directory for the summary, percentile and interval files",
+			"  --seed=42              seed for the operation and size choices",
+			"Options under memories., spring. and server. are passed to the application that is started.");
+
+	private static final List<String> APPLICATION_PREFIXES = List.of("memories.", "spring.", "server.");
+
+	private static final Set<String> KNOWN = Set.of("rate", "duration", "warmup", "mix", "connections", "dataset",
+			"url", "label", "report", "seed");
+
+	final double rate;
+	final Duration duration;
+	final Duration warmup;
+	final Map<Operation, Integer> mix;
+	final int connections;
+	final int dataset;
+	final String url;
+	final String label;
+	final Path report;
+	final long seed;
+	final List<String> applicationArgs;
+
+	private LoadTestOptions(Map<String, String> values, List<String> applicationArgs) {
+		rate = Double.parseDouble(values.getOrDefault("rate", "500"));
+		duration = duration(values.getOrDefault("duration", "60s"));
+		warmup = duration(values.getOrDefault("warmup", "10s"));
+		mix = mix(values.getOrDefault("mix", "create:10,get:60,size-range:15,update:10,delete:5"));
+		connections = Integer.parseInt(values.getOrDefault("connections", "64"));
+		dataset = Integer.parseInt(values.getOrDefault("dataset", "1000"));
+		url = values.get("url");
+		label = values.getOrDefault("label", "memories");
+		report = Paths.get(values.getOrDefault("report", "target/loadtest-report"));
+		seed = Long.parseLong(values.getOrDefault("seed", "42"));
+		this.applicationArgs = applicationArgs;
+		if (rate <= 0 || connections <= 0 || dataset < 0) {
+			throw new IllegalArgumentException("rate and connections must be positive, dataset not negative");
+		}
+	}
+
+	static LoadTestOptions parse(String... args) {
+		Map<String, String> values = new HashMap<>();
+		List<String> applicationArgs = new ArrayList<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (!arg.startsWith("--") || separator < 0) {
+				throw new IllegalArgumentException("Expected --name=value but got " + arg);
+			}
+			String name = arg.substring(2, separator);
+			if (APPLICATION_PREFIXES.stream().anyMatch(name::startsWith)) {
+				applicationArgs.add(arg);
+			} else if (KNOWN.contains(name)) {
+				values.put(name, arg.substring(separator + 1));
+			} else {
+				throw new IllegalArgumentException("Unknown option --" + name);
+			}
+		}
+		return new LoadTestOptions(values, applicationArgs);
+	}
+
+	private static Duration duration(String value) {
+		return Duration.parse("PT" + value.toUpperCase());
+	}
+
+	private static Map<Operation, Integer> mix(String value) {
+		Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+		for (String entry : value.split(",")) {
+			String[] parts = entry.split(":");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Expected operation:weight but got " + entry);
+			}
+			int weight = Integer.parseInt(parts[1].trim());
+			if (weight > 0) {
+				mix.put(Operation.fromName(parts[0].trim()), weight);
+			}
+		}
+		if (mix.isEmpty()) {
+			throw new IllegalArgumentException("The mix needs at least one operation with a positive weight");
+		}
+		return mix;
+	}
+
+}
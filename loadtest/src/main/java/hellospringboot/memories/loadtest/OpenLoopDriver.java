@@ -0,0 +1,195 @@
+package hellospringboot.memories.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hellospringboot.memories.model.Memory;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests on a fixed schedule, the n-th one due {@code n / rate} seconds after the start, whether or
+ * not earlier ones have been answered. Only the dispatching thread waits for the schedule; responses arrive
+ * on the client's threads. When {@code connections} requests are in flight the next one waits for a slot,
+ * but its latency is still counted from when it was due, so a stall shows up in every request it delayed
+ * instead of being hidden by sending fewer of them.
+ */
+final class OpenLoopDriver {
+
+	static final int[] SIZES = {512, 1024, 2048, 4096, 8192, 16384, 32768, 65536};
+
+	private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+	private final HttpClient client;
+	private final URI base;
+	private final ObjectMapper objectMapper;
+	private final LiveIds ids;
+	private final Random random;
+	private final Operation[] choices;
+	private final Semaphore slots;
+	private final int connections;
+	private final String titlePrefix = "load-" + System.currentTimeMillis() + "-";
+	private final AtomicLong titles = new AtomicLong();
+
+	OpenLoopDriver(HttpClient client, URI base, ObjectMapper objectMapper, LiveIds ids, LoadTestOptions options) {
+		this.client = client;
+		this.base = base;
+		this.objectMapper = objectMapper;
+		this.ids = ids;
+		this.random = new Random(options.seed);
+		this.choices = choices(options.mix);
+		this.connections = options.connections;
+		this.slots = new Semaphore(connections);
+	}
+
+	/**
+	 * Sends {@code rate} requests per second from {@code start} until {@code end}, both {@link System#nanoTime}
+	 * values, and waits for the last answers.
+	 */
+	void run(double rate, long start, long end, LatencyReport report, HistogramLogWriter log)
+			throws InterruptedException {
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "loadtest-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(() -> report.interval(log), 1, 1, TimeUnit.SECONDS);
+		double interval = TimeUnit.SECONDS.toNanos(1) / rate;
+		try {
+			for (long n = 0; ; n++) {
+				long due = start + (long) (n * interval);
+				if (due >= end) {
+					break;
+				}
+				long wait;
+				while ((wait = due - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+				slots.acquire();
+				send(choices[random.nextInt(choices.length)], due, report);
+			}
+			if (!slots.tryAcquire(connections, DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+				System.err.println("Gave up waiting for " + (connections - slots.availablePermits())
+						+ " requests still in flight");
+			}
+		} finally {
+			reporter.shutdownNow();
+		}
+	}
+
+	/**
+	 * Creates {@code count} memories through the batch endpoint and remembers their ids.
+	 */
+	void seed(int count) throws IOException, InterruptedException {
+		for (int from = 0; from < count; from += 500) {
+			Memory[] batch = new Memory[Math.min(500, count - from)];
+			for (int i = 0; i < batch.length; i++) {
+				batch[i] = memory();
+			}
+			HttpResponse<byte[]> response = client.send(json("POST", "/memories/batch", batch),
+					HttpResponse.BodyHandlers.ofByteArray());
+			if (response.statusCode() != 200) {
+				throw new IllegalStateException("Seeding answered with " + response.statusCode());
+			}
+			objectMapper.readTree(response.body()).path("items").forEach(item -> {
+				if (item.hasNonNull("id")) {
+					ids.add(item.get("id").asLong());
+				}
+			});
+		}
+	}
+
+	private void send(Operation chosen, long due, LatencyReport report) {
+		Operation operation = chosen;
+		long id = -1;
+		if (operation.needsMemory()) {
+			id = operation == Operation.DELETE ? ids.take(random) : ids.pick(random);
+			if (id < 0) {
+				// everything has been deleted; grow the data set back instead of asking for nothing
+				operation = Operation.CREATE;
+			}
+		}
+		HttpRequest request;
+		switch (operation) {
+			case CREATE:
+				request = json("POST", "/memories", memory());
+				break;
+			case GET:
+				request = HttpRequest.newBuilder(base.resolve("/memories/" + id)).GET().build();
+				break;
+			case SIZE_RANGE:
+				request = HttpRequest.newBuilder(base.resolve("/memories/greaterthanequal/" + size())).GET().build();
+				break;
+			case UPDATE:
+				request = json("PUT", "/memories/" + id, memory());
+				break;
+			default:
+				request = HttpRequest.newBuilder(base.resolve("/memories/" + id)).DELETE().build();
+		}
+		Operation sent = operation;
+		long sentAt = System.nanoTime();
+		client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, failure) -> {
+			long done = System.nanoTime();
+			slots.release();
+			int status = failure == null ? response.statusCode() : 0;
+			report.record(sent, due, sentAt, done, status);
+			if (sent == Operation.CREATE && status == 200) {
+				ids.add(createdId(response.body()));
+			}
+		});
+	}
+
+	private HttpRequest json(String method, String path, Object body) {
+		try {
+			return HttpRequest.newBuilder(base.resolve(path))
+					.header("Content-Type", "application/json")
+					.header("Accept", "application/json")
+					.method(method, HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+					.build();
+		} catch (JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private long createdId(byte[] body) {
+		try {
+			return objectMapper.readTree(body).get("id").asLong();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Memory memory() {
+		return new Memory(titlePrefix + titles.incrementAndGet(), size(), random.nextInt(4) != 0);
+	}
+
+	private int size() {
+		return SIZES[random.nextInt(SIZES.length)];
+	}
+
+	private static Operation[] choices(Map<Operation, Integer> mix) {
+		Operation[] choices = new Operation[mix.values().stream().mapToInt(Integer::intValue).sum()];
+		int next = 0;
+		for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+			for (int i = 0; i < entry.getValue(); i++) {
+				choices[next++] = entry.getKey();
+			}
+		}
+		return choices;
+	}
+
+}
@@ -0,0 +1,40 @@
+package hellospringboot.memories.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * The requests the load test sends, each recorded in a histogram of its own.
+ */
+enum Operation {
+
+	CREATE("create"),
+	GET("get"),
+	SIZE_RANGE("size-range"),
+	UPDATE("update"),
+	DELETE("delete");
+
+	private final String name;
+
+	Operation(String name) {
+		this.name = name;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Whether the request targets a memory that exists when it is sent.
+	 */
+	boolean needsMemory() {
+		return this == GET || this == UPDATE || this == DELETE;
+	}
+
+	static Operation fromName(String name) {
+		return Arrays.stream(values())
+				.filter(operation -> operation.name.equals(name))
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("Unknown operation " + name));
+	}
+
+}
@@ -0,0 +1,119 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Brings a {@code memory} table created by the former {@code ddl-auto=create} up to the V1 schema, which
+ * {@code create table if not exists} left alone: an auto-increment id, no {@code version} or {@code deleted}
+ * columns and no unique title. Ids now come from {@code memory_id_sequence}, so it is moved past the largest
+ * existing id. On a schema created by V1 every step finds nothing to do.
+ */
+public class V2__Adopt_legacy_memory_table extends BaseJavaMigration {
+
+    /**
+     * The {@code allocationSize} of {@code Memory}'s table generator, whose pooled optimizer hands out the
+     * block of ids ending at the stored value.
+     */
+    public static final long ID_ALLOCATION = 50;
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            if (connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql")) {
+                // MySQL5Dialect created MyISAM tables, which ignore transactions and row locks
+                try (ResultSet engine = statement.executeQuery("select engine from information_schema.tables "
+                        + "where table_schema = database() and table_name = 'memory'")) {
+                    if (engine.next() && !"InnoDB".equalsIgnoreCase(engine.getString(1))) {
+                        statement.execute("alter table memory engine = InnoDB");
+                    }
+                }
+            }
+            List<String> columns = columns(statement);
+            if (!columns.contains("version")) {
+                statement.execute("alter table memory add column version bigint not null default 0");
+            }
+            if (!columns.contains("deleted")) {
+                statement.execute("alter table memory add column deleted boolean not null default false");
+            }
+            if (!hasUniqueTitle(connection)) {
+                statement.execute("alter table memory add constraint uk_memory_title unique (title)");
+            }
+        }
+        moveIdSequence(connection);
+    }
+
+    private static List<String> columns(Statement statement) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (ResultSet rows = statement.executeQuery("select * from memory where 1 = 0")) {
+            for (int i = 1; i <= rows.getMetaData().getColumnCount(); i++) {
+                columns.add(rows.getMetaData().getColumnName(i).toLowerCase(Locale.ROOT));
+            }
+        }
+        return columns;
+    }
+
+    private static boolean hasUniqueTitle(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String table = metaData.storesUpperCaseIdentifiers() ? "MEMORY" : "memory";
+        Map<String, List<String>> uniqueIndexes = new HashMap<>();
+        try (ResultSet rows = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(), table, true,
+                false)) {
+            while (rows.next()) {
+                if (rows.getString("INDEX_NAME") != null && rows.getString("COLUMN_NAME") != null) {
+                    uniqueIndexes.computeIfAbsent(rows.getString("INDEX_NAME"), name -> new ArrayList<>())
+                            .add(rows.getString("COLUMN_NAME").toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return uniqueIndexes.values().stream().anyMatch(columns -> columns.size() == 1 && columns.contains("title"));
+    }
+
+    private static void moveIdSequence(Connection connection) throws SQLException {
+        long maxId;
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("select max(id) from memory")) {
+            rows.next();
+            maxId = rows.getLong(1);
+            if (rows.wasNull()) {
+                return;
+            }
+        }
+        // the first block handed out ends at the stored value, so it must start after the largest id
+        long next = maxId + ID_ALLOCATION + 1;
+        Long stored = null;
+        try (PreparedStatement select = connection.prepareStatement(
+                "select next_val from memory_id_sequence where sequence_name = 'memory'");
+             ResultSet rows = select.executeQuery()) {
+            if (rows.next()) {
+                stored = rows.getLong(1);
+            }
+        }
+        if (stored == null) {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "insert into memory_id_sequence (sequence_name, next_val) values ('memory', ?)")) {
+                insert.setLong(1, next);
+                insert.executeUpdate();
+            }
+        } else if (stored < next) {
+            try (PreparedStatement update = connection.prepareStatement(
+                    "update memory_id_sequence set next_val = ? where sequence_name = 'memory'")) {
+                update.setLong(1, next);
+                update.executeUpdate();
+            }
+        }
+    }
+}
@@ -3,15 +3,29 @@ package hellospringboot.memories;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableJpaRepositories("hellospringboot.memories.repository")
 @EntityScan("hellospringboot.memories.model")
 @SpringBootApplication
+@EnableScheduling
 public class MemoriesApplication {
 
+	// enough for every bean instantiation step, which is what the startup report ranks
+	static final int STARTUP_STEPS = 4096;
+
 	public static void main(String[] args) {
-		SpringApplication.run(MemoriesApplication.class, args);
+		SpringApplication application = new SpringApplication(MemoriesApplication.class);
+		application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS));
+		ConfigurableApplicationContext context = application.run(args);
+		if (context.getBean(MemoryTransferRunner.class).isTransferred()
+				|| context.getBean(StartupReport.class).isExitAfterReady()) {
+			// a command line transfer or a startup training run is all this run was for
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 
 }
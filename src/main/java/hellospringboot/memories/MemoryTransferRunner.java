@@ -0,0 +1,73 @@
+package hellospringboot.memories;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import hellospringboot.memories.model.MemoryTransferResult;
+import hellospringboot.memories.service.MemoryTransfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs a bulk import, export or both from the command line and exits, for example
+ * {@code java -jar memories.jar --spring.main.web-application-type=none --export=memories.csv}.
+ * The format follows the file extension, {@code .csv} or {@code .ndjson}. {@link MemoriesApplication} exits once
+ * the transfer is done, with 1 when any row was rejected.
+ */
+@Component
+public class MemoryTransferRunner implements ApplicationRunner, ExitCodeGenerator {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MemoryTransferRunner.class);
+
+	// resolved only when a transfer runs, so the service layer can stay lazy in the fast-startup profile
+	private final ObjectProvider<MemoryTransfer> transfer;
+
+	private volatile boolean transferred;
+
+	private volatile int exitCode;
+
+	public MemoryTransferRunner(ObjectProvider<MemoryTransfer> transfer) {
+		this.transfer = transfer;
+	}
+
+	public boolean isTransferred() {
+		return transferred;
+	}
+
+	@Override
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) throws Exception {
+		Path importFile = file(args, "import");
+		Path exportFile = file(args, "export");
+		if (importFile == null && exportFile == null) {
+			return;
+		}
+		long rejected = 0;
+		if (importFile != null) {
+			MemoryTransferResult result = transfer.getObject().importFrom(importFile);
+			rejected = result.getRejected();
+			result.getErrors().forEach(LOGGER::warn);
+		}
+		if (exportFile != null) {
+			transfer.getObject().exportTo(exportFile);
+		}
+		exitCode = rejected == 0 ? 0 : 1;
+		transferred = true;
+	}
+
+	private static Path file(ApplicationArguments args, String option) {
+		List<String> values = args.getOptionValues(option);
+		return values == null || values.isEmpty() ? null : Paths.get(values.get(0));
+	}
+
+}
@@ -0,0 +1,163 @@
+package hellospringboot.memories;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports how long startup took: each top level phase and the slowest beans once the application is ready,
+ * then how long after JVM start the first memory request was answered, which is what an autoscaled pod
+ * waits for. Phases are only known when the {@link BufferingApplicationStartup} set up by
+ * {@link MemoriesApplication} is in use; the full timeline is served by the actuator {@code startup} endpoint.
+ */
+@Component
+public class StartupReport implements Filter, MeterBinder {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StartupReport.class);
+
+	private static final String BEAN_STEP = "spring.beans.instantiate";
+
+	private final ConfigurableApplicationContext context;
+
+	private final int slowestBeans;
+
+	private final boolean exitAfterReady;
+
+	private final AtomicBoolean firstRequest = new AtomicBoolean();
+
+	private volatile long readyMillis = -1;
+
+	private volatile long firstRequestMillis = -1;
+
+	public StartupReport(ConfigurableApplicationContext context,
+						 @Value("${memories.startup.slowest-beans:5}") int slowestBeans,
+						 @Value("${memories.startup.exit-after-ready:false}") boolean exitAfterReady) {
+		this.context = context;
+		this.slowestBeans = slowestBeans;
+		this.exitAfterReady = exitAfterReady;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void ready() {
+		readyMillis = uptimeMillis();
+		ApplicationStartup startup = context.getApplicationStartup();
+		if (startup instanceof BufferingApplicationStartup) {
+			StartupTimeline timeline = ((BufferingApplicationStartup) startup).getBufferedTimeline();
+			LOGGER.info("Startup phases: {}", phases(timeline));
+			LOGGER.info("Slowest beans, including their dependencies: {}", slowestBeans(timeline));
+		}
+		LOGGER.info("Ready {} ms after JVM start", readyMillis);
+	}
+
+	/**
+	 * Whether {@link MemoriesApplication} should exit once ready, as a training run for the class data sharing
+	 * archive only needs the classes loaded so far.
+	 */
+	public boolean isExitAfterReady() {
+		return exitAfterReady;
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		chain.doFilter(request, response);
+		if (!firstRequest.get() && isMemoryRequest(request) && firstRequest.compareAndSet(false, true)) {
+			firstRequestMillis = uptimeMillis();
+			LOGGER.info("First memory request answered {} ms after JVM start", firstRequestMillis);
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		TimeGauge.builder("memories.startup.ready", this, TimeUnit.MILLISECONDS, report -> known(report.readyMillis))
+				.description("Time from JVM start until the application was ready")
+				.register(registry);
+		TimeGauge.builder("memories.startup.first-request", this, TimeUnit.MILLISECONDS,
+						report -> known(report.firstRequestMillis))
+				.description("Time from JVM start until the first memory request was answered")
+				.register(registry);
+	}
+
+	long getReadyMillis() {
+		return readyMillis;
+	}
+
+	long getFirstRequestMillis() {
+		return firstRequestMillis;
+	}
+
+	private static String phases(StartupTimeline timeline) {
+		StringJoiner phases = new StringJoiner(", ");
+		for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+			if (event.getStartupStep().getParentId() == null) {
+				phases.add(event.getStartupStep().getName() + " " + event.getDuration().toMillis() + " ms");
+			}
+		}
+		return phases.toString();
+	}
+
+	private String slowestBeans(StartupTimeline timeline) {
+		List<StartupTimeline.TimelineEvent> beans = new ArrayList<>();
+		for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+			if (BEAN_STEP.equals(event.getStartupStep().getName())) {
+				beans.add(event);
+			}
+		}
+		beans.sort(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed());
+		StringJoiner slowest = new StringJoiner(", ");
+		for (StartupTimeline.TimelineEvent event : beans.subList(0, Math.min(slowestBeans, beans.size()))) {
+			slowest.add(beanName(event) + " " + event.getDuration().toMillis() + " ms");
+		}
+		return slowest.toString();
+	}
+
+	private static String beanName(StartupTimeline.TimelineEvent event) {
+		for (StartupStep.Tag tag : event.getStartupStep().getTags()) {
+			if ("beanName".equals(tag.getKey())) {
+				return tag.getValue();
+			}
+		}
+		return "?";
+	}
+
+	private static boolean isMemoryRequest(ServletRequest request) {
+		return request instanceof HttpServletRequest
+				&& ((HttpServletRequest) request).getServletPath().startsWith("/memories");
+	}
+
+	private static double known(long millis) {
+		return millis < 0 ? Double.NaN : millis;
+	}
+
+	private static long uptimeMillis() {
+		return ManagementFactory.getRuntimeMXBean().getUptime();
+	}
+
+}
@@ -0,0 +1,116 @@
+package hellospringboot.memories.controller;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit adjusted by additive increase, multiplicative decrease. Latencies are collected over a
+ * short window; when more than {@link #SLOW_FRACTION} of a window missed the latency target the limit is
+ * cut by {@code backoffRatio}, otherwise it grows by one if the window came close to using it.
+ */
+public class AdaptiveLimit {
+
+	static final double SLOW_FRACTION = 0.05;
+
+	private final String name;
+	private final int minLimit;
+	private final int maxLimit;
+	private final long targetNanos;
+	private final long windowNanos;
+	private final double backoffRatio;
+	private final LongSupplier clock;
+	private final AtomicInteger inflight = new AtomicInteger();
+	private final LongAdder rejected = new LongAdder();
+
+	private volatile int limit;
+
+	private long windowStart;
+	private int windowSamples;
+	private int windowSlow;
+	private int windowMaxInflight;
+
+	public AdaptiveLimit(String name, int minLimit, int maxLimit, Duration latencyTarget, Duration window,
+						 double backoffRatio) {
+		this(name, minLimit, maxLimit, latencyTarget, window, backoffRatio, System::nanoTime);
+	}
+
+	AdaptiveLimit(String name, int minLimit, int maxLimit, Duration latencyTarget, Duration window,
+				  double backoffRatio, LongSupplier clock) {
+		this.name = name;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.targetNanos = latencyTarget.toNanos();
+		this.windowNanos = window.toNanos();
+		this.backoffRatio = backoffRatio;
+		this.clock = clock;
+		this.windowStart = clock.getAsLong();
+		this.limit = Math.max(minLimit, maxLimit / 2);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getInflight() {
+		return inflight.get();
+	}
+
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Takes a slot without waiting, returning false when the limit is reached.
+	 */
+	public boolean tryAcquire() {
+		while (true) {
+			int current = inflight.get();
+			if (current >= limit) {
+				rejected.increment();
+				return false;
+			}
+			if (inflight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Frees a slot taken by {@link #tryAcquire}. Only requests whose latency reflects the backend should
+	 * pass a sample; long streaming responses release with {@code latencyNanos} of -1.
+	 */
+	public void release(long latencyNanos) {
+		int current = inflight.getAndDecrement();
+		if (latencyNanos >= 0) {
+			sample(latencyNanos, current);
+		}
+	}
+
+	private synchronized void sample(long latencyNanos, int inflightBefore) {
+		windowSamples++;
+		if (latencyNanos > targetNanos) {
+			windowSlow++;
+		}
+		windowMaxInflight = Math.max(windowMaxInflight, inflightBefore);
+		long now = clock.getAsLong();
+		if (now - windowStart < windowNanos) {
+			return;
+		}
+		int current = limit;
+		if (windowSlow > windowSamples * SLOW_FRACTION) {
+			limit = Math.max(minLimit, (int) (current * backoffRatio));
+		} else if (windowMaxInflight * 2 >= current) {
+			limit = Math.min(maxLimit, current + 1);
+		}
+		windowStart = now;
+		windowSamples = 0;
+		windowSlow = 0;
+		windowMaxInflight = 0;
+	}
+}
@@ -0,0 +1,118 @@
+package hellospringboot.memories.controller;
+
+import java.time.Duration;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import hellospringboot.memories.exception.MemoryBusyException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Sheds load on the memory endpoints before it reaches the connection pool. Reads and writes have their
+ * own {@link AdaptiveLimit}; a request over the limit fails straight away with 503 and Retry-After instead
+ * of queueing behind a slow database.
+ */
+@Component
+public class ConcurrencyLimitInterceptor implements AsyncHandlerInterceptor, WebMvcConfigurer, MeterBinder {
+
+	private static final String ACQUIRED = ConcurrencyLimitInterceptor.class.getName() + ".acquired";
+
+	private static final String STARTED = ConcurrencyLimitInterceptor.class.getName() + ".started";
+
+	private final boolean enabled;
+	private final AdaptiveLimit reads;
+	private final AdaptiveLimit writes;
+	private final Duration retryAfter;
+
+	public ConcurrencyLimitInterceptor(@Value("${memories.limiter.enabled:false}") boolean enabled,
+									   @Value("${memories.limiter.min-limit:2}") int minLimit,
+									   @Value("${memories.limiter.read.max-limit:200}") int readMaxLimit,
+									   @Value("${memories.limiter.read.latency-target:100ms}") Duration readTarget,
+									   @Value("${memories.limiter.write.max-limit:50}") int writeMaxLimit,
+									   @Value("${memories.limiter.write.latency-target:200ms}") Duration writeTarget,
+									   @Value("${memories.limiter.window:100ms}") Duration window,
+									   @Value("${memories.limiter.backoff-ratio:0.9}") double backoffRatio,
+									   @Value("${memories.limiter.retry-after:1s}") Duration retryAfter) {
+		this.enabled = enabled;
+		this.reads = new AdaptiveLimit("read", minLimit, readMaxLimit, readTarget, window, backoffRatio);
+		this.writes = new AdaptiveLimit("write", minLimit, writeMaxLimit, writeTarget, window, backoffRatio);
+		this.retryAfter = retryAfter;
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		if (enabled) {
+			// a change feed subscription stays open for as long as the client listens
+			registry.addInterceptor(this).addPathPatterns("/memories", "/memories/**")
+					.excludePathPatterns("/memories/changes");
+		}
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (request.getDispatcherType() == DispatcherType.ASYNC) {
+			// the slot taken by the original dispatch is still held
+			return true;
+		}
+		AdaptiveLimit limit = limitFor(request);
+		if (!limit.tryAcquire()) {
+			throw new MemoryBusyException("Too many concurrent " + limit.getName() + " requests", retryAfter);
+		}
+		request.setAttribute(ACQUIRED, limit);
+		request.setAttribute(STARTED, System.nanoTime());
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+											   Object handler) {
+		// a streamed response runs as long as the client reads, so its latency says nothing about the backend
+		request.removeAttribute(STARTED);
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+								Exception exception) {
+		AdaptiveLimit limit = (AdaptiveLimit) request.getAttribute(ACQUIRED);
+		if (limit == null) {
+			return;
+		}
+		request.removeAttribute(ACQUIRED);
+		Long started = (Long) request.getAttribute(STARTED);
+		limit.release(started == null ? -1 : System.nanoTime() - started);
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (AdaptiveLimit limit : new AdaptiveLimit[]{reads, writes}) {
+			Gauge.builder("memories.limiter.limit", limit, AdaptiveLimit::getLimit)
+					.description("Current concurrency limit")
+					.tag("kind", limit.getName())
+					.register(registry);
+			Gauge.builder("memories.limiter.inflight", limit, AdaptiveLimit::getInflight)
+					.description("Requests holding a slot")
+					.tag("kind", limit.getName())
+					.register(registry);
+			FunctionCounter.builder("memories.limiter.rejected", limit, AdaptiveLimit::getRejected)
+					.description("Requests rejected with 503 because the limit was reached")
+					.tag("kind", limit.getName())
+					.register(registry);
+		}
+	}
+
+	AdaptiveLimit limitFor(HttpServletRequest request) {
+		HttpMethod method = HttpMethod.resolve(request.getMethod());
+		return method == HttpMethod.GET || method == HttpMethod.HEAD ? reads : writes;
+	}
+}
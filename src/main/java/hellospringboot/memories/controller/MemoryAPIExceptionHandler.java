@@ -1,24 +1,48 @@
 package hellospringboot.memories.controller;
 
+import hellospringboot.memories.exception.MemoryBusyException;
+import hellospringboot.memories.exception.MemoryConflictException;
 import hellospringboot.memories.exception.MemoryNotCreateException;
 import hellospringboot.memories.exception.MemoryNotFoundException;
+import org.springframework.boot.web.servlet.error.ErrorAttributes;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 @ControllerAdvice
 public class MemoryAPIExceptionHandler {
 
     @ExceptionHandler(MemoryNotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
-    String memoryNotFoundHandler(MemoryNotFoundException exception){
+    String memoryNotFoundHandler(MemoryNotFoundException exception, HttpServletRequest request){
+        request.setAttribute(ErrorAttributes.ERROR_ATTRIBUTE, exception);
         return exception.getMessage();
     }
 
     @ExceptionHandler(MemoryNotCreateException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
-    String memoryNotCreateHandler(MemoryNotCreateException exception) {
+    String memoryNotCreateHandler(MemoryNotCreateException exception, HttpServletRequest request) {
+        request.setAttribute(ErrorAttributes.ERROR_ATTRIBUTE, exception);
+        return exception.getMessage();
+    }
+
+    @ExceptionHandler(MemoryConflictException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    String memoryConflictHandler(MemoryConflictException exception, HttpServletRequest request) {
+        request.setAttribute(ErrorAttributes.ERROR_ATTRIBUTE, exception);
+        return exception.getMessage();
+    }
+
+    @ExceptionHandler(MemoryBusyException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    String memoryBusyHandler(MemoryBusyException exception, HttpServletRequest request, HttpServletResponse response) {
+        request.setAttribute(ErrorAttributes.ERROR_ATTRIBUTE, exception);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, exception.getRetryAfter().getSeconds())));
         return exception.getMessage();
     }
 
@@ -0,0 +1,83 @@
+package hellospringboot.memories.controller;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryColumns;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * Writes {@code List<Memory>} responses as {@link MemoryColumns} for clients that accept
+ * {@code application/vnd.memories.columnar}. Only responses are encoded; requests stay JSON, CBOR or Smile.
+ * Registered by {@link MemoryMessageConverters} rather than as a bean, which would put it ahead of JSON.
+ */
+public class MemoryColumnsHttpMessageConverter extends AbstractGenericHttpMessageConverter<List<Memory>> {
+
+	private static final ResolvableType MEMORY_LIST = ResolvableType.forClassWithGenerics(List.class, Memory.class);
+
+	public MemoryColumnsHttpMessageConverter() {
+		super(MemoryColumns.MEDIA_TYPE);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return List.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+		if (type == null || !MEMORY_LIST.isAssignableFrom(ResolvableType.forType(type))) {
+			return false;
+		}
+		return canWrite(mediaType);
+	}
+
+	@Override
+	public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+		// without the generic type there is no telling what the list holds
+		return false;
+	}
+
+	@Override
+	public List<MediaType> getSupportedMediaTypes(Class<?> clazz) {
+		return supports(clazz) ? getSupportedMediaTypes() : Collections.emptyList();
+	}
+
+	@Override
+	protected void writeInternal(List<Memory> memories, Type type, HttpOutputMessage outputMessage)
+			throws IOException {
+		// the encoding is compact enough to buffer, and a known length lets the compression threshold apply
+		byte[] body = MemoryColumns.encode(memories);
+		outputMessage.getHeaders().setContentLength(body.length);
+		outputMessage.getBody().write(body);
+	}
+
+	@Override
+	public List<Memory> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+		throw new HttpMessageNotReadableException("Columnar memories are only written", inputMessage);
+	}
+
+	@Override
+	protected List<Memory> readInternal(Class<? extends List<Memory>> clazz, HttpInputMessage inputMessage) {
+		throw new HttpMessageNotReadableException("Columnar memories are only written", inputMessage);
+	}
+
+}
@@ -1,18 +1,60 @@
 package hellospringboot.memories.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import hellospringboot.memories.exception.MemoryConflictException;
+import hellospringboot.memories.service.MemoryChangeCounter;
+import hellospringboot.memories.service.MemoryChangeFeed;
 import hellospringboot.memories.service.MemoryService;
+import hellospringboot.memories.service.MemoryTransfer;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryBatchResult;
+import hellospringboot.memories.model.MemoryChange;
+import hellospringboot.memories.model.MemoryFormat;
+import hellospringboot.memories.model.MemoryPatch;
+import hellospringboot.memories.model.MemoryStats;
+import hellospringboot.memories.model.MemoryTransferResult;
+import org.springframework.http.ContentDisposition;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 @RestController
 @RequestMapping("/memories")
+@Timed(histogram = true, percentiles = {0.5, 0.95, 0.99})
 public class MemoryController {
 
 	private MemoryService service;
 
-	public MemoryController(MemoryService service) {
+	private MemoryChangeCounter changes;
+
+	private MemoryTransfer transfer;
+
+	private ObjectMapper objectMapper;
+
+	private MemoryChangeFeed feed;
+
+	public MemoryController(MemoryService service, MemoryChangeCounter changes, MemoryTransfer transfer,
+							ObjectMapper objectMapper, MemoryChangeFeed feed) {
 		this.service = service;
+		this.changes = changes;
+		this.transfer = transfer;
+		this.objectMapper = objectMapper;
+		this.feed = feed;
 	}
 
 	@PostMapping
@@ -20,34 +62,231 @@ public class MemoryController {
 		return service.create(memory);
 	}
 
+	@PostMapping("/batch")
+	public MemoryBatchResult createAll(@RequestBody List<Memory> memories) {
+		return service.createAll(memories);
+	}
+
 	@DeleteMapping("/{id}")
 	public void delete(@PathVariable Long id){
 		service.delete(id);
 	}
 
+	@DeleteMapping(params = "ids")
+	public int deleteAll(@RequestParam List<Long> ids) {
+		return service.deleteAll(ids);
+	}
+
+	@DeleteMapping(params = "inStock")
+	public int deleteAll(@RequestParam boolean inStock, @RequestParam(required = false) Integer size) {
+		return service.deleteAll(inStock, size);
+	}
+
 	@GetMapping
-	public List<Memory> findAll() {
-		return service.findAll();
+	public ResponseEntity<List<Memory>> findAll(WebRequest request) {
+		return conditional(request, service::findAll);
+	}
+
+	/**
+	 * The memories with the given ids, in the order asked for; unknown ids are left out.
+	 */
+	@GetMapping(params = "ids")
+	public ResponseEntity<List<Memory>> findAllById(@RequestParam List<Long> ids, WebRequest request) {
+		if (ids.size() > MemoryService.MAX_PAGE_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"At most " + MemoryService.MAX_PAGE_SIZE + " ids per request");
+		}
+		return conditional(request, () -> service.findAllById(ids));
+	}
+
+	@GetMapping(params = "limit")
+	public ResponseEntity<List<Memory>> findAll(@RequestParam(required = false) Long after, @RequestParam int limit,
+												WebRequest request) {
+		if (notModified(request)) {
+			return null;
+		}
+		List<Memory> memories = service.findAll(after, limit);
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if (!memories.isEmpty() && memories.size() >= Math.min(limit, MemoryService.MAX_PAGE_SIZE)) {
+			String next = ServletUriComponentsBuilder.fromCurrentRequest()
+					.replaceQueryParam("after", memories.get(memories.size() - 1).getId())
+					.toUriString();
+			response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+		}
+		return response.body(memories);
+	}
+
+	@GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> streamAll() {
+		StreamingResponseBody body = outputStream -> {
+			try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(outputStream)) {
+				service.streamAll(memory -> {
+					try {
+						writer.write(memory);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			}
+		};
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+	}
+
+	/**
+	 * Server-sent events for every committed change, named created, updated or deleted. A reconnecting client
+	 * resumes through the Last-Event-ID header, or {@code after}; a reset event means changes were missed and
+	 * the client should reload before carrying on.
+	 */
+	@GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter changes(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+							  @RequestParam(required = false) String after) {
+		if (!feed.isEnabled()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The change feed is disabled");
+		}
+		SseEmitter emitter = new SseEmitter(feed.getTimeout().toMillis());
+		MemoryChangeFeed.Subscription subscription = feed.subscribe(lastEventId != null ? lastEventId : after,
+				new SseSubscriber(emitter));
+		emitter.onCompletion(subscription::cancel);
+		emitter.onTimeout(subscription::cancel);
+		emitter.onError(error -> subscription.cancel());
+		return emitter;
+	}
+
+	@GetMapping("/export")
+	public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "NDJSON") MemoryFormat format) {
+		ContentDisposition attachment = ContentDisposition.attachment()
+				.filename("memories" + format.getExtension()).build();
+		return ResponseEntity.ok()
+				.contentType(format.getMediaType())
+				.header(HttpHeaders.CONTENT_DISPOSITION, attachment.toString())
+				.body(outputStream -> transfer.export(format, outputStream));
+	}
+
+	@PostMapping(value = "/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+	public MemoryTransferResult importAll(HttpServletRequest request) throws IOException {
+		MemoryFormat format = MemoryFormat.fromMediaType(MediaType.parseMediaType(request.getContentType()));
+		return transfer.importFrom(format, request.getInputStream());
 	}
 
 	@GetMapping("/{id}")
-	public Memory findById(@PathVariable Long id){
-		return service.findById(id);
+	public ResponseEntity<Memory> findById(@PathVariable Long id, WebRequest request){
+		Memory memory = service.findById(id);
+		if (request.checkNotModified(etag(memory))) {
+			return null;
+		}
+		return ResponseEntity.ok(memory);
 	}
 
 	@GetMapping("/size/{size}")
-	public List<Memory> findBySize(@PathVariable int size) {
-		return service.findBySize(size);
+	public ResponseEntity<List<Memory>> findBySize(@PathVariable int size, WebRequest request) {
+		return conditional(request, () -> service.findBySize(size));
 	}
 
 	@GetMapping("/greaterthanequal/{size}")
-	public List<Memory> findBySizeGreaterThanEqualAndInStockIsTrue(@PathVariable int size) {
-		return service.findBySizeGreaterThanEqualAndInStockIsTrue(size);
+	public ResponseEntity<List<Memory>> findBySizeGreaterThanEqualAndInStockIsTrue(@PathVariable int size,
+																				  WebRequest request) {
+		return conditional(request, () -> service.findBySizeGreaterThanEqualAndInStockIsTrue(size));
+	}
+
+	@GetMapping("/stats")
+	public MemoryStats stats() {
+		return service.stats();
+	}
+
+	@GetMapping("/search")
+	public List<Memory> search(@RequestParam String title, @RequestParam(defaultValue = "false") boolean prefix,
+							   @RequestParam(defaultValue = "100") int limit) {
+		return service.search(title, prefix, limit);
 	}
 
 	@PutMapping("/{id}")
-	public Memory update(@RequestBody Memory newMemory, @PathVariable Long id) {
-		return service.update(newMemory, id);
+	public ResponseEntity<Memory> update(@RequestBody Memory newMemory, @PathVariable Long id,
+										 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		Memory memory = service.update(newMemory, id, expectedVersion(ifMatch, id));
+		return ResponseEntity.ok().eTag(etag(memory)).body(memory);
+	}
+
+	@PatchMapping("/{id}")
+	public ResponseEntity<Void> patch(@RequestBody MemoryPatch patch, @PathVariable Long id,
+									  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		Long expectedVersion = expectedVersion(ifMatch, id);
+		service.patch(id, patch, expectedVersion);
+		ResponseEntity.HeadersBuilder<?> response = ResponseEntity.noContent();
+		if (expectedVersion != null) {
+			response.eTag(etag(expectedVersion + 1));
+		}
+		return response.build();
+	}
+
+	private static class SseSubscriber implements MemoryChangeFeed.Subscriber {
+
+		private final SseEmitter emitter;
+
+		SseSubscriber(SseEmitter emitter) {
+			this.emitter = emitter;
+		}
+
+		@Override
+		public void send(String eventId, MemoryChange change) throws IOException {
+			emitter.send(SseEmitter.event().id(eventId).name(change.getType()).data(change, MediaType.APPLICATION_JSON));
+		}
+
+		@Override
+		public void reset(String eventId) throws IOException {
+			emitter.send(SseEmitter.event().id(eventId).name("reset").data("reload"));
+		}
+
+		@Override
+		public void heartbeat() throws IOException {
+			emitter.send(SseEmitter.event().comment("heartbeat"));
+		}
+
+		@Override
+		public void closed() {
+			emitter.complete();
+		}
+	}
+
+	private ResponseEntity<List<Memory>> conditional(WebRequest request, Supplier<List<Memory>> query) {
+		if (notModified(request)) {
+			return null;
+		}
+		return ResponseEntity.ok(query.get());
+	}
+
+	private boolean notModified(WebRequest request) {
+		String etag = changes.etag();
+		return etag != null && request.checkNotModified(etag);
+	}
+
+	private static String etag(Memory memory) {
+		return etag(memory.getVersion());
+	}
+
+	/**
+	 * Weak, because the same version is served as JSON, CBOR or Smile, gzipped or not.
+	 */
+	private static String etag(long version) {
+		return "W/\"" + version + "\"";
+	}
+
+	private static Long expectedVersion(String ifMatch, Long id) {
+		if (ifMatch == null || ifMatch.trim().equals("*")) {
+			return null;
+		}
+		// our tags are all weak, so If-Match compares versions and takes the tag with or without W/
+		String tag = ifMatch.trim();
+		if (tag.startsWith("W/")) {
+			tag = tag.substring(2);
+		}
+		if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+			try {
+				return Long.valueOf(tag.substring(1, tag.length() - 1));
+			} catch (NumberFormatException e) {
+				// not one of our tags, so it cannot match
+			}
+		}
+		throw new MemoryConflictException(id);
 	}
 
 }
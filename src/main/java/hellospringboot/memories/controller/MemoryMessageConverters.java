@@ -0,0 +1,22 @@
+package hellospringboot.memories.controller;
+
+import java.util.List;
+
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Adds the columnar memory encoding after the default converters. Jackson's CBOR and Smile converters are
+ * already among those once their data formats are on the classpath, and JSON stays first, so a client
+ * gets a compact format only when its Accept header asks for one.
+ */
+@Component
+public class MemoryMessageConverters implements WebMvcConfigurer {
+
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		converters.add(new MemoryColumnsHttpMessageConverter());
+	}
+
+}
@@ -0,0 +1,71 @@
+package hellospringboot.memories.controller;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import hellospringboot.memories.repository.ReplicaRoutingDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Keeps a client on the primary after it writes, when reads go to replicas. A request that writes reads from
+ * the primary until it ends, and with a non-zero {@code memories.replicas.sticky-after-write} the response
+ * carries the time of the write in a cookie, so the client's next requests do too for that long, whichever
+ * instance serves them. Instances compare the cookie with their own clock.
+ */
+@Component
+@ConditionalOnProperty(name = "memories.replicas.enabled", havingValue = "true")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+	static final String COOKIE = "memories-last-write";
+
+	private final Duration stickyAfterWrite;
+
+	public ReadYourWritesFilter(@Value("${memories.replicas.sticky-after-write:0s}") Duration stickyAfterWrite) {
+		this.stickyAfterWrite = stickyAfterWrite;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		try (ReplicaRoutingDataSource.Request bound = ReplicaRoutingDataSource.beginRequest(lastWrite(request),
+				() -> remember(response))) {
+			chain.doFilter(request, response);
+		}
+	}
+
+	private void remember(HttpServletResponse response) {
+		if (stickyAfterWrite.isZero() || response.isCommitted()) {
+			return;
+		}
+		Cookie cookie = new Cookie(COOKIE, Long.toString(System.currentTimeMillis()));
+		cookie.setPath("/");
+		cookie.setHttpOnly(true);
+		cookie.setMaxAge((int) Math.max(1, (stickyAfterWrite.toMillis() + 999) / 1000));
+		response.addCookie(cookie);
+	}
+
+	private static long lastWrite(HttpServletRequest request) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				if (COOKIE.equals(cookie.getName())) {
+					try {
+						return Long.parseLong(cookie.getValue());
+					} catch (NumberFormatException e) {
+						return 0;
+					}
+				}
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,17 @@
+package hellospringboot.memories.exception;
+
+import java.time.Duration;
+
+public class MemoryBusyException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public MemoryBusyException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,13 @@
+package hellospringboot.memories.exception;
+
+public class MemoryConflictException extends RuntimeException {
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -3618594026781735203L;
+
+	public MemoryConflictException(Long id) {
+		super(String.format("Memory with id = %d was modified concurrently", id));
+	}
+
+}
@@ -1,22 +1,39 @@
 package hellospringboot.memories.model;
 
 import java.util.Objects;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Where;
 
 @Entity
-@Table
+@Table(uniqueConstraints = @UniqueConstraint(name = Memory.TITLE_CONSTRAINT, columnNames = "title"))
+@Where(clause = "deleted = false")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Memory {
 
+	public static final String TITLE_CONSTRAINT = "uk_memory_title";
+
 	@Id
-	@GeneratedValue(strategy=GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "memory_id")
+	@TableGenerator(name = "memory_id", table = "memory_id_sequence", pkColumnValue = "memory", allocationSize = 50)
 	private Long id;
 	private String title;
 	private int size;
 	private boolean inStock;
+	@Version
+	private long version;
+	private boolean deleted;
 
 	public Memory(String title, int size, boolean inStock) {
 		super();
@@ -30,6 +47,12 @@ public class Memory {
 		this("",0, true);
 	}
 
+	public Memory(Memory memory) {
+		this(memory.title, memory.size, memory.inStock);
+		this.id = memory.id;
+		this.version = memory.version;
+	}
+
 	public Long getId() {
 		return id;
 	}
@@ -67,6 +90,14 @@ public class Memory {
 		return inStock;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	void setVersion(long version) {
+		this.version = version;
+	}
+
 	@Override
 	public String toString() {
 		return "Memory{" +
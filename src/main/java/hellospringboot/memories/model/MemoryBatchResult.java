@@ -0,0 +1,75 @@
+package hellospringboot.memories.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class MemoryBatchResult {
+
+	public enum Status {
+		CREATED, REJECTED
+	}
+
+	private final List<Item> items = new ArrayList<>();
+	private int created;
+	private int rejected;
+
+	public void created(int index, Memory memory) {
+		items.add(new Item(index, memory.getTitle(), memory.getId(), Status.CREATED, null));
+		created++;
+	}
+
+	public void rejected(int index, String title, String message) {
+		items.add(new Item(index, title, null, Status.REJECTED, message));
+		rejected++;
+	}
+
+	public List<Item> getItems() {
+		return Collections.unmodifiableList(items);
+	}
+
+	public int getCreated() {
+		return created;
+	}
+
+	public int getRejected() {
+		return rejected;
+	}
+
+	public static class Item {
+
+		private final int index;
+		private final String title;
+		private final Long id;
+		private final Status status;
+		private final String message;
+
+		Item(int index, String title, Long id, Status status, String message) {
+			this.index = index;
+			this.title = title;
+			this.id = id;
+			this.status = status;
+			this.message = message;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public Long getId() {
+			return id;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package hellospringboot.memories.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One committed change as published on the change feed. Creates and updates carry the memory, patches the
+ * changed fields, deletions only the id.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MemoryChange {
+
+	private final long sequence;
+	private final String type;
+	private final Long id;
+	private final Memory memory;
+	private final MemoryPatch patch;
+
+	public MemoryChange(long sequence, String type, Long id, Memory memory, MemoryPatch patch) {
+		this.sequence = sequence;
+		this.type = type;
+		this.id = id;
+		this.memory = memory;
+		this.patch = patch;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public Memory getMemory() {
+		return memory;
+	}
+
+	public MemoryPatch getPatch() {
+		return patch;
+	}
+
+}
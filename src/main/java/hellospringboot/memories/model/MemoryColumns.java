@@ -0,0 +1,179 @@
+package hellospringboot.memories.model;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Column oriented binary encoding of a list of memories. Instead of repeating field names on every row it
+ * writes each field as one packed array, numeric columns first so a client can read ids, sizes and stock
+ * without touching the titles:
+ * <pre>
+ * version byte (1), count
+ * ids       count zigzag varints, each the difference to the previous id
+ * sizes     count zigzag varints
+ * inStock   (count + 7) / 8 bytes, one bit per memory, lowest bit first
+ * versions  count varints
+ * titles    count times a varint byte length followed by UTF-8
+ * </pre>
+ * Counts and lengths are unsigned varints, seven bits per byte with the high bit set on all but the last.
+ */
+public final class MemoryColumns {
+
+	public static final MediaType MEDIA_TYPE = MediaType.valueOf("application/vnd.memories.columnar");
+
+	static final int FORMAT_VERSION = 1;
+
+	private MemoryColumns() {
+	}
+
+	public static void write(List<Memory> memories, OutputStream out) throws IOException {
+		Encoder encoder = encoder(memories);
+		out.write(encoder.bytes, 0, encoder.length);
+	}
+
+	public static byte[] encode(List<Memory> memories) {
+		Encoder encoder = encoder(memories);
+		return Arrays.copyOf(encoder.bytes, encoder.length);
+	}
+
+	private static Encoder encoder(List<Memory> memories) {
+		int count = memories.size();
+		Encoder encoder = new Encoder(16 + count * 24);
+		encoder.write(FORMAT_VERSION);
+		encoder.varint(count);
+		long previous = 0;
+		for (Memory memory : memories) {
+			long id = memory.getId() == null ? 0 : memory.getId();
+			encoder.varint(zigzag(id - previous));
+			previous = id;
+		}
+		for (Memory memory : memories) {
+			encoder.varint(zigzag(memory.getSize()));
+		}
+		int bits = 0;
+		for (int i = 0; i < count; i++) {
+			if (memories.get(i).isInStock()) {
+				bits |= 1 << (i & 7);
+			}
+			if ((i & 7) == 7 || i == count - 1) {
+				encoder.write(bits);
+				bits = 0;
+			}
+		}
+		for (Memory memory : memories) {
+			encoder.varint(memory.getVersion());
+		}
+		for (Memory memory : memories) {
+			byte[] title = memory.getTitle() == null ? new byte[0] : memory.getTitle().getBytes(StandardCharsets.UTF_8);
+			encoder.varint(title.length);
+			encoder.write(title);
+		}
+		return encoder;
+	}
+
+	public static List<Memory> read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		int formatVersion = data.read();
+		if (formatVersion != FORMAT_VERSION) {
+			throw new IOException("Unsupported columnar format version " + formatVersion);
+		}
+		int count = (int) readVarint(data);
+		long[] ids = new long[count];
+		long previous = 0;
+		for (int i = 0; i < count; i++) {
+			previous += unzigzag(readVarint(data));
+			ids[i] = previous;
+		}
+		int[] sizes = new int[count];
+		for (int i = 0; i < count; i++) {
+			sizes[i] = (int) unzigzag(readVarint(data));
+		}
+		byte[] inStock = new byte[(count + 7) / 8];
+		data.readFully(inStock);
+		List<Memory> memories = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Memory memory = new Memory("", sizes[i], (inStock[i >> 3] & (1 << (i & 7))) != 0);
+			memory.setId(ids[i]);
+			memory.setVersion(readVarint(data));
+			memories.add(memory);
+		}
+		for (Memory memory : memories) {
+			byte[] title = new byte[(int) readVarint(data)];
+			data.readFully(title);
+			memory.setTitle(new String(title, StandardCharsets.UTF_8));
+		}
+		return memories;
+	}
+
+	static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Columnar memories ended inside a number");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint in columnar memories");
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Unsynchronized growable buffer; writing varints a byte at a time to a stream costs more than encoding.
+	 */
+	private static final class Encoder {
+
+		private byte[] bytes;
+		private int length;
+
+		Encoder(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		void write(int b) {
+			ensureCapacity(1);
+			bytes[length++] = (byte) b;
+		}
+
+		void write(byte[] b) {
+			ensureCapacity(b.length);
+			System.arraycopy(b, 0, bytes, length, b.length);
+			length += b.length;
+		}
+
+		void varint(long value) {
+			ensureCapacity(10);
+			while ((value & ~0x7FL) != 0) {
+				bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+
+		private void ensureCapacity(int extra) {
+			if (length + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package hellospringboot.memories.model;
+
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+
+public enum MemoryFormat {
+
+	CSV(new MediaType("text", "csv"), ".csv"),
+	NDJSON(MediaType.APPLICATION_NDJSON, ".ndjson");
+
+	private final MediaType mediaType;
+	private final String extension;
+
+	MemoryFormat(MediaType mediaType, String extension) {
+		this.mediaType = mediaType;
+		this.extension = extension;
+	}
+
+	public MediaType getMediaType() {
+		return mediaType;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	public static MemoryFormat fromMediaType(MediaType mediaType) {
+		for (MemoryFormat format : values()) {
+			if (format.mediaType.isCompatibleWith(mediaType)) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported media type " + mediaType);
+	}
+
+	public static MemoryFormat fromFileName(String fileName) {
+		String name = fileName.toLowerCase(Locale.ROOT);
+		for (MemoryFormat format : values()) {
+			if (name.endsWith(format.extension)) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException("Cannot tell the format of " + fileName + ", expected .csv or .ndjson");
+	}
+}
@@ -0,0 +1,66 @@
+package hellospringboot.memories.model;
+
+import java.util.Objects;
+
+public class MemoryPatch {
+
+	private String title;
+	private Integer size;
+	private Boolean inStock;
+
+	public MemoryPatch() {
+	}
+
+	public MemoryPatch(String title, Integer size, Boolean inStock) {
+		this.title = title;
+		this.size = size;
+		this.inStock = inStock;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public Integer getSize() {
+		return size;
+	}
+
+	public void setSize(Integer size) {
+		this.size = size;
+	}
+
+	public Boolean getInStock() {
+		return inStock;
+	}
+
+	public void setInStock(Boolean inStock) {
+		this.inStock = inStock;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		MemoryPatch patch = (MemoryPatch) o;
+		return Objects.equals(title, patch.title) && Objects.equals(size, patch.size)
+				&& Objects.equals(inStock, patch.inStock);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(title, size, inStock);
+	}
+
+	@Override
+	public String toString() {
+		return "MemoryPatch{" +
+				"title='" + title + '\'' +
+				", size=" + size +
+				", inStock=" + inStock +
+				'}';
+	}
+}
@@ -0,0 +1,9 @@
+package hellospringboot.memories.model;
+
+public interface MemorySizeView {
+
+	Long getId();
+
+	int getSize();
+
+}
@@ -0,0 +1,131 @@
+package hellospringboot.memories.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+public class MemoryStats {
+
+	private final long inStock;
+	private final long outOfStock;
+	private final List<SizeCount> sizes = new ArrayList<>();
+	private final List<Bucket> histogram = new ArrayList<>();
+
+	/**
+	 * Builds the totals, the per size counts and a histogram over power of two size ranges from counts keyed
+	 * by size, each holding the out of stock count followed by the in stock count.
+	 */
+	public MemoryStats(SortedMap<Integer, long[]> counts) {
+		long inStock = 0;
+		long outOfStock = 0;
+		Bucket bucket = null;
+		for (Map.Entry<Integer, long[]> entry : counts.entrySet()) {
+			int size = entry.getKey();
+			long out = entry.getValue()[0];
+			long in = entry.getValue()[1];
+			if (out == 0 && in == 0) {
+				continue;
+			}
+			sizes.add(new SizeCount(size, in, out));
+			int from = size <= 0 ? size : Integer.highestOneBit(size);
+			if (bucket == null || bucket.from != from) {
+				bucket = new Bucket(from, size <= 0 ? size : from + (from - 1));
+				histogram.add(bucket);
+			}
+			bucket.inStock += in;
+			bucket.outOfStock += out;
+			inStock += in;
+			outOfStock += out;
+		}
+		this.inStock = inStock;
+		this.outOfStock = outOfStock;
+	}
+
+	public static MemoryStats of(Iterable<MemoryStockCount> rows) {
+		SortedMap<Integer, long[]> counts = new TreeMap<>();
+		for (MemoryStockCount row : rows) {
+			counts.computeIfAbsent(row.getSize(), size -> new long[2])[row.isInStock() ? 1 : 0] += row.getCount();
+		}
+		return new MemoryStats(counts);
+	}
+
+	public long getTotal() {
+		return inStock + outOfStock;
+	}
+
+	public long getInStock() {
+		return inStock;
+	}
+
+	public long getOutOfStock() {
+		return outOfStock;
+	}
+
+	public List<SizeCount> getSizes() {
+		return Collections.unmodifiableList(sizes);
+	}
+
+	public List<Bucket> getHistogram() {
+		return Collections.unmodifiableList(histogram);
+	}
+
+	public static class SizeCount {
+
+		private final int size;
+		private final long inStock;
+		private final long outOfStock;
+
+		SizeCount(int size, long inStock, long outOfStock) {
+			this.size = size;
+			this.inStock = inStock;
+			this.outOfStock = outOfStock;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public long getInStock() {
+			return inStock;
+		}
+
+		public long getOutOfStock() {
+			return outOfStock;
+		}
+	}
+
+	/**
+	 * Memories with a size between {@code from} and {@code to}, both inclusive.
+	 */
+	public static class Bucket {
+
+		private final int from;
+		private final int to;
+		private long inStock;
+		private long outOfStock;
+
+		Bucket(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		public int getFrom() {
+			return from;
+		}
+
+		public int getTo() {
+			return to;
+		}
+
+		public long getInStock() {
+			return inStock;
+		}
+
+		public long getOutOfStock() {
+			return outOfStock;
+		}
+	}
+}
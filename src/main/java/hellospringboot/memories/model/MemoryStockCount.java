@@ -0,0 +1,11 @@
+package hellospringboot.memories.model;
+
+public interface MemoryStockCount {
+
+	int getSize();
+
+	boolean isInStock();
+
+	long getCount();
+
+}
@@ -0,0 +1,9 @@
+package hellospringboot.memories.model;
+
+public interface MemoryTitleView {
+
+	Long getId();
+
+	String getTitle();
+
+}
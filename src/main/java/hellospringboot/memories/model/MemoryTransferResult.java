@@ -0,0 +1,55 @@
+package hellospringboot.memories.model;
+
+import java.util.Collections;
+import java.util.List;
+
+public class MemoryTransferResult {
+
+	private final MemoryFormat format;
+	private final long processed;
+	private final long created;
+	private final long rejected;
+	private final List<String> errors;
+	private final long elapsedMillis;
+
+	public MemoryTransferResult(MemoryFormat format, long processed, long created, long rejected, List<String> errors,
+								long elapsedMillis) {
+		this.format = format;
+		this.processed = processed;
+		this.created = created;
+		this.rejected = rejected;
+		this.errors = Collections.unmodifiableList(errors);
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public MemoryFormat getFormat() {
+		return format;
+	}
+
+	public long getProcessed() {
+		return processed;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * The first rejections, each prefixed with its record number.
+	 */
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public long getRowsPerSecond() {
+		return elapsedMillis == 0 ? processed : processed * 1000 / elapsedMillis;
+	}
+}
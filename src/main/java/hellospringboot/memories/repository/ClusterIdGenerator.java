@@ -0,0 +1,57 @@
+package hellospringboot.memories.repository;
+
+import java.time.Instant;
+import java.util.function.LongSupplier;
+
+/**
+ * Ids that are unique across every node without asking a database: milliseconds since {@link #EPOCH}, then
+ * the node id, then a per-millisecond sequence. They grow over time and use 53 bits, so JavaScript clients
+ * read them without losing precision. A node that runs out of sequence numbers within a millisecond, or
+ * whose clock steps back, keeps counting on from the last millisecond it used instead of waiting.
+ */
+public class ClusterIdGenerator {
+
+    static final long EPOCH = Instant.parse("2021-01-01T00:00:00Z").toEpochMilli();
+
+    static final int NODE_BITS = 5;
+
+    static final int SEQUENCE_BITS = 7;
+
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long node;
+    private final LongSupplier clock;
+
+    private long lastMillis = -1;
+    private long sequence;
+
+    public ClusterIdGenerator(int nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    ClusterIdGenerator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ", was " + nodeId);
+        }
+        this.node = nodeId;
+        this.clock = clock;
+    }
+
+    public synchronized long next() {
+        long millis = clock.getAsLong() - EPOCH;
+        if (millis > lastMillis) {
+            lastMillis = millis;
+            sequence = 0;
+        } else if (++sequence > SEQUENCE_MASK) {
+            lastMillis++;
+            sequence = 0;
+        }
+        return (lastMillis << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+    }
+
+    static int nodeOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+}
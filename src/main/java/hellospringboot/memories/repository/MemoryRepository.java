@@ -1,25 +1,171 @@
 package hellospringboot.memories.repository;
 
 import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemorySizeView;
+import hellospringboot.memories.model.MemoryStockCount;
+import hellospringboot.memories.model.MemoryTitleView;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
+@Transactional(readOnly = true)
 public interface MemoryRepository extends JpaRepository<Memory, Long> {
 
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FETCH_SIZE, value = "500")})
+    @Override
+    List<Memory> findAll();
 
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_CACHEABLE, value = "true")})
     List<Memory> findBySizeAndInStockIsTrue(int size);
 
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_CACHEABLE, value = "true")})
     List<Memory> findBySizeGreaterThanEqual(int size);
 
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_CACHEABLE, value = "true")})
     List<Memory> findBySizeGreaterThanEqualAndInStockIsTrue(int size, Sort sort);
 
     Memory findByTitle(String title);
 
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select m.title from Memory m")
+    Stream<String> streamTitles();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select m.id as id, m.title as title from Memory m where m.title is not null order by m.id")
+    Stream<MemoryTitleView> streamIdsAndTitles();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select m.id as id, m.size as size from Memory m where m.inStock = true")
+    Stream<MemorySizeView> streamInStockSizes();
+
+    @Query("select m.size as size, m.inStock as inStock, count(m) as count from Memory m group by m.size, m.inStock")
+    List<MemoryStockCount> countBySizeAndInStock();
+
+    @Query("select m.title from Memory m where m.title in :titles")
+    List<String> findTitlesByTitleIn(@Param("titles") Collection<String> titles);
+
+    /**
+     * Updates the supplied (non-null) fields and bumps the version in one statement, optionally only when the
+     * row is at {@code version}. Returns the number of rows changed. Bulk updates ignore {@code @Where}, so
+     * soft-deleted rows are left out here.
+     */
+    @Transactional
+    @Modifying
+    @Query("update Memory m set m.title = coalesce(:title, m.title), m.size = coalesce(:size, m.size), "
+            + "m.inStock = coalesce(:inStock, m.inStock), m.version = m.version + 1 "
+            + "where m.id = :id and m.deleted = false and (:version is null or m.version = :version)")
+    int patch(@Param("id") Long id, @Param("title") String title, @Param("size") Integer size,
+              @Param("inStock") Boolean inStock, @Param("version") Long version);
+
+    /**
+     * The next page of matching ids after {@code after}, in id order, so callers can walk them by key.
+     */
+    @Query("select m.id from Memory m where m.id > :after and m.inStock = :inStock"
+            + " and (:size is null or m.size = :size) order by m.id")
+    List<Long> findIdsByInStockAndSize(@Param("after") long after, @Param("inStock") boolean inStock,
+                                       @Param("size") Integer size, Pageable page);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Memory m where m.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select m from Memory m where m.id in :ids")
+    List<Memory> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Locks the memories among {@code ids} that still exist, deletes them, or only flags them when
+     * {@code soft}, and returns them as they were before, all in one transaction. Ids that never existed or
+     * were already deleted are not returned.
+     */
+    @Transactional
+    default List<Memory> deleteExisting(Collection<Long> ids, boolean soft) {
+        List<Memory> existing = findAllByIdForUpdate(ids);
+        if (!existing.isEmpty()) {
+            List<Long> found = existing.stream().map(Memory::getId).collect(Collectors.toList());
+            if (soft) {
+                softDeleteByIdIn(found);
+            } else {
+                deleteByIdIn(found);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Flags the memories as deleted and releases their titles, leaving the rows for {@link #purgeDeleted}.
+     */
+    @Transactional
+    @Modifying
+    @Query("update Memory m set m.deleted = true, m.title = null, m.version = m.version + 1 "
+            + "where m.id in :ids and m.deleted = false")
+    int softDeleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from memory where deleted = true limit :limit", nativeQuery = true)
+    int purgeDeleted(@Param("limit") int limit);
+
     List<Memory> findBySizeBetween(int low, int high);
 
     List<Memory> findByTitleContaining(String title);
+
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FETCH_SIZE, value = "500")})
+    List<Memory> findByTitleContainingOrderByIdAsc(String title, Pageable pageable);
+
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FETCH_SIZE, value = "500")})
+    List<Memory> findByTitleStartingWithOrderByIdAsc(String title, Pageable pageable);
+
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FETCH_SIZE, value = "500")})
+    List<Memory> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FETCH_SIZE, value = "1000")})
+    @Query("select m from Memory m order by m.id")
+    Stream<Memory> streamAll();
+
+    /**
+     * Whether {@code e} was raised by the unique constraint or index named {@code constraint}, as opposed to
+     * another one such as the primary key. Hibernate reports the name when it recognizes it; otherwise the
+     * driver's message, which names the index on both MySQL and H2, is searched.
+     */
+    static boolean violates(DataIntegrityViolationException e, String constraint) {
+        String name = constraint.toLowerCase(Locale.ROOT);
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException
+                    && ((ConstraintViolationException) cause).getConstraintName() != null) {
+                return ((ConstraintViolationException) cause).getConstraintName().toLowerCase(Locale.ROOT).contains(name);
+            }
+            if (cause instanceof SQLException && cause.getMessage() != null) {
+                return cause.getMessage().toLowerCase(Locale.ROOT).contains(name);
+            }
+        }
+        return false;
+    }
 }
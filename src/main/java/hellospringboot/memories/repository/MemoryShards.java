@@ -0,0 +1,219 @@
+package hellospringboot.memories.repository;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Spreads memories over the databases of {@link ShardRoutingDataSource} by a hash of their id, which
+ * {@link ClusterIdGenerator} hands out before the insert. Work for one shard runs on the calling thread with
+ * that shard bound; work for several runs on one worker thread per shard in parallel, and the caller merges
+ * the results. Repository calls inside keep opening their own transactions, one per shard.
+ * <p>
+ * The shard count is part of where every row lives, so it cannot change once data has been written.
+ */
+@Component
+public class MemoryShards implements DisposableBean {
+
+    private final boolean enabled;
+    private final ClusterIdGenerator ids;
+    private final ShardRoutingDataSource routing;
+    private final TransactionTemplate suspending;
+    private final TransactionTemplate readOnly;
+    private final ExecutorService workers;
+
+    public MemoryShards(@Value("${memories.shards.enabled:false}") boolean enabled,
+                        @Value("${memories.shards.node-id:-1}") int nodeId,
+                        ObjectProvider<ShardRoutingDataSource> routing,
+                        ObjectProvider<PlatformTransactionManager> transactionManager) {
+        this.enabled = enabled;
+        if (!enabled) {
+            this.ids = null;
+            this.routing = null;
+            this.suspending = null;
+            this.readOnly = null;
+            this.workers = null;
+            return;
+        }
+        this.ids = new ClusterIdGenerator(nodeId);
+        this.routing = routing.getObject();
+        this.suspending = new TransactionTemplate(transactionManager.getObject());
+        // a caller's transaction is bound to whatever shard it started on, so shard work runs outside of it
+        suspending.setPropagationBehavior(TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+        this.readOnly = new TransactionTemplate(transactionManager.getObject());
+        readOnly.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        readOnly.setReadOnly(true);
+        this.workers = Executors.newCachedThreadPool(workerThreads());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int count() {
+        return routing.getShards().size();
+    }
+
+    public long nextId() {
+        return ids.next();
+    }
+
+    public int shardOf(long id) {
+        // the low bits of an id are a sequence that is mostly 0, so mix them before picking a shard
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(hash ^ (hash >>> 32), (long) count());
+    }
+
+    public <T> T on(int shard, Supplier<T> work) {
+        Integer previous = routing.bind(shard);
+        try {
+            return suspending.execute(status -> work.get());
+        } finally {
+            routing.restore(previous);
+        }
+    }
+
+    /**
+     * Runs {@code work} in a read-only transaction of its own on {@code shard}, for queries that need one
+     * open while their results are read, such as streams.
+     */
+    public <T> T readOnly(int shard, Supplier<T> work) {
+        Integer previous = routing.bind(shard);
+        try {
+            return readOnly.execute(status -> work.get());
+        } finally {
+            routing.restore(previous);
+        }
+    }
+
+    /**
+     * Runs {@code work} on every shard in parallel and returns the results by shard.
+     */
+    public <T> List<T> onAll(Supplier<T> work) {
+        List<CompletableFuture<T>> results = new ArrayList<>(count());
+        for (int shard = 0; shard < count(); shard++) {
+            int target = shard;
+            results.add(CompletableFuture.supplyAsync(() -> bound(target, work), workers));
+        }
+        return join(results);
+    }
+
+    /**
+     * Splits {@code ids} by shard and runs {@code work} once per shard that holds any of them, in parallel.
+     */
+    public <R> List<R> byShard(Collection<Long> ids, Function<List<Long>, R> work) {
+        Map<Integer, List<Long>> groups = new TreeMap<>();
+        for (Long id : ids) {
+            groups.computeIfAbsent(shardOf(id), shard -> new ArrayList<>()).add(id);
+        }
+        if (groups.size() == 1) {
+            Map.Entry<Integer, List<Long>> group = groups.entrySet().iterator().next();
+            List<R> result = new ArrayList<>(1);
+            result.add(on(group.getKey(), () -> work.apply(group.getValue())));
+            return result;
+        }
+        List<CompletableFuture<R>> results = new ArrayList<>(groups.size());
+        groups.forEach((shard, group) ->
+                results.add(CompletableFuture.supplyAsync(() -> bound(shard, () -> work.apply(group)), workers)));
+        return join(results);
+    }
+
+    /**
+     * Merges lists that are each sorted by {@code order} into the first {@code limit} items overall.
+     */
+    public static <T> List<T> merge(List<? extends List<T>> sorted, Comparator<? super T> order, int limit) {
+        int total = 0;
+        for (List<T> list : sorted) {
+            total += list.size();
+        }
+        List<T> merged = new ArrayList<>(Math.min(total, limit));
+        PriorityQueue<Cursor<T>> heads = new PriorityQueue<>((a, b) -> order.compare(a.head(), b.head()));
+        for (List<T> list : sorted) {
+            if (!list.isEmpty()) {
+                heads.add(new Cursor<>(list));
+            }
+        }
+        while (merged.size() < limit && !heads.isEmpty()) {
+            Cursor<T> cursor = heads.poll();
+            merged.add(cursor.head());
+            if (++cursor.position < cursor.list.size()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public void destroy() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private <T> T bound(int shard, Supplier<T> work) {
+        Integer previous = routing.bind(shard);
+        try {
+            return work.get();
+        } finally {
+            routing.restore(previous);
+        }
+    }
+
+    private static <T> List<T> join(List<CompletableFuture<T>> futures) {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private static class Cursor<T> {
+
+        final List<T> list;
+        int position;
+
+        Cursor(List<T> list) {
+            this.list = list;
+        }
+
+        T head() {
+            return list.get(position);
+        }
+    }
+
+    private static ThreadFactory workerThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "memory-shard-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,40 @@
+package hellospringboot.memories.repository;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerationException;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.jpa.spi.IdentifierGeneratorStrategyProvider;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Takes over from the table generator on {@code Memory} while sharding is on. The shard of a memory follows
+ * from its id, so {@link MemoryShards} hands out the id before the insert picks a database; all that is left
+ * here is to keep it.
+ */
+public class PreassignedIdGenerator implements IdentifierGenerator {
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object entity) {
+        Serializable id = session.getEntityPersister(null, entity).getIdentifier(entity, session);
+        if (!(id instanceof Long) || (Long) id <= 0) {
+            throw new IdentifierGenerationException("Sharded memories need an id from MemoryShards before they are saved");
+        }
+        return id;
+    }
+
+    /**
+     * Registered through {@code hibernate.identifier_generator_strategy_provider}, which is how Hibernate
+     * lets the generator behind a JPA {@code @TableGenerator} be replaced.
+     */
+    public static class Strategies implements IdentifierGeneratorStrategyProvider {
+
+        @Override
+        public Map<String, Class<?>> getStrategies() {
+            return Collections.singletonMap(org.hibernate.id.enhanced.TableGenerator.class.getName(),
+                    PreassignedIdGenerator.class);
+        }
+    }
+}
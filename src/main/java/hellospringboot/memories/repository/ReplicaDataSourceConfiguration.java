@@ -0,0 +1,69 @@
+package hellospringboot.memories.repository;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces Spring Boot's single pool with the primary from {@code spring.datasource.*} plus one pool per url
+ * in {@code memories.replicas.urls}, routed by {@link ReplicaRoutingDataSource}. Replica pools copy the
+ * primary's Hikari settings and are marked read-only.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "memories.replicas.enabled", havingValue = "true")
+public class ReplicaDataSourceConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource routingDataSource(HikariDataSource primaryDataSource,
+                                                      @Value("${memories.replicas.urls}") List<String> urls,
+                                                      @Value("${memories.replicas.selection:ROUND_ROBIN}")
+                                                              ReplicaRoutingDataSource.Selection selection,
+                                                      @Value("${memories.replicas.sticky-after-write:0s}")
+                                                              Duration stickyAfterWrite) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setJdbcUrl(url);
+            config.setPoolName("replica-" + replicas.size());
+            config.setReadOnly(true);
+            config.setMetricsTrackerFactory(null);
+            replicas.add(new HikariDataSource(config));
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, selection, stickyAfterWrite);
+    }
+
+    @Bean
+    public MeterBinder replicaPoolMetrics(ReplicaRoutingDataSource routingDataSource) {
+        // bound once the registry exists, as asking for it while the pools are built would be circular
+        return registry -> routingDataSource.getReplicaPools()
+                .forEach(pool -> ReplicaRoutingDataSource.bindMetrics(pool, registry));
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
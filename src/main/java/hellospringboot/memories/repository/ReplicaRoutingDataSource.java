@@ -0,0 +1,205 @@
+package hellospringboot.memories.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends connections for read-only transactions to a replica and everything else to the primary. It has to
+ * sit behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} so the connection
+ * is fetched once the transaction is known to be read-only, not when it begins.
+ * <p>
+ * Reads that must see the latest commit, such as cache loads and lookups before a write, run through
+ * {@link #onPrimary}. With a non-zero {@code stickyAfterWrite}, a client that wrote keeps reading from the
+ * primary for that long: the request is bound with {@link #beginRequest} and the time of the client's last
+ * write, which the client carries between requests, so it holds whichever thread or instance serves them.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    public enum Selection {
+        ROUND_ROBIN, LEAST_LOADED
+    }
+
+    static final String PRIMARY = "primary";
+
+    private final List<String> replicas = new ArrayList<>();
+    private final Map<String, DataSource> replicaPools = new HashMap<>();
+    private final Selection selection;
+    private final long stickyNanos;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private static final ThreadLocal<Integer> PRIMARY_READS = new ThreadLocal<>();
+    private static final ThreadLocal<Request> REQUESTS = new ThreadLocal<>();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicaPools, Selection selection,
+                                    Duration stickyAfterWrite) {
+        this.selection = selection;
+        this.stickyNanos = stickyAfterWrite.toNanos();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicaPools.size(); i++) {
+            String key = "replica-" + i;
+            replicas.add(key);
+            this.replicaPools.put(key, replicaPools.get(i));
+            targets.put(key, replicaPools.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    Collection<DataSource> getReplicaPools() {
+        return replicaPools.values();
+    }
+
+    /**
+     * Closes the replica pools; the primary belongs to whoever created it.
+     */
+    @Override
+    public void close() throws IOException {
+        for (DataSource replica : replicaPools.values()) {
+            if (replica instanceof Closeable) {
+                ((Closeable) replica).close();
+            }
+        }
+    }
+
+    /**
+     * Runs {@code work} with read-only transactions that start inside it going to the primary.
+     */
+    public static <T> T onPrimary(Supplier<T> work) {
+        Integer depth = PRIMARY_READS.get();
+        PRIMARY_READS.set(depth == null ? 1 : depth + 1);
+        try {
+            return work.get();
+        } finally {
+            if (depth == null) {
+                PRIMARY_READS.remove();
+            } else {
+                PRIMARY_READS.set(depth);
+            }
+        }
+    }
+
+    /**
+     * Binds a request of a client whose last write was at {@code lastWriteMillis} (epoch millis, 0 for none)
+     * to the current thread until the returned request is closed. {@code onWrite} runs once, when the request
+     * opens its first write transaction; from then on the rest of the request reads from the primary too.
+     */
+    public static Request beginRequest(long lastWriteMillis, Runnable onWrite) {
+        Request request = new Request(lastWriteMillis, onWrite);
+        REQUESTS.set(request);
+        return request;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Request request = REQUESTS.get();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (request != null && TransactionSynchronizationManager.isActualTransactionActive()) {
+                request.wrote();
+            }
+            return PRIMARY;
+        }
+        if (replicas.isEmpty() || PRIMARY_READS.get() != null || (request != null && request.sticky(stickyNanos))) {
+            return PRIMARY;
+        }
+        return selection == Selection.LEAST_LOADED ? leastLoaded() : roundRobin();
+    }
+
+    private String roundRobin() {
+        return replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+    }
+
+    private String leastLoaded() {
+        // ties go round robin, so idle replicas share the load evenly
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        String best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            String key = replicas.get((start + i) % replicas.size());
+            int load = load(replicaPools.get(key));
+            if (load < bestLoad) {
+                best = key;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Reports a Hikari pool that is not a bean, which Spring Boot would instrument itself, to {@code registry}.
+     */
+    static void bindMetrics(DataSource dataSource, MeterRegistry registry) {
+        if (dataSource instanceof HikariDataSource) {
+            HikariDataSource hikari = (HikariDataSource) dataSource;
+            if (hikari.getMetricsTrackerFactory() == null && hikari.getMetricRegistry() == null) {
+                hikari.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            }
+        }
+    }
+
+    public static class Request implements AutoCloseable {
+
+        private final long lastWriteMillis;
+        private final Runnable onWrite;
+        private boolean written;
+
+        Request(long lastWriteMillis, Runnable onWrite) {
+            this.lastWriteMillis = lastWriteMillis;
+            this.onWrite = onWrite;
+        }
+
+        @Override
+        public void close() {
+            if (REQUESTS.get() == this) {
+                REQUESTS.remove();
+            }
+        }
+
+        void wrote() {
+            if (!written) {
+                written = true;
+                onWrite.run();
+            }
+        }
+
+        boolean sticky(long stickyNanos) {
+            if (written) {
+                return true;
+            }
+            // the time comes from the client and from other instances' clocks, so it may be a little ahead
+            return lastWriteMillis > 0
+                    && Math.abs(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - lastWriteMillis)) < stickyNanos;
+        }
+    }
+
+    /**
+     * Connections in use plus threads waiting for one, for Hikari pools that have started.
+     */
+    static int load(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource) {
+            HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+            if (pool != null) {
+                return pool.getActiveConnections() + pool.getThreadsAwaitingConnection();
+            }
+        }
+        return 0;
+    }
+}
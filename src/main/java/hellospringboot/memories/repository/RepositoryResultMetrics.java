@@ -0,0 +1,63 @@
+package hellospringboot.memories.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Records how many rows every collection returning repository method hands back, as the
+ * {@code memories.repository.results} distribution tagged with repository and method. Latency and errors
+ * per method come from Spring Boot's {@code spring.data.repository.invocations} timer.
+ */
+@Component
+public class RepositoryResultMetrics implements BeanPostProcessor {
+
+    private final ObjectProvider<MeterRegistry> registry;
+
+    public RepositoryResultMetrics(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport) {
+            ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                    factory.addRepositoryProxyPostProcessor((proxyFactory, information) ->
+                            proxyFactory.addAdvice(new ResultSizeInterceptor(
+                                    information.getRepositoryInterface().getSimpleName()))));
+        }
+        return bean;
+    }
+
+    private class ResultSizeInterceptor implements MethodInterceptor {
+
+        private final String repository;
+
+        ResultSizeInterceptor(String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Object result = invocation.proceed();
+            if (result instanceof Collection) {
+                DistributionSummary.builder("memories.repository.results")
+                        .description("Rows returned by repository list queries")
+                        .baseUnit("rows")
+                        .tag("repository", repository)
+                        .tag("method", invocation.getMethod().getName())
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(registry.getObject())
+                        .record(((Collection<?>) result).size());
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package hellospringboot.memories.repository;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import hellospringboot.memories.model.Memory;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import javax.cache.CacheManager;
+import javax.persistence.SharedCacheMode;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.OptionalLong;
+
+/**
+ * Hibernate second-level and query cache backed by an in-process Caffeine JCache manager. The regions are
+ * created here with bounded sizes rather than by Hibernate, whose fallback would create unbounded ones.
+ * Queries opt in with the {@code org.hibernate.cacheable} hint; any write to {@code memory}, including bulk
+ * JPQL and native updates, bumps the table's update timestamp and so invalidates every cached query on it.
+ */
+@Component
+public class SecondLevelCache implements HibernatePropertiesCustomizer, DisposableBean {
+
+    static final String ENTITY_REGION = Memory.class.getName();
+
+    private final boolean enabled;
+    private final CacheManager cacheManager;
+
+    public SecondLevelCache(@Value("${memories.l2-cache.enabled:false}") boolean enabled,
+                            @Value("${memories.l2-cache.entity-maximum-size:10000}") long entityMaximumSize,
+                            @Value("${memories.l2-cache.query-maximum-size:1000}") long queryMaximumSize,
+                            @Value("${memories.l2-cache.expire-after-write:5m}") Duration expireAfterWrite) {
+        this.enabled = enabled;
+        if (!enabled) {
+            this.cacheManager = null;
+            return;
+        }
+        CaffeineCachingProvider provider = new CaffeineCachingProvider();
+        // a manager of its own, so that several application contexts in one JVM do not share regions
+        URI uri = URI.create(getClass().getName() + "-" + Integer.toHexString(System.identityHashCode(this)));
+        this.cacheManager = provider.getCacheManager(uri, getClass().getClassLoader());
+        cacheManager.createCache(ENTITY_REGION, region(entityMaximumSize, expireAfterWrite));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                region(queryMaximumSize, expireAfterWrite));
+        // timestamps must outlive every query result that depends on them, and there is one per table
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                region(-1, null));
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        if (!enabled) {
+            // Hibernate turns the cache on by default and would find the JCache provider on the classpath
+            hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, false);
+            hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, false);
+            hibernateProperties.put(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.NONE);
+            return;
+        }
+        hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+        hibernateProperties.put(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.ENABLE_SELECTIVE);
+        hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, true);
+        hibernateProperties.put(AvailableSettings.GENERATE_STATISTICS, true);
+        hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, JCacheRegionFactory.class.getName());
+        hibernateProperties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+        hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+    }
+
+    @Override
+    public void destroy() {
+        if (cacheManager != null) {
+            cacheManager.close();
+        }
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maximumSize, Duration expireAfterWrite) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setStoreByValue(false);
+        configuration.setStatisticsEnabled(true);
+        if (maximumSize >= 0) {
+            configuration.setMaximumSize(OptionalLong.of(maximumSize));
+        }
+        if (expireAfterWrite != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(expireAfterWrite.toNanos()));
+        }
+        return configuration;
+    }
+}
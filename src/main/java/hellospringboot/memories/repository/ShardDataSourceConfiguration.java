@@ -0,0 +1,105 @@
+package hellospringboot.memories.repository;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.flywaydb.core.Flyway;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replaces Spring Boot's single pool with one pool per shard: shard 0 from {@code spring.datasource.*} and
+ * one more per url in {@code memories.shards.urls}, routed by {@link ShardRoutingDataSource}. Every shard is
+ * migrated by Flyway, and {@code Memory} ids come from {@link MemoryShards} instead of the id table.
+ * <p>
+ * Features that load or maintain state from a single database are refused at startup rather than quietly
+ * seeing one shard, and so is a missing {@code memories.shards.node-id}: instances sharing a default would
+ * hand out the same ids.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "memories.shards.enabled", havingValue = "true")
+public class ShardDataSourceConfiguration {
+
+    static final List<String> UNSHARDED_FEATURES = Arrays.asList("memories.replicas.enabled",
+            "memories.l2-cache.enabled", "memories.title-filter.enabled", "memories.size-index.enabled",
+            "memories.title-index.enabled", "memories.stats.enabled", "memories.soft-delete.enabled");
+
+    public ShardDataSourceConfiguration(Environment environment) {
+        for (String feature : UNSHARDED_FEATURES) {
+            if (environment.getProperty(feature, Boolean.class, false)) {
+                throw new IllegalStateException(feature + " cannot be combined with memories.shards.enabled");
+            }
+        }
+        if (!environment.containsProperty("memories.shards.node-id")) {
+            throw new IllegalStateException(
+                    "memories.shards.node-id must be set, to a value unique to each instance, with memories.shards.enabled");
+        }
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource firstShardDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("shard-0");
+        return dataSource;
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource firstShardDataSource,
+                                                         @Value("${memories.shards.urls}") List<String> urls) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(firstShardDataSource);
+        for (String url : urls) {
+            HikariConfig config = new HikariConfig();
+            firstShardDataSource.copyStateTo(config);
+            config.setJdbcUrl(url);
+            config.setPoolName("shard-" + shards.size());
+            config.setMetricsTrackerFactory(null);
+            shards.add(new HikariDataSource(config));
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    public MeterBinder shardPoolMetrics(ShardRoutingDataSource shardRoutingDataSource) {
+        // shard 0 is a bean that Spring Boot instruments; the others are bound once the registry exists
+        return registry -> shardRoutingDataSource.getShards().stream().skip(1)
+                .forEach(shard -> ReplicaRoutingDataSource.bindMetrics(shard, registry));
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    @Bean
+    public FlywayMigrationStrategy shardMigrations(ShardRoutingDataSource shardRoutingDataSource) {
+        return flyway -> {
+            for (DataSource shard : shardRoutingDataSource.getShards()) {
+                Flyway.configure().configuration(flyway.getConfiguration()).dataSource(shard).load().migrate();
+            }
+        };
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer preassignedIds() {
+        return properties -> properties.put(AvailableSettings.IDENTIFIER_GENERATOR_STRATEGY_PROVIDER,
+                PreassignedIdGenerator.Strategies.class.getName());
+    }
+}
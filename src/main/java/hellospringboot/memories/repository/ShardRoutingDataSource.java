@@ -0,0 +1,73 @@
+package hellospringboot.memories.repository;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends connections to the shard bound to the current thread by {@link MemoryShards}. Connections taken with
+ * no shard bound, such as Hibernate's at boot, go to shard 0. Like {@link ReplicaRoutingDataSource} it sits
+ * behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, so a transaction that
+ * began before a shard was bound does not hold a connection to the wrong one.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private final List<DataSource> shards;
+    private final ThreadLocal<Integer> current = new ThreadLocal<>();
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        afterPropertiesSet();
+    }
+
+    public List<DataSource> getShards() {
+        return shards;
+    }
+
+    /**
+     * Closes the pools of shards 1 and up; shard 0 belongs to whoever created it.
+     */
+    @Override
+    public void close() throws IOException {
+        for (DataSource shard : shards.subList(1, shards.size())) {
+            if (shard instanceof Closeable) {
+                ((Closeable) shard).close();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return current.get();
+    }
+
+    /**
+     * Binds {@code shard} to the current thread and returns what was bound before, for {@link #restore}.
+     */
+    Integer bind(int shard) {
+        Integer previous = current.get();
+        current.set(shard);
+        return previous;
+    }
+
+    void restore(Integer previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.repository.MemoryRepository;
+import hellospringboot.memories.repository.MemoryShards;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Merges single-id lookups that arrive within {@code window} of each other into one {@code IN} query. The
+ * first caller of a batch waits out the window, or until the batch is full, then runs the query on its own
+ * thread and hands every other caller its row; there is no dispatcher thread. Callers asking for the same id
+ * in one batch share its row.
+ */
+@Component
+public class FindByIdBatcher implements MeterBinder {
+
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final MemoryRepository repository;
+    private final MemoryShards shards;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+
+    private Batch open;
+
+    public FindByIdBatcher(@Value("${memories.find-by-id.batching.enabled:false}") boolean enabled,
+                           @Value("${memories.find-by-id.batching.window:2ms}") Duration window,
+                           @Value("${memories.find-by-id.batching.max-batch-size:256}") int maxBatchSize,
+                           MemoryRepository repository, MemoryShards shards) {
+        this.enabled = enabled;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.repository = repository;
+        this.shards = shards;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The memory with the given id, or null when there is none.
+     */
+    public Memory load(Long id) {
+        Batch batch;
+        CompletableFuture<Memory> result;
+        boolean leader = false;
+        synchronized (this) {
+            if (open == null) {
+                open = new Batch();
+                leader = true;
+            }
+            batch = open;
+            result = batch.pending.computeIfAbsent(id, key -> new CompletableFuture<>());
+            if (batch.pending.size() >= maxBatchSize) {
+                open = null;
+                batch.full.countDown();
+            }
+        }
+        lookups.increment();
+        if (leader) {
+            dispatch(batch);
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("memories.find-by-id.batches", batches, LongAdder::sum)
+                .description("Queries run for batched lookups by id")
+                .register(registry);
+        FunctionCounter.builder("memories.find-by-id.lookups", lookups, LongAdder::sum)
+                .description("Lookups by id answered through a batch")
+                .register(registry);
+    }
+
+    private void dispatch(Batch batch) {
+        try {
+            batch.full.await(window.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (open == batch) {
+                open = null;
+            }
+        }
+        batches.increment();
+        try {
+            Map<Long, Memory> found = new HashMap<>();
+            if (shards.isEnabled()) {
+                shards.byShard(batch.pending.keySet(), repository::findAllById)
+                        .forEach(memories -> memories.forEach(memory -> found.put(memory.getId(), memory)));
+            } else {
+                repository.findAllById(batch.pending.keySet()).forEach(memory -> found.put(memory.getId(), memory));
+            }
+            batch.pending.forEach((id, result) -> result.complete(found.get(id)));
+        } catch (RuntimeException e) {
+            batch.pending.values().forEach(result -> result.completeExceptionally(e));
+        }
+    }
+
+    private static class Batch {
+
+        // only touched while holding the batcher's lock until the batch is closed
+        final Map<Long, CompletableFuture<Memory>> pending = new LinkedHashMap<>();
+        final CountDownLatch full = new CountDownLatch(1);
+    }
+}
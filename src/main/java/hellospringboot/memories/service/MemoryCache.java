@@ -0,0 +1,124 @@
+package hellospringboot.memories.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import hellospringboot.memories.model.Memory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Memories by id. Entries are futures: a miss puts an incomplete one in the map and the caller loads it
+ * afterwards on its own thread, so a slow load, such as one waiting for its {@link FindByIdBatcher} window,
+ * holds no lock of the map. Callers asking for an id that is being loaded wait on its future.
+ */
+@Component
+public class MemoryCache implements MeterBinder {
+
+    private final AsyncCache<Long, Memory> cache;
+
+    @Autowired
+    public MemoryCache(@Value("${memories.cache.maximum-size:10000}") long maximumSize,
+                       @Value("${memories.cache.expire-after-write:5m}") Duration expireAfterWrite) {
+        this(maximumSize, expireAfterWrite, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    MemoryCache(long maximumSize, Duration expireAfterWrite, Ticker ticker, Executor executor) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .ticker(ticker)
+                .executor(executor)
+                .recordStats()
+                .buildAsync();
+    }
+
+    public Memory get(Long id, Function<Long, Memory> loader) {
+        CompletableFuture<Memory> loading = new CompletableFuture<>();
+        CompletableFuture<Memory> future = cache.get(id, (key, executor) -> loading);
+        if (future == loading) {
+            try {
+                loading.complete(loader.apply(id));
+            } catch (RuntimeException | Error e) {
+                loading.completeExceptionally(e);
+            }
+        }
+        return join(future);
+    }
+
+    /**
+     * Ids that are neither cached nor being loaded are handed to {@code loader} in one call, in the order
+     * asked for and on the caller's thread; the ones it leaves out are not cached.
+     */
+    public Map<Long, Memory> getAll(Iterable<Long> ids, Function<Set<Long>, Map<Long, Memory>> loader) {
+        return join(cache.getAll(ids, (missing, executor) -> {
+            Set<Long> absent = new HashSet<>();
+            missing.forEach(absent::add);
+            Set<Long> keys = new LinkedHashSet<>();
+            ids.forEach(id -> {
+                if (absent.contains(id)) {
+                    keys.add(id);
+                }
+            });
+            return CompletableFuture.completedFuture(loader.apply(keys));
+        }));
+    }
+
+    /**
+     * The cached memory, if any, without loading it, waiting for a load or counting a hit or miss.
+     */
+    public Memory peek(Long id) {
+        CompletableFuture<Memory> future = cache.asMap().get(id);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
+    }
+
+    public void invalidate(Long id) {
+        cache.synchronous().invalidate(id);
+    }
+
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    void cleanUp() {
+        cache.synchronous().cleanUp();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "memories");
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package hellospringboot.memories.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the changes committed through this instance, so list responses can carry an ETag without hashing
+ * their payload. The epoch keeps tags from different runs or instances apart, but writes made through another
+ * instance are not observed, so a tag would keep matching a list that has changed there. That only holds
+ * when a single instance serves every write, which is why it is opt-in with
+ * {@code memories.list-etag.enabled}.
+ */
+@Component
+public class MemoryChangeCounter {
+
+    private final boolean enabled;
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final AtomicLong changes = new AtomicLong();
+
+    public MemoryChangeCounter(@Value("${memories.list-etag.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(MemoryChangedEvent event) {
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Weak ETag for the current state of the collection. Read it before querying: a change that lands in
+     * between only makes the next request miss, it never pairs an old tag with newer data for good. It is weak
+     * because one tag covers every encoding of the list, JSON, CBOR, Smile or columnar, compressed or not;
+     * Tomcat also leaves responses with a strong tag uncompressed. {@code null} when list tags are disabled.
+     */
+    public String etag() {
+        if (!enabled) {
+            return null;
+        }
+        return "W/\"" + epoch + "-" + changes.get() + "\"";
+    }
+}
@@ -0,0 +1,286 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.exception.MemoryBusyException;
+import hellospringboot.memories.model.MemoryChange;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes committed changes with increasing sequence numbers and keeps the latest {@code buffer-size} of
+ * them in a ring, so a subscriber can resume from the last sequence it saw. Committing threads only append
+ * to the ring and wake subscribers; each subscriber is drained on its own sender thread at its own pace, and
+ * one that falls a whole ring behind is told to reset instead of holding anyone back.
+ * <p>
+ * Event ids are {@code <epoch>-<sequence>}. The epoch changes on every start, so an id from an earlier run
+ * also resets rather than resuming at a sequence that now means something else.
+ */
+@Component
+public class MemoryChangeFeed implements MeterBinder, DisposableBean {
+
+    /**
+     * Receives the feed of one subscription. Calls for a subscription never overlap.
+     */
+    public interface Subscriber {
+
+        void send(String eventId, MemoryChange change) throws IOException;
+
+        /**
+         * Changes up to {@code eventId} are no longer buffered, so the subscriber has to reload what it
+         * mirrors. The feed continues after that id.
+         */
+        void reset(String eventId) throws IOException;
+
+        void heartbeat() throws IOException;
+
+        /**
+         * The feed ended the subscription, because sending failed or the application is stopping.
+         */
+        void closed();
+    }
+
+    static final int DRAIN_BATCH = 256;
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+    private final boolean enabled;
+    private final int maxSubscribers;
+    private final Duration timeout;
+    private final MemoryChange[] ring;
+    private final ExecutorService senders;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final LongAdder resets = new LongAdder();
+
+    private long lastSequence;
+
+    @Autowired
+    public MemoryChangeFeed(@Value("${memories.change-feed.enabled:false}") boolean enabled,
+                            @Value("${memories.change-feed.buffer-size:10000}") int bufferSize,
+                            @Value("${memories.change-feed.max-subscribers:1000}") int maxSubscribers,
+                            @Value("${memories.change-feed.timeout:30m}") Duration timeout) {
+        this(enabled, bufferSize, maxSubscribers, timeout, Executors.newCachedThreadPool(senderThreads()));
+    }
+
+    MemoryChangeFeed(boolean enabled, int bufferSize, int maxSubscribers, Duration timeout, ExecutorService senders) {
+        this.enabled = enabled;
+        this.maxSubscribers = maxSubscribers;
+        this.timeout = timeout;
+        this.ring = new MemoryChange[bufferSize];
+        this.senders = senders;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * How long a subscription stays open before the client has to reconnect.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(MemoryChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            long sequence = ++lastSequence;
+            ring[(int) (sequence % ring.length)] = new MemoryChange(sequence, event.getType().name().toLowerCase(),
+                    event.getId(), event.getMemory(), event.getPatch());
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * Starts a subscription after {@code lastEventId}, or at the current end of the feed when it is null.
+     */
+    public Subscription subscribe(String lastEventId, Subscriber subscriber) {
+        if (subscriptions.size() >= maxSubscribers) {
+            throw new MemoryBusyException("Too many change feed subscribers", Duration.ofSeconds(5));
+        }
+        Subscription subscription;
+        synchronized (this) {
+            Long after = lastEventId == null ? Long.valueOf(lastSequence) : sequenceOf(lastEventId);
+            // a missing or foreign id is a gap, and so is one from the future
+            boolean resumable = after != null && after <= lastSequence;
+            subscription = new Subscription(subscriber, resumable ? after : -1);
+        }
+        subscriptions.add(subscription);
+        subscription.signal();
+        return subscription;
+    }
+
+    public String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    @Scheduled(fixedDelayString = "${memories.change-feed.heartbeat:PT15S}")
+    public void heartbeat() {
+        for (Subscription subscription : subscriptions) {
+            subscription.heartbeatDue = true;
+            subscription.signal();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close(true);
+        }
+        senders.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("memories.change-feed.subscribers", subscriptions, Set::size)
+                .description("Open change feed subscriptions")
+                .register(registry);
+        FunctionCounter.builder("memories.change-feed.resets", resets, LongAdder::sum)
+                .description("Subscribers that fell behind the buffer and had to reload")
+                .register(registry);
+    }
+
+    int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    private Long sequenceOf(String eventId) {
+        int separator = eventId.lastIndexOf('-');
+        if (separator < 0 || !eventId.substring(0, separator).equals(epoch)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Up to {@code max} changes after {@code after}, or null when the oldest of them has been overwritten.
+     */
+    private synchronized List<MemoryChange> changesAfter(long after, int max) {
+        long oldest = Math.max(1, lastSequence - ring.length + 1);
+        if (after < oldest - 1) {
+            return null;
+        }
+        List<MemoryChange> changes = new ArrayList<>((int) Math.min(max, lastSequence - after));
+        for (long sequence = after + 1; sequence <= lastSequence && changes.size() < max; sequence++) {
+            changes.add(ring[(int) (sequence % ring.length)]);
+        }
+        return changes;
+    }
+
+    private synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    public final class Subscription implements Runnable {
+
+        private final Subscriber subscriber;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        private volatile boolean heartbeatDue;
+        private long cursor;
+
+        private Subscription(Subscriber subscriber, long cursor) {
+            this.subscriber = subscriber;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Ends the subscription from the subscriber's side, for example when the client went away.
+         */
+        public void cancel() {
+            close(false);
+        }
+
+        @Override
+        public void run() {
+            try {
+                drain();
+                if (heartbeatDue && !closed) {
+                    heartbeatDue = false;
+                    subscriber.heartbeat();
+                }
+            } catch (IOException | RuntimeException e) {
+                close(true);
+            } finally {
+                scheduled.set(false);
+            }
+            // a change appended after the last check but before the flag was cleared found it still set
+            if (!closed && (cursor < lastSequence() || heartbeatDue)) {
+                signal();
+            }
+        }
+
+        private void drain() throws IOException {
+            while (!closed) {
+                List<MemoryChange> changes = changesAfter(cursor, DRAIN_BATCH);
+                if (changes == null) {
+                    resets.increment();
+                    cursor = lastSequence();
+                    subscriber.reset(eventId(cursor));
+                    continue;
+                }
+                if (changes.isEmpty()) {
+                    return;
+                }
+                for (MemoryChange change : changes) {
+                    subscriber.send(eventId(change.getSequence()), change);
+                    cursor = change.getSequence();
+                }
+            }
+        }
+
+        private void signal() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                senders.execute(this);
+            }
+        }
+
+        private void close(boolean notify) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            subscriptions.remove(this);
+            if (notify) {
+                subscriber.closed();
+            }
+        }
+    }
+
+    private static ThreadFactory senderThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "memory-change-feed-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryPatch;
+
+public class MemoryChangedEvent {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final Type type;
+    private final Long id;
+    private final Memory memory;
+    private final MemoryPatch patch;
+    private final Memory previous;
+
+    private MemoryChangedEvent(Type type, Long id, Memory memory, MemoryPatch patch, Memory previous) {
+        this.type = type;
+        this.id = id;
+        this.memory = memory;
+        this.patch = patch;
+        this.previous = previous == null ? null : new Memory(previous);
+    }
+
+    public static MemoryChangedEvent created(Memory memory) {
+        return new MemoryChangedEvent(Type.CREATED, memory.getId(), new Memory(memory), null, null);
+    }
+
+    public static MemoryChangedEvent updated(Memory memory) {
+        return updated(null, memory);
+    }
+
+    public static MemoryChangedEvent updated(Memory previous, Memory memory) {
+        return new MemoryChangedEvent(Type.UPDATED, memory.getId(), new Memory(memory), null, previous);
+    }
+
+    public static MemoryChangedEvent deleted(Long id) {
+        return deleted(id, null);
+    }
+
+    public static MemoryChangedEvent deleted(Long id, Memory previous) {
+        return new MemoryChangedEvent(Type.DELETED, id, null, null, previous);
+    }
+
+    public static MemoryChangedEvent patched(Long id, MemoryPatch patch) {
+        return patched(id, null, patch);
+    }
+
+    public static MemoryChangedEvent patched(Long id, Memory previous, MemoryPatch patch) {
+        return new MemoryChangedEvent(Type.UPDATED, id, null, new MemoryPatch(patch.getTitle(), patch.getSize(),
+                patch.getInStock()), previous);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * State of the memory once the change was committed, or null for deletions and patches.
+     */
+    public Memory getMemory() {
+        return memory;
+    }
+
+    /**
+     * Fields changed by a patch, with null for the ones left alone, or null for any other change.
+     */
+    public MemoryPatch getPatch() {
+        return patch;
+    }
+
+    /**
+     * State of the memory before the change when it was at hand without another query, or null.
+     */
+    public Memory getPrevious() {
+        return previous;
+    }
+}
@@ -0,0 +1,67 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.repository.MemoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Removes soft deleted memories in the background. Each chunk is a separate short DELETE, with a pause in
+ * between, so a large purge never holds locks on the memory table for long.
+ */
+@Component
+// @Scheduled only takes effect once the bean exists, so the purge must not wait for lazy initialization
+@Lazy(false)
+public class MemoryPurger {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryPurger.class);
+
+    private final boolean enabled;
+    private final int chunkSize;
+    private final Duration pause;
+    private final MemoryRepository repository;
+
+    public MemoryPurger(@Value("${memories.soft-delete.enabled:false}") boolean enabled,
+                        @Value("${memories.soft-delete.purge-chunk-size:500}") int chunkSize,
+                        @Value("${memories.soft-delete.purge-pause:200ms}") Duration pause,
+                        MemoryRepository repository) {
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.pause = pause;
+        this.repository = repository;
+    }
+
+    @Scheduled(fixedDelayString = "${memories.soft-delete.purge-interval:PT30S}")
+    public void purge() {
+        if (!enabled) {
+            return;
+        }
+        long total = 0;
+        int purged;
+        do {
+            purged = repository.purgeDeleted(chunkSize);
+            total += purged;
+            if (purged == chunkSize && !pause()) {
+                break;
+            }
+        } while (purged == chunkSize);
+        if (total > 0) {
+            LOGGER.info("Purged {} soft deleted memories", total);
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(pause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -1,75 +1,578 @@
 package hellospringboot.memories.service;
 
+import hellospringboot.memories.exception.MemoryConflictException;
 import hellospringboot.memories.exception.MemoryNotCreateException;
 import hellospringboot.memories.exception.MemoryNotFoundException;
 import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryBatchResult;
+import hellospringboot.memories.model.MemoryPatch;
+import hellospringboot.memories.model.MemoryStats;
 import hellospringboot.memories.repository.MemoryRepository;
-import org.springframework.dao.EmptyResultDataAccessException;
+import hellospringboot.memories.repository.MemoryShards;
+import hellospringboot.memories.repository.ReplicaRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class MemoryService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryService.class);
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int TITLE_LOOKUP_SIZE = 1000;
+
+    private static final int DELETE_CHUNK_SIZE = 1000;
+
+    private static final int ID_LOOKUP_SIZE = 1000;
+
+    private static final Comparator<Memory> BY_ID = Comparator.comparing(Memory::getId);
+
     private MemoryRepository repository;
 
-    public MemoryService(MemoryRepository repository) {
+    private EntityManager entityManager;
+
+    private MemoryCache cache;
+
+    private TitleFilter titleFilter;
+
+    private SizeIndex sizeIndex;
+
+    private TitleIndex titleIndex;
+
+    private StockCounters stockCounters;
+
+    private WriteBehindQueue writeBehind;
+
+    private FindByIdBatcher findByIdBatcher;
+
+    private MemoryShards shards;
+
+    private ApplicationEventPublisher publisher;
+
+    private boolean softDelete;
+
+    public MemoryService(MemoryRepository repository, EntityManager entityManager, MemoryCache cache,
+                         TitleFilter titleFilter, SizeIndex sizeIndex, TitleIndex titleIndex,
+                         StockCounters stockCounters, WriteBehindQueue writeBehind,
+                         FindByIdBatcher findByIdBatcher, MemoryShards shards, ApplicationEventPublisher publisher,
+                         @Value("${memories.soft-delete.enabled:false}") boolean softDelete) {
         this.repository = repository;
+        this.entityManager = entityManager;
+        this.cache = cache;
+        this.titleFilter = titleFilter;
+        this.sizeIndex = sizeIndex;
+        this.titleIndex = titleIndex;
+        this.stockCounters = stockCounters;
+        this.writeBehind = writeBehind;
+        this.findByIdBatcher = findByIdBatcher;
+        this.shards = shards;
+        this.publisher = publisher;
+        this.softDelete = softDelete;
     }
 
     public Memory create(Memory memory) {
-        checkTitle(memory.getTitle());
-        return repository.save(memory);
+        if (writeBehind.isEnabled()) {
+            return writeBehind.create(memory);
+        }
+        checkTitle(memory.getTitle(), null);
+        memory.setId(null);
+        Memory saved = save(memory);
+        titleFilter.add(saved.getTitle());
+        publisher.publishEvent(MemoryChangedEvent.created(saved));
+        return saved;
     }
 
+    /**
+     * Creates the memories whose titles are free, rejecting the rest. The title lookup and the inserts run in
+     * transactions of their own: the table generator takes a second connection whenever it runs out of ids,
+     * and a transaction that already held one from the lookup could wait for it forever once every pooled
+     * connection was held the same way.
+     */
+    public MemoryBatchResult createAll(List<Memory> memories) {
+        Set<String> existing = findExistingTitles(memories);
+        Set<String> seen = new HashSet<>();
+        boolean[] accepted = new boolean[memories.size()];
+        List<Memory> batch = new ArrayList<>();
+        for (int index = 0; index < memories.size(); index++) {
+            Memory memory = memories.get(index);
+            if (!existing.contains(memory.getTitle()) && seen.add(memory.getTitle())) {
+                memory.setId(null);
+                accepted[index] = true;
+                batch.add(memory);
+            }
+        }
+        Map<Memory, String> failed = Collections.emptyMap();
+        try {
+            if (shards.isEnabled()) {
+                failed = saveAllSharded(batch);
+            } else {
+                repository.saveAllAndFlush(batch);
+            }
+        } catch (DataIntegrityViolationException e) {
+            if (!MemoryRepository.violates(e, Memory.TITLE_CONSTRAINT)) {
+                throw e;
+            }
+            throw new MemoryNotCreateException("Batch rejected, a title was created concurrently");
+        }
+        for (Memory memory : batch) {
+            if (!failed.containsKey(memory)) {
+                titleFilter.add(memory.getTitle());
+                publisher.publishEvent(MemoryChangedEvent.created(memory));
+            }
+        }
+
+        MemoryBatchResult result = new MemoryBatchResult();
+        for (int index = 0; index < memories.size(); index++) {
+            Memory memory = memories.get(index);
+            if (!accepted[index]) {
+                result.rejected(index, memory.getTitle(), titleAlreadyExists(memory.getTitle()));
+            } else if (failed.containsKey(memory)) {
+                result.rejected(index, memory.getTitle(), failed.get(memory));
+            } else {
+                result.created(index, memory);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Locks and deletes the memory, so its event carries the row as it was rather than whatever the cache
+     * last saw.
+     */
     public void delete(Long id) {
+        List<Memory> removed;
         try {
-            repository.deleteById(id);
-        } catch (EmptyResultDataAccessException e) {
+            removed = routed(id, () -> repository.deleteExisting(Collections.singletonList(id), softDelete));
+        } finally {
+            cache.invalidate(id);
+        }
+        if (removed.isEmpty()) {
             throw new MemoryNotFoundException(id);
         }
+        publisher.publishEvent(MemoryChangedEvent.deleted(id, removed.get(0)));
     }
 
+    /**
+     * Deletes the given memories one chunk of ids at a time, each chunk locked, deleted and committed on its
+     * own, and returns how many existed. Unknown ids are ignored and get no event. With soft deletes the rows
+     * are only flagged here.
+     */
+    public int deleteAll(Collection<Long> ids) {
+        List<Long> distinct = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        int deleted = 0;
+        for (int from = 0; from < distinct.size(); from += DELETE_CHUNK_SIZE) {
+            List<Long> chunk = distinct.subList(from, Math.min(from + DELETE_CHUNK_SIZE, distinct.size()));
+            List<Memory> removed = new ArrayList<>();
+            if (shards.isEnabled()) {
+                shards.byShard(chunk, keys -> repository.deleteExisting(keys, softDelete)).forEach(removed::addAll);
+            } else {
+                removed.addAll(repository.deleteExisting(chunk, softDelete));
+            }
+            deleted += removed(chunk, removed);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the memories matching the filter a chunk at a time, paging through their ids in order so that
+     * no more than one chunk of them is held at once. With shards each shard pages through its own rows.
+     */
+    public int deleteAll(boolean inStock, Integer size) {
+        if (!shards.isEnabled()) {
+            return deleteMatching(inStock, size);
+        }
+        int deleted = 0;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            deleted += shards.on(shard, () -> deleteMatching(inStock, size));
+        }
+        return deleted;
+    }
+
+    private int deleteMatching(boolean inStock, Integer size) {
+        PageRequest chunk = PageRequest.of(0, DELETE_CHUNK_SIZE);
+        int deleted = 0;
+        long after = 0L;
+        List<Long> ids;
+        while (!(ids = repository.findIdsByInStockAndSize(after, inStock, size, chunk)).isEmpty()) {
+            deleted += removed(ids, repository.deleteExisting(ids, softDelete));
+            after = ids.get(ids.size() - 1);
+        }
+        return deleted;
+    }
+
+    private int removed(List<Long> chunk, List<Memory> removed) {
+        chunk.forEach(cache::invalidate);
+        removed.forEach(memory -> publisher.publishEvent(MemoryChangedEvent.deleted(memory.getId(), memory)));
+        return removed.size();
+    }
+
+    @Transactional(readOnly = true)
     public List<Memory> findAll() {
-        return repository.findAll();
+        if (!shards.isEnabled()) {
+            return repository.findAll();
+        }
+        return MemoryShards.merge(shards.onAll(() -> {
+            List<Memory> memories = new ArrayList<>(repository.findAll());
+            memories.sort(BY_ID);
+            return memories;
+        }), BY_ID, Integer.MAX_VALUE);
+    }
+
+    @Transactional(readOnly = true)
+    public List<Memory> findAll(Long after, int limit) {
+        PageRequest page = PageRequest.of(0, pageSize(limit));
+        return merged(() -> repository.findByIdGreaterThanOrderByIdAsc(after == null ? 0L : after, page), BY_ID,
+                page.getPageSize());
+    }
+
+    /**
+     * Every memory in id order, or with shards one shard after the other, each in id order.
+     */
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<Memory> consumer) {
+        if (!shards.isEnabled()) {
+            streamShard(consumer);
+            return;
+        }
+        for (int shard = 0; shard < shards.count(); shard++) {
+            shards.readOnly(shard, () -> streamShard(consumer));
+        }
+    }
+
+    private Void streamShard(Consumer<Memory> consumer) {
+        try (Stream<Memory> memories = repository.streamAll()) {
+            memories.forEach(memory -> {
+                consumer.accept(memory);
+                entityManager.detach(memory);
+            });
+        }
+        return null;
     }
 
     public Memory findById(Long id) {
-        return repository.findById(id).orElseThrow(() -> new MemoryNotFoundException(id));
+        // whatever is loaded stays cached until it expires, so it must not come from a lagging replica
+        Memory memory = cache.get(id, key -> ReplicaRoutingDataSource.onPrimary(() -> findByIdBatcher.isEnabled()
+                ? findByIdBatcher.load(key) : routed(key, () -> repository.findById(key).orElse(null))));
+        if (memory == null) {
+            throw new MemoryNotFoundException(id);
+        }
+        return memory;
+    }
+
+    /**
+     * The memories with the given ids in the order asked for, leaving out unknown ids. Whatever the cache
+     * does not hold is read with one {@code IN} query per chunk of ids.
+     */
+    public List<Memory> findAllById(Collection<Long> ids) {
+        List<Long> distinct = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        Map<Long, Memory> memories = cache.getAll(distinct, missing -> ReplicaRoutingDataSource.onPrimary(() -> {
+            List<Long> keys = new ArrayList<>(missing);
+            Map<Long, Memory> found = new HashMap<>();
+            for (int from = 0; from < keys.size(); from += ID_LOOKUP_SIZE) {
+                List<Long> chunk = keys.subList(from, Math.min(from + ID_LOOKUP_SIZE, keys.size()));
+                if (shards.isEnabled()) {
+                    shards.byShard(chunk, repository::findAllById)
+                            .forEach(rows -> rows.forEach(memory -> found.put(memory.getId(), memory)));
+                } else {
+                    repository.findAllById(chunk).forEach(memory -> found.put(memory.getId(), memory));
+                }
+            }
+            return found;
+        }));
+        List<Memory> result = new ArrayList<>(distinct.size());
+        for (Long id : distinct) {
+            Memory memory = memories.get(id);
+            if (memory != null) {
+                result.add(memory);
+            }
+        }
+        return result;
     }
 
+    @Transactional(readOnly = true)
     public List<Memory> findBySize(int size) {
-        return repository.findBySizeAndInStockIsTrue(size);
+        if (sizeIndex.isReady()) {
+            return findAllById(sizeIndex.findBySize(size));
+        }
+        return gathered(() -> repository.findBySizeAndInStockIsTrue(size));
     }
 
+    @Transactional(readOnly = true)
     public List<Memory> findBySizeGreaterThanEqual(int size) {
-        return repository.findBySizeGreaterThanEqual(size);
+        return gathered(() -> repository.findBySizeGreaterThanEqual(size));
     }
 
+    @Transactional(readOnly = true)
     public List<Memory> findBySizeGreaterThanEqualAndInStockIsTrue(int size) {
-        return repository.findBySizeGreaterThanEqualAndInStockIsTrue(size, Sort.by("size"));
+        if (sizeIndex.isReady()) {
+            return findAllById(sizeIndex.findBySizeGreaterThanEqual(size));
+        }
+        return merged(() -> repository.findBySizeGreaterThanEqualAndInStockIsTrue(size, Sort.by("size")),
+                Comparator.comparingInt(Memory::getSize), Integer.MAX_VALUE);
     }
 
+    @Transactional(readOnly = true)
     public List<Memory> findByTitleContaining(String title) {
-        return repository.findByTitleContaining(title);
+        if (titleIndex.isReady()) {
+            return findAllById(titleIndex.search(title, false, Integer.MAX_VALUE));
+        }
+        return gathered(() -> repository.findByTitleContaining(title));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Memory> search(String title, boolean prefix, int limit) {
+        if (titleIndex.isReady()) {
+            return findAllById(titleIndex.search(title, prefix, pageSize(limit)));
+        }
+        PageRequest page = PageRequest.of(0, pageSize(limit));
+        return merged(() -> prefix ? repository.findByTitleStartingWithOrderByIdAsc(title, page)
+                : repository.findByTitleContainingOrderByIdAsc(title, page), BY_ID, page.getPageSize());
     }
 
     public Memory update(Memory newMemory, Long id) {
-        return repository.findById(id).map(memory -> {
-            checkTitle(newMemory.getTitle());
+        return update(newMemory, id, null);
+    }
+
+    /**
+     * Replaces the title of a memory. When {@code expectedVersion} is given the update only applies to that
+     * version; either way the versioned UPDATE rejects a write that raced with another one.
+     */
+    public Memory update(Memory newMemory, Long id, Long expectedVersion) {
+        return ReplicaRoutingDataSource.onPrimary(() -> routed(id, () -> repository.findById(id))).map(memory -> {
+            if (expectedVersion != null && memory.getVersion() != expectedVersion) {
+                throw new MemoryConflictException(id);
+            }
+            checkTitle(newMemory.getTitle(), id);
+            Memory previous = new Memory(memory);
             memory.setTitle(newMemory.getTitle());
-            return repository.save(memory);
+            Memory saved;
+            try {
+                saved = routed(id, () -> save(memory));
+            } catch (OptimisticLockingFailureException e) {
+                throw new MemoryConflictException(id);
+            } finally {
+                cache.invalidate(id);
+            }
+            titleFilter.add(saved.getTitle());
+            publisher.publishEvent(MemoryChangedEvent.updated(previous, saved));
+            return saved;
         }).orElseThrow(() -> new MemoryNotFoundException(id));
     }
 
-    private void checkTitle(String title) {
-        Memory memory = repository.findByTitle(title);
-        if (memory != null) {
-            throw new MemoryNotCreateException(String.format("Memory with title = $s already exists", memory.getTitle()));
+    /**
+     * Applies the non-null fields of {@code patch} with a single UPDATE, without loading the memory first.
+     * The row count is only explained with a second query when nothing was updated.
+     */
+    public void patch(Long id, MemoryPatch patch, Long expectedVersion) {
+        if (shards.isEnabled() && patch.getTitle() != null) {
+            // each shard only keeps its own titles unique
+            checkTitle(patch.getTitle(), id);
+        }
+        int updated;
+        try {
+            updated = routed(id, () -> repository.patch(id, patch.getTitle(), patch.getSize(), patch.getInStock(),
+                    expectedVersion));
+        } catch (DataIntegrityViolationException e) {
+            if (!MemoryRepository.violates(e, Memory.TITLE_CONSTRAINT)) {
+                throw e;
+            }
+            throw new MemoryNotCreateException(titleAlreadyExists(patch.getTitle()));
+        } finally {
+            cache.invalidate(id);
+        }
+        if (updated == 0) {
+            if (expectedVersion != null
+                    && ReplicaRoutingDataSource.onPrimary(() -> routed(id, () -> repository.existsById(id)))) {
+                throw new MemoryConflictException(id);
+            }
+            throw new MemoryNotFoundException(id);
         }
+        if (patch.getTitle() != null) {
+            titleFilter.add(patch.getTitle());
+        }
+        // the row is never read, so the event has no previous state and the counters reconcile instead
+        publisher.publishEvent(MemoryChangedEvent.patched(id, patch));
+    }
+
+    public MemoryStats stats() {
+        if (stockCounters.isReady()) {
+            return stockCounters.snapshot();
+        }
+        return MemoryStats.of(gathered(repository::countBySizeAndInStock));
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    private List<Memory> findAllById(long[] ids) {
+        List<Long> keys = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            keys.add(id);
+        }
+        return findAllById(keys);
+    }
+
+    /**
+     * Inserts a batch with one transaction per shard. The shards commit independently, so a batch that fails
+     * on one shard may already be stored on others.
+     */
+    /**
+     * Saves each shard's part of the batch in a transaction of its own on that shard, so one shard failing
+     * cannot undo what the others committed. A part that runs into a title created concurrently is saved
+     * one memory at a time instead. Returns the memories that were not saved, each with the reason.
+     */
+    private Map<Memory, String> saveAllSharded(List<Memory> batch) {
+        Map<Long, Memory> byId = new HashMap<>();
+        for (Memory memory : batch) {
+            memory.setId(shards.nextId());
+            byId.put(memory.getId(), memory);
+        }
+        Map<Memory, String> failed = new IdentityHashMap<>();
+        shards.byShard(byId.keySet(), ids -> {
+            List<Memory> part = ids.stream().map(byId::get).collect(Collectors.toList());
+            try {
+                repository.saveAll(part);
+                return Collections.<Memory, String>emptyMap();
+            } catch (DataIntegrityViolationException e) {
+                if (MemoryRepository.violates(e, Memory.TITLE_CONSTRAINT)) {
+                    return saveEachSharded(part);
+                }
+                return unsaved(part, e);
+            } catch (RuntimeException e) {
+                return unsaved(part, e);
+            }
+        }).forEach(failed::putAll);
+        return failed;
+    }
+
+    private Map<Memory, String> saveEachSharded(List<Memory> part) {
+        Map<Memory, String> failed = new IdentityHashMap<>();
+        for (int index = 0; index < part.size(); index++) {
+            Memory memory = part.get(index);
+            try {
+                repository.save(memory);
+            } catch (DataIntegrityViolationException e) {
+                if (!MemoryRepository.violates(e, Memory.TITLE_CONSTRAINT)) {
+                    failed.putAll(unsaved(part.subList(index, part.size()), e));
+                    break;
+                }
+                failed.put(memory, titleAlreadyExists(memory.getTitle()));
+            } catch (RuntimeException e) {
+                failed.putAll(unsaved(part.subList(index, part.size()), e));
+                break;
+            }
+        }
+        return failed;
+    }
+
+    private static Map<Memory, String> unsaved(List<Memory> memories, RuntimeException e) {
+        LOGGER.warn("Could not save {} memories on their shard", memories.size(), e);
+        Map<Memory, String> failed = new IdentityHashMap<>();
+        memories.forEach(memory -> failed.put(memory, "Not created, its shard failed: " + e.getMessage()));
+        return failed;
+    }
+
+    /**
+     * Runs {@code work} against the shard holding {@code id}, or as it is without shards.
+     */
+    private <T> T routed(Long id, Supplier<T> work) {
+        return shards.isEnabled() ? shards.on(shards.shardOf(id), work) : work.get();
+    }
+
+    /**
+     * The results of {@code query} from every shard, one shard after the other.
+     */
+    private <T> List<T> gathered(Supplier<List<T>> query) {
+        if (!shards.isEnabled()) {
+            return query.get();
+        }
+        List<T> gathered = new ArrayList<>();
+        shards.onAll(query).forEach(gathered::addAll);
+        return gathered;
+    }
+
+    /**
+     * The results of {@code query}, sorted by {@code order}, merged from every shard up to {@code limit}.
+     */
+    private List<Memory> merged(Supplier<List<Memory>> query, Comparator<Memory> order, int limit) {
+        if (!shards.isEnabled()) {
+            return query.get();
+        }
+        return MemoryShards.merge(shards.onAll(query), order, limit);
+    }
+
+    private Memory save(Memory memory) {
+        try {
+            if (shards.isEnabled() && memory.getId() == null) {
+                memory.setId(shards.nextId());
+                return routed(memory.getId(), () -> repository.save(memory));
+            }
+            return repository.save(memory);
+        } catch (DataIntegrityViolationException e) {
+            // anything but the title, such as a clash of generated ids, is not the client's to fix
+            if (!MemoryRepository.violates(e, Memory.TITLE_CONSTRAINT)) {
+                throw e;
+            }
+            throw new MemoryNotCreateException(titleAlreadyExists(memory.getTitle()));
+        }
+    }
+
+    private void checkTitle(String title, Long id) {
+        // with shards the unique constraint only covers one shard, so the check always runs
+        if (shards.isEnabled() ? title == null : !titleFilter.mayExist(title)) {
+            return;
+        }
+        for (Memory memory : ReplicaRoutingDataSource.onPrimary(() -> gathered(() -> {
+            Memory found = repository.findByTitle(title);
+            return found == null ? Collections.<Memory>emptyList() : Collections.singletonList(found);
+        }))) {
+            if (!memory.getId().equals(id)) {
+                throw new MemoryNotCreateException(titleAlreadyExists(memory.getTitle()));
+            }
+        }
+    }
+
+    private Set<String> findExistingTitles(List<Memory> memories) {
+        List<String> titles = memories.stream().map(Memory::getTitle).filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+        Set<String> existing = new HashSet<>();
+        for (int from = 0; from < titles.size(); from += TITLE_LOOKUP_SIZE) {
+            List<String> chunk = titles.subList(from, Math.min(from + TITLE_LOOKUP_SIZE, titles.size()));
+            existing.addAll(gathered(() -> repository.findTitlesByTitleIn(chunk)));
+        }
+        return existing;
+    }
+
+    private static String titleAlreadyExists(String title) {
+        return String.format("Memory with title = %s already exists", title);
     }
 }
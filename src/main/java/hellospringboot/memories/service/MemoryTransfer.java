@@ -0,0 +1,384 @@
+package hellospringboot.memories.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import hellospringboot.memories.exception.MemoryNotCreateException;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryBatchResult;
+import hellospringboot.memories.model.MemoryFormat;
+import hellospringboot.memories.model.MemoryTransferResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk import and export of memories as CSV or NDJSON. Both directions stream: exports write rows straight
+ * from the repository cursor, imports parse one record at a time and create them in chunks, so memory use
+ * does not depend on the size of the file.
+ */
+@Service
+public class MemoryTransfer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryTransfer.class);
+
+    private static final String[] CSV_HEADER = {"id", "title", "size", "inStock"};
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_ERRORS = 100;
+
+    private final MemoryService service;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final Duration progressInterval;
+
+    public MemoryTransfer(MemoryService service, ObjectMapper objectMapper,
+                          @Value("${memories.transfer.chunk-size:1000}") int chunkSize,
+                          @Value("${memories.transfer.progress-interval:10s}") Duration progressInterval) {
+        this.service = service;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.progressInterval = progressInterval;
+    }
+
+    public MemoryTransferResult exportTo(Path path) throws IOException {
+        MemoryFormat format = MemoryFormat.fromFileName(path.getFileName().toString());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+            return export(format, out);
+        }
+    }
+
+    public MemoryTransferResult importFrom(Path path) throws IOException {
+        MemoryFormat format = MemoryFormat.fromFileName(path.getFileName().toString());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             InputStream in = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE)) {
+            return importFrom(format, in);
+        }
+    }
+
+    /**
+     * Writes every memory to {@code out} in id order. The stream is flushed but not closed.
+     */
+    public MemoryTransferResult export(MemoryFormat format, OutputStream out) throws IOException {
+        Progress progress = new Progress("Exported");
+        try {
+            if (format == MemoryFormat.CSV) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+                writeCsvRow(writer, CSV_HEADER);
+                service.streamAll(memory -> {
+                    try {
+                        writeCsvRow(writer, String.valueOf(memory.getId()), memory.getTitle(),
+                                String.valueOf(memory.getSize()), String.valueOf(memory.isInStock()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    progress.advance();
+                });
+                writer.flush();
+            } else {
+                SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(out);
+                service.streamAll(memory -> {
+                    try {
+                        writer.write(memory);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    progress.advance();
+                });
+                writer.flush();
+                if (progress.count > 0) {
+                    out.write('\n');
+                }
+                out.flush();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return progress.finish(format, 0, 0, Collections.emptyList());
+    }
+
+    /**
+     * Creates a memory for every record read from {@code in}. Ids in the input are ignored, and records with
+     * a missing title, a bad size or a title that already exists are rejected without stopping the import.
+     */
+    public MemoryTransferResult importFrom(MemoryFormat format, InputStream in) throws IOException {
+        Import job = new Import();
+        if (format == MemoryFormat.CSV) {
+            CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8),
+                    BUFFER_SIZE));
+            Map<String, Integer> columns = columns(reader.next());
+            List<String> next;
+            while ((next = reader.next()) != null) {
+                List<String> row = next;
+                if (row.size() > 1 || !row.get(0).isEmpty()) {
+                    job.add(() -> toMemory(row, columns));
+                }
+            }
+        } else {
+            try (MappingIterator<JsonNode> records = objectMapper.readerFor(JsonNode.class).readValues(in)) {
+                while (records.hasNextValue()) {
+                    JsonNode record = records.nextValue();
+                    job.add(() -> toMemory(record));
+                }
+            } catch (JsonProcessingException e) {
+                // the parser cannot resynchronise after malformed JSON, so keep what was created and stop
+                job.finish(format);
+                throw new MemoryNotCreateException("Record " + (job.progress.count + 1) + " is not valid JSON: "
+                        + e.getOriginalMessage() + ", " + job.created + " memories were created before it");
+            }
+        }
+        return job.finish(format);
+    }
+
+    private static Map<String, Integer> columns(List<String> header) {
+        Map<String, Integer> columns = new HashMap<>();
+        if (header != null) {
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).trim(), i);
+            }
+        }
+        if (!columns.containsKey("title")) {
+            throw new MemoryNotCreateException("CSV header must name a title column");
+        }
+        return columns;
+    }
+
+    private static Memory toMemory(List<String> row, Map<String, Integer> columns) {
+        String size = column(row, columns, "size");
+        String inStock = column(row, columns, "inStock");
+        return toMemory(column(row, columns, "title"), size == null || size.isEmpty() ? null : size,
+                inStock != null && Boolean.parseBoolean(inStock.trim()));
+    }
+
+    private static String column(List<String> row, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index == null || index >= row.size() ? null : row.get(index);
+    }
+
+    private static Memory toMemory(JsonNode record) {
+        JsonNode size = record.get("size");
+        if (size != null && !size.isNull() && !size.canConvertToInt()) {
+            throw new IllegalArgumentException("size must be an integer");
+        }
+        return toMemory(record.path("title").textValue(), size == null || size.isNull() ? null : size.asText(),
+                record.path("inStock").asBoolean(false));
+    }
+
+    private static Memory toMemory(String title, String size, boolean inStock) {
+        if (title == null || title.isBlank()) {
+            throw new IllegalArgumentException("title is required");
+        }
+        try {
+            return new Memory(title, size == null ? 0 : Integer.parseInt(size.trim()), inStock);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("size must be an integer, was '" + size + "'");
+        }
+    }
+
+    private static void writeCsvRow(Writer writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i] == null ? "" : fields[i];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0
+                    || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write('\n');
+    }
+
+    private interface Record {
+        Memory parse();
+    }
+
+    /**
+     * Buffers parsed records into chunks and creates each chunk in one transaction.
+     */
+    private final class Import {
+
+        private final Progress progress = new Progress("Imported");
+        private final List<Memory> chunk = new ArrayList<>(chunkSize);
+        private final List<Long> chunkRecords = new ArrayList<>(chunkSize);
+        private final List<String> errors = new ArrayList<>();
+        private long created;
+        private long rejected;
+
+        void add(Record record) {
+            long number = progress.advance();
+            try {
+                chunk.add(record.parse());
+                chunkRecords.add(number);
+            } catch (IllegalArgumentException e) {
+                reject(number, e.getMessage());
+            }
+            if (chunk.size() == chunkSize) {
+                flush();
+            }
+        }
+
+        MemoryTransferResult finish(MemoryFormat format) {
+            flush();
+            return progress.finish(format, created, rejected, errors);
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            try {
+                count(service.createAll(chunk), chunkRecords);
+            } catch (MemoryNotCreateException e) {
+                // a title was created concurrently and the whole chunk rolled back, so find out which one
+                for (int i = 0; i < chunk.size(); i++) {
+                    try {
+                        count(service.createAll(Collections.singletonList(chunk.get(i))),
+                                Collections.singletonList(chunkRecords.get(i)));
+                    } catch (MemoryNotCreateException alone) {
+                        reject(chunkRecords.get(i), alone.getMessage());
+                    }
+                }
+            }
+            chunk.clear();
+            chunkRecords.clear();
+        }
+
+        private void count(MemoryBatchResult result, List<Long> records) {
+            created += result.getCreated();
+            for (MemoryBatchResult.Item item : result.getItems()) {
+                if (item.getStatus() == MemoryBatchResult.Status.REJECTED) {
+                    reject(records.get(item.getIndex()), item.getMessage());
+                }
+            }
+        }
+
+        private void reject(long number, String message) {
+            rejected++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add("Record " + number + ": " + message);
+            }
+        }
+    }
+
+    /**
+     * Counts records and logs the running throughput every {@code progress-interval}.
+     */
+    private final class Progress {
+
+        private final String action;
+        private final long started = System.nanoTime();
+        private long count;
+        private long nextReport = started + progressInterval.toNanos();
+
+        Progress(String action) {
+            this.action = action;
+        }
+
+        long advance() {
+            count++;
+            long now = System.nanoTime();
+            if (now - nextReport >= 0) {
+                nextReport = now + progressInterval.toNanos();
+                LOGGER.info("{} {} memories so far ({}/s)", action, count, rate(now));
+            }
+            return count;
+        }
+
+        MemoryTransferResult finish(MemoryFormat format, long created, long rejected, List<String> errors) {
+            MemoryTransferResult result = new MemoryTransferResult(format, count, created, rejected, errors,
+                    Duration.ofNanos(System.nanoTime() - started).toMillis());
+            LOGGER.info("{} {} memories as {} in {} ms ({}/s), {} created, {} rejected", action, count, format,
+                    result.getElapsedMillis(), result.getRowsPerSecond(), created, rejected);
+            return result;
+        }
+
+        private long rate(long now) {
+            long elapsed = now - started;
+            return elapsed <= 0 ? count : count * 1_000_000_000L / elapsed;
+        }
+    }
+
+    /**
+     * RFC 4180 reader: quoted fields may contain separators, doubled quotes and line breaks.
+     */
+    static final class CsvReader {
+
+        private final Reader reader;
+
+        CsvReader(Reader reader) {
+            this.reader = reader.markSupported() ? reader : new BufferedReader(reader);
+        }
+
+        List<String> next() throws IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean read = false;
+            for (int c = reader.read(); c != -1; c = reader.read()) {
+                read = true;
+                if (quoted) {
+                    if (c != '"') {
+                        field.append((char) c);
+                        continue;
+                    }
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+            }
+            if (!read) {
+                return null;
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
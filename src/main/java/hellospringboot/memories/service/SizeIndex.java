@@ -0,0 +1,342 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryPatch;
+import hellospringboot.memories.model.MemorySizeView;
+import hellospringboot.memories.repository.MemoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Ids of the in-stock memories grouped by size. Sizes are kept in a sorted int array, each with a sorted
+ * long array of ids, so range queries return ids ordered by size and then id without boxing.
+ */
+@Component
+public class SizeIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SizeIndex.class);
+
+    private static final long[] NO_IDS = new long[0];
+
+    private final boolean enabled;
+    private final MemoryRepository repository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IdSizeMap sizeById = new IdSizeMap();
+
+    private int[] sizes = new int[16];
+    private long[][] ids = new long[16][];
+    private int[] idCounts = new int[16];
+    private int sizeCount;
+
+    private List<MemoryChangedEvent> pending;
+    private volatile boolean ready;
+
+    public SizeIndex(@Value("${memories.size-index.enabled:false}") boolean enabled, MemoryRepository repository) {
+        this.enabled = enabled;
+        this.repository = repository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try (Stream<MemorySizeView> rows = repository.streamInStockSizes()) {
+            rows.forEach(row -> {
+                lock.writeLock().lock();
+                try {
+                    put(row.getId(), row.getSize(), true);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        }
+        List<Long> unresolved = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (MemoryChangedEvent event : pending) {
+                if (!apply(event)) {
+                    unresolved.add(event.getId());
+                }
+            }
+            pending = null;
+            ready = true;
+            LOGGER.info("Size index loaded with {} in-stock memories over {} sizes", sizeById.size(), sizeCount);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        unresolved.forEach(this::refresh);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(MemoryChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        boolean resolved = true;
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(event);
+            } else if (ready) {
+                resolved = apply(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!resolved) {
+            refresh(event.getId());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long[] findBySize(int size) {
+        lock.readLock().lock();
+        try {
+            int position = Arrays.binarySearch(sizes, 0, sizeCount, size);
+            return position < 0 ? NO_IDS : Arrays.copyOf(ids[position], idCounts[position]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] findBySizeGreaterThanEqual(int size) {
+        lock.readLock().lock();
+        try {
+            int position = Arrays.binarySearch(sizes, 0, sizeCount, size);
+            int from = position < 0 ? -position - 1 : position;
+            int total = 0;
+            for (int i = from; i < sizeCount; i++) {
+                total += idCounts[i];
+            }
+            long[] result = new long[total];
+            int offset = 0;
+            for (int i = from; i < sizeCount; i++) {
+                System.arraycopy(ids[i], 0, result, offset, idCounts[i]);
+                offset += idCounts[i];
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a change, returning false for a patch that puts a memory back in stock without its size.
+     */
+    private boolean apply(MemoryChangedEvent event) {
+        Memory memory = event.getMemory();
+        MemoryPatch patch = event.getPatch();
+        if (patch != null) {
+            return apply(event.getId(), patch);
+        }
+        if (memory == null) {
+            remove(event.getId());
+        } else {
+            put(memory.getId(), memory.getSize(), memory.isInStock());
+        }
+        return true;
+    }
+
+    private boolean apply(long id, MemoryPatch patch) {
+        if (Boolean.FALSE.equals(patch.getInStock())) {
+            remove(id);
+            return true;
+        }
+        boolean filed = sizeById.find(id) >= 0;
+        if (patch.getSize() != null && (filed || Boolean.TRUE.equals(patch.getInStock()))) {
+            put(id, patch.getSize(), true);
+            return true;
+        }
+        return filed || patch.getInStock() == null;
+    }
+
+    /**
+     * Files a memory from its committed row, for changes that do not carry enough state to apply.
+     */
+    private void refresh(long id) {
+        Optional<Memory> memory = repository.findById(id);
+        lock.writeLock().lock();
+        try {
+            if (memory.isPresent()) {
+                put(id, memory.get().getSize(), memory.get().isInStock());
+            } else {
+                remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(long id, int size, boolean inStock) {
+        remove(id);
+        if (!inStock) {
+            return;
+        }
+        int position = Arrays.binarySearch(sizes, 0, sizeCount, size);
+        if (position < 0) {
+            position = -position - 1;
+            insertSize(position, size);
+        }
+        long[] sizeIds = ids[position];
+        int count = idCounts[position];
+        int idPosition = -Arrays.binarySearch(sizeIds, 0, count, id) - 1;
+        if (count == sizeIds.length) {
+            sizeIds = Arrays.copyOf(sizeIds, count * 2);
+            ids[position] = sizeIds;
+        }
+        System.arraycopy(sizeIds, idPosition, sizeIds, idPosition + 1, count - idPosition);
+        sizeIds[idPosition] = id;
+        idCounts[position] = count + 1;
+        sizeById.put(id, size);
+    }
+
+    private void remove(long id) {
+        int slot = sizeById.find(id);
+        if (slot < 0) {
+            return;
+        }
+        int position = Arrays.binarySearch(sizes, 0, sizeCount, sizeById.valueAt(slot));
+        sizeById.removeAt(slot);
+        long[] sizeIds = ids[position];
+        int count = idCounts[position];
+        int idPosition = Arrays.binarySearch(sizeIds, 0, count, id);
+        System.arraycopy(sizeIds, idPosition + 1, sizeIds, idPosition, count - idPosition - 1);
+        idCounts[position] = count - 1;
+        if (count == 1) {
+            removeSize(position);
+        }
+    }
+
+    private void insertSize(int position, int size) {
+        if (sizeCount == sizes.length) {
+            sizes = Arrays.copyOf(sizes, sizeCount * 2);
+            ids = Arrays.copyOf(ids, sizeCount * 2);
+            idCounts = Arrays.copyOf(idCounts, sizeCount * 2);
+        }
+        System.arraycopy(sizes, position, sizes, position + 1, sizeCount - position);
+        System.arraycopy(ids, position, ids, position + 1, sizeCount - position);
+        System.arraycopy(idCounts, position, idCounts, position + 1, sizeCount - position);
+        sizes[position] = size;
+        ids[position] = new long[4];
+        idCounts[position] = 0;
+        sizeCount++;
+    }
+
+    private void removeSize(int position) {
+        System.arraycopy(sizes, position + 1, sizes, position, sizeCount - position - 1);
+        System.arraycopy(ids, position + 1, ids, position, sizeCount - position - 1);
+        System.arraycopy(idCounts, position + 1, idCounts, position, sizeCount - position - 1);
+        sizeCount--;
+        ids[sizeCount] = null;
+    }
+
+    /**
+     * Open addressing long to int map with linear probing, used to find the size an id is filed under.
+     */
+    private static final class IdSizeMap {
+
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = emptyKeys(64);
+        private int[] values = new int[64];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int find(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        int valueAt(int slot) {
+            return values[slot];
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                size++;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        void removeAt(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                int home = slot(keys[next], mask);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = EMPTY;
+            size--;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = emptyKeys(oldKeys.length * 2);
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private static long[] emptyKeys(int length) {
+            long[] keys = new long[length];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+}
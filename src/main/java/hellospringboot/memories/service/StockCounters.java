@@ -0,0 +1,178 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryPatch;
+import hellospringboot.memories.model.MemoryStats;
+import hellospringboot.memories.model.MemoryStockCount;
+import hellospringboot.memories.repository.MemoryRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memory counts per size and stock state, kept in striped adders that every change adjusts. Changes that
+ * do not carry the previous state of the memory cannot be counted exactly, so they mark the counters stale
+ * and the next check reconciles them against a GROUP BY, as does a periodic full reconciliation.
+ */
+@Component
+public class StockCounters implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StockCounters.class);
+
+    private static final long[] NONE = new long[2];
+
+    private final boolean enabled;
+    private final Duration reconcileInterval;
+    private final MemoryRepository repository;
+    private final ConcurrentMap<Integer, LongAdder[]> counts = new ConcurrentHashMap<>();
+    private final AtomicBoolean stale = new AtomicBoolean();
+    private final LongAdder drift = new LongAdder();
+
+    private volatile long reconciledAt;
+    private volatile boolean ready;
+
+    public StockCounters(@Value("${memories.stats.enabled:false}") boolean enabled,
+                         @Value("${memories.stats.reconcile-interval:5m}") Duration reconcileInterval,
+                         MemoryRepository repository) {
+        this.enabled = enabled;
+        this.reconcileInterval = reconcileInterval;
+        this.repository = repository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        reconcile();
+        ready = true;
+        LOGGER.info("Stock counters loaded over {} sizes", counts.size());
+    }
+
+    @Scheduled(fixedDelayString = "${memories.stats.check-interval:PT5S}")
+    public void reconcileIfNeeded() {
+        if (!ready) {
+            return;
+        }
+        if (stale.getAndSet(false) || System.nanoTime() - reconciledAt >= reconcileInterval.toNanos()) {
+            reconcile();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(MemoryChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Memory memory = event.getMemory();
+        Memory previous = event.getPrevious();
+        MemoryPatch patch = event.getPatch();
+        switch (event.getType()) {
+            case CREATED:
+                add(memory.getSize(), memory.isInStock(), 1);
+                break;
+            case UPDATED:
+                if (patch != null && patch.getSize() == null && patch.getInStock() == null) {
+                    break;
+                }
+                if (previous == null) {
+                    stale.set(true);
+                    break;
+                }
+                add(previous.getSize(), previous.isInStock(), -1);
+                if (memory != null) {
+                    add(memory.getSize(), memory.isInStock(), 1);
+                } else {
+                    add(patch.getSize() != null ? patch.getSize() : previous.getSize(),
+                            patch.getInStock() != null ? patch.getInStock() : previous.isInStock(), 1);
+                }
+                break;
+            case DELETED:
+                if (previous == null) {
+                    stale.set(true);
+                } else {
+                    add(previous.getSize(), previous.isInStock(), -1);
+                }
+                break;
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public MemoryStats snapshot() {
+        SortedMap<Integer, long[]> snapshot = new TreeMap<>();
+        counts.forEach((size, cells) -> snapshot.put(size, new long[]{cells[0].sum(), cells[1].sum()}));
+        return new MemoryStats(snapshot);
+    }
+
+    /**
+     * Moves every counter to the count in the table. Changes committed while the query runs may be off until
+     * the next reconciliation.
+     */
+    public void reconcile() {
+        Map<Integer, long[]> actual = new HashMap<>();
+        for (MemoryStockCount row : repository.countBySizeAndInStock()) {
+            actual.computeIfAbsent(row.getSize(), size -> new long[2])[row.isInStock() ? 1 : 0] = row.getCount();
+        }
+        Set<Integer> sizes = new HashSet<>(counts.keySet());
+        sizes.addAll(actual.keySet());
+        long corrected = 0;
+        for (Integer size : sizes) {
+            long[] expected = actual.getOrDefault(size, NONE);
+            LongAdder[] cells = cells(size);
+            for (int i = 0; i < cells.length; i++) {
+                long delta = expected[i] - cells[i].sum();
+                if (delta != 0) {
+                    cells[i].add(delta);
+                    corrected += Math.abs(delta);
+                }
+            }
+        }
+        if (ready && corrected > 0) {
+            drift.add(corrected);
+            LOGGER.debug("Stock counters reconciled, {} counts corrected", corrected);
+        }
+        reconciledAt = System.nanoTime();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("memories.stats.drift", drift, LongAdder::sum)
+                .description("Counts corrected by reconciling the stock counters with the table")
+                .register(registry);
+    }
+
+    private void add(int size, boolean inStock, int delta) {
+        cells(size)[inStock ? 1 : 0].add(delta);
+    }
+
+    private LongAdder[] cells(int size) {
+        LongAdder[] cells = counts.get(size);
+        if (cells == null) {
+            cells = counts.computeIfAbsent(size, key -> new LongAdder[]{new LongAdder(), new LongAdder()});
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,123 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.repository.MemoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter over the titles stored in the database. A negative answer means the title is certainly
+ * free, so the uniqueness pre-check can be skipped and the unique index has the last word. Removed or
+ * renamed titles stay in the filter and only cost an extra pre-check.
+ */
+@Component
+public class TitleFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TitleFilter.class);
+
+    private final boolean enabled;
+    private final MemoryRepository repository;
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private volatile boolean ready;
+
+    public TitleFilter(@Value("${memories.title-filter.enabled:false}") boolean enabled,
+                       @Value("${memories.title-filter.expected-insertions:1000000}") long expectedInsertions,
+                       @Value("${memories.title-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                       MemoryRepository repository) {
+        this.enabled = enabled;
+        this.repository = repository;
+        long optimalBits = (long) (-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = enabled ? Math.max(Long.SIZE, optimalBits) : Long.SIZE;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((bitCount + Long.SIZE - 1) / Long.SIZE));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        LongAdder count = new LongAdder();
+        try (Stream<String> titles = repository.streamTitles()) {
+            titles.forEach(title -> {
+                add(title);
+                count.increment();
+            });
+        }
+        ready = true;
+        LOGGER.info("Title filter loaded with {} titles", count.sum());
+    }
+
+    /**
+     * Returns false only when no stored memory can have this title. While disabled this is always false
+     * and uniqueness is left to the database; while still loading it is always true.
+     */
+    public boolean mayExist(String title) {
+        if (!enabled || title == null) {
+            return false;
+        }
+        if (!ready) {
+            return true;
+        }
+        long hash1 = hash(title);
+        long hash2 = mix(hash1);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(hash1 + i * hash2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(String title) {
+        if (!enabled || title == null) {
+            return;
+        }
+        long hash1 = hash(title);
+        long hash2 = mix(hash1);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(hash1 + i * hash2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    private long index(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+
+    private static long hash(String title) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : title.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,416 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryPatch;
+import hellospringboot.memories.model.MemoryTitleView;
+import hellospringboot.memories.repository.MemoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Trigram inverted index over titles. Every trigram maps to the ids of the titles containing it, stored as
+ * delta encoded varints. Candidates from the posting intersection are verified against the stored title,
+ * so results are exactly those of {@code title LIKE '%text%'} (or {@code 'text%'}) in id order.
+ * <p>
+ * By default titles and queries are compared ignoring case and accents, like MySQL's default
+ * {@code utf8mb4_0900_ai_ci} collation. With {@code memories.title-index.ignore-case=false} they are compared
+ * exactly, which matches binary collations and H2.
+ */
+@Component
+public class TitleIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TitleIndex.class);
+
+    private static final int GRAM = 3;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final boolean enabled;
+    private final boolean ignoreCase;
+    private final MemoryRepository repository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, String> titleById = new HashMap<>();
+    private final Map<Long, PostingList> postings = new HashMap<>();
+    private final PostingList allIds = new PostingList();
+
+    private List<MemoryChangedEvent> pending;
+    private volatile boolean ready;
+
+    public TitleIndex(@Value("${memories.title-index.enabled:false}") boolean enabled,
+                      @Value("${memories.title-index.ignore-case:true}") boolean ignoreCase,
+                      MemoryRepository repository) {
+        this.enabled = enabled;
+        this.ignoreCase = ignoreCase;
+        this.repository = repository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try (Stream<MemoryTitleView> rows = repository.streamIdsAndTitles()) {
+            rows.forEach(row -> {
+                lock.writeLock().lock();
+                try {
+                    put(row.getId(), row.getTitle());
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        }
+        lock.writeLock().lock();
+        try {
+            pending.forEach(this::apply);
+            pending = null;
+            ready = true;
+            LOGGER.info("Title index loaded with {} titles and {} trigrams", titleById.size(), postings.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(MemoryChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(event);
+            } else if (ready) {
+                apply(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Ids of the titles containing {@code text}, or starting with it when {@code prefix} is set, in ascending
+     * order and at most {@code limit} of them.
+     */
+    public long[] search(String text, boolean prefix, int limit) {
+        String normalized = normalize(text);
+        lock.readLock().lock();
+        try {
+            long[] candidates = normalized.length() < GRAM ? allIds.toArray() : candidates(normalized);
+            long[] result = new long[Math.min(candidates.length, limit)];
+            int count = 0;
+            for (int i = 0; i < candidates.length && count < result.length; i++) {
+                String title = titleById.get(candidates[i]);
+                if (prefix ? title.startsWith(normalized) : title.contains(normalized)) {
+                    result[count++] = candidates[i];
+                }
+            }
+            return Arrays.copyOf(result, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long[] candidates(String text) {
+        List<PostingList> lists = new ArrayList<>();
+        for (long gram : grams(text)) {
+            PostingList list = postings.get(gram);
+            if (list == null) {
+                return new long[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        long[] result = lists.get(0).toArray();
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i).toArray());
+        }
+        return result;
+    }
+
+    private void apply(MemoryChangedEvent event) {
+        Memory memory = event.getMemory();
+        MemoryPatch patch = event.getPatch();
+        if (patch != null) {
+            if (patch.getTitle() != null) {
+                put(event.getId(), patch.getTitle());
+            }
+        } else if (memory == null) {
+            remove(event.getId());
+        } else {
+            put(memory.getId(), memory.getTitle());
+        }
+    }
+
+    private void put(long id, String title) {
+        String normalized = title == null ? null : normalize(title);
+        String previous = titleById.get(id);
+        if (previous != null && previous.equals(normalized)) {
+            return;
+        }
+        remove(id);
+        if (normalized == null) {
+            return;
+        }
+        titleById.put(id, normalized);
+        allIds.add(id);
+        for (long gram : grams(normalized)) {
+            postings.computeIfAbsent(gram, key -> new PostingList()).add(id);
+        }
+    }
+
+    private void remove(long id) {
+        String title = titleById.remove(id);
+        if (title == null) {
+            return;
+        }
+        allIds.remove(id);
+        for (long gram : grams(title)) {
+            PostingList list = postings.get(gram);
+            list.remove(id);
+            if (list.size() == 0) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    private String normalize(String text) {
+        if (!ignoreCase) {
+            return text;
+        }
+        return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<Long> grams(String text) {
+        Set<Long> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    private static long[] intersect(long[] left, long[] right) {
+        long[] result = new long[Math.min(left.length, right.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < left.length && j < right.length; ) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[count++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Sorted ids split into blocks of varint encoded gaps. Ids are handed out in ascending order, so adding
+     * usually appends to the last block; an out of order add or a removal re-encodes only the block holding
+     * the id, splitting it when it grows to twice the block size and dropping it when it empties.
+     */
+    static final class PostingList {
+
+        static final int BLOCK = 128;
+
+        private final List<Block> blocks = new ArrayList<>();
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void add(long id) {
+            Block tail = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            if (tail == null || id > tail.last) {
+                if (tail == null || tail.size >= BLOCK) {
+                    tail = new Block();
+                    blocks.add(tail);
+                }
+                tail.append(id);
+                size++;
+                return;
+            }
+            int index = blockFor(id);
+            Block block = blocks.get(index);
+            if (!block.insert(id)) {
+                return;
+            }
+            size++;
+            if (block.size >= 2 * BLOCK) {
+                blocks.add(index + 1, block.split());
+            }
+        }
+
+        void remove(long id) {
+            if (blocks.isEmpty() || id > blocks.get(blocks.size() - 1).last) {
+                return;
+            }
+            int index = blockFor(id);
+            Block block = blocks.get(index);
+            if (!block.delete(id)) {
+                return;
+            }
+            size--;
+            if (block.size == 0) {
+                blocks.remove(index);
+            }
+        }
+
+        long[] toArray() {
+            long[] ids = new long[size];
+            int offset = 0;
+            for (Block block : blocks) {
+                block.decode(ids, offset);
+                offset += block.size;
+            }
+            return ids;
+        }
+
+        int blocks() {
+            return blocks.size();
+        }
+
+        /**
+         * Index of the first block whose last id is not below {@code id}; there must be one.
+         */
+        private int blockFor(long id) {
+            int low = 0;
+            int high = blocks.size() - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (blocks.get(middle).last < id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static final class Block {
+
+        private byte[] data = new byte[16];
+        private int length;
+        private int size;
+        private long last;
+
+        void append(long id) {
+            if (length + 10 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10));
+            }
+            long gap = id - last;
+            while ((gap & ~0x7FL) != 0) {
+                data[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            data[length++] = (byte) gap;
+            last = id;
+            size++;
+        }
+
+        boolean insert(long id) {
+            long[] ids = toArray();
+            int position = Arrays.binarySearch(ids, id);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            long[] updated = new long[ids.length + 1];
+            System.arraycopy(ids, 0, updated, 0, position);
+            updated[position] = id;
+            System.arraycopy(ids, position, updated, position + 1, ids.length - position);
+            encode(updated, 0, updated.length);
+            return true;
+        }
+
+        boolean delete(long id) {
+            long[] ids = toArray();
+            int position = Arrays.binarySearch(ids, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, ids.length - position - 1);
+            encode(ids, 0, ids.length - 1);
+            return true;
+        }
+
+        /**
+         * Keeps the lower half of the ids and returns a block with the upper half.
+         */
+        Block split() {
+            long[] ids = toArray();
+            int half = ids.length / 2;
+            Block upper = new Block();
+            upper.encode(ids, half, ids.length);
+            encode(ids, 0, half);
+            return upper;
+        }
+
+        long[] toArray() {
+            long[] ids = new long[size];
+            decode(ids, 0);
+            return ids;
+        }
+
+        void decode(long[] ids, int offset) {
+            long current = 0;
+            int position = 0;
+            for (int i = 0; i < size; i++) {
+                long gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    gap |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                current += gap;
+                ids[offset + i] = current;
+            }
+        }
+
+        private void encode(long[] ids, int from, int to) {
+            length = 0;
+            size = 0;
+            last = 0;
+            for (int i = from; i < to; i++) {
+                append(ids[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.exception.MemoryBusyException;
+import hellospringboot.memories.exception.MemoryNotCreateException;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryBatchResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Write-behind mode for creates. Callers queue their memory and wait while a single writer thread groups
+ * queued creates into one {@link MemoryService#createAll} transaction per batch, flushing when the batch is
+ * full or the oldest create has waited {@code max-delay}. A full queue rejects new creates instead of
+ * blocking, and stopping the context drains whatever is queued before the database goes away. A writer that
+ * dies on an unexpected error stops the queue and fails every pending create rather than leaving callers waiting.
+ */
+@Component
+public class WriteBehindQueue implements SmartLifecycle, MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private static final Duration RETRY_AFTER = Duration.ofSeconds(1);
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration maxDelay;
+    private final Duration shutdownTimeout;
+    private final Duration createTimeout;
+    private final ObjectProvider<MemoryService> service;
+    private final BlockingQueue<PendingCreate> queue;
+
+    private volatile boolean accepting;
+    private Thread writer;
+
+    public WriteBehindQueue(@Value("${memories.write-behind.enabled:false}") boolean enabled,
+                            @Value("${memories.write-behind.queue-capacity:10000}") int queueCapacity,
+                            @Value("${memories.write-behind.batch-size:500}") int batchSize,
+                            @Value("${memories.write-behind.max-delay:5ms}") Duration maxDelay,
+                            @Value("${memories.write-behind.shutdown-timeout:30s}") Duration shutdownTimeout,
+                            @Value("${memories.write-behind.create-timeout:30s}") Duration createTimeout,
+                            ObjectProvider<MemoryService> service) {
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.shutdownTimeout = shutdownTimeout;
+        this.createTimeout = createTimeout;
+        this.service = service;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the memory and waits, up to {@code create-timeout}, until the batch holding it commits.
+     */
+    public Memory create(Memory memory) {
+        PendingCreate create = enqueue(memory);
+        try {
+            return create.future.get(createTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw timedOut(create);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw timedOut(create);
+        }
+    }
+
+    public CompletableFuture<Memory> submit(Memory memory) {
+        return enqueue(memory).future;
+    }
+
+    private PendingCreate enqueue(Memory memory) {
+        PendingCreate create = new PendingCreate(memory);
+        if (!accepting || !queue.offer(create)) {
+            throw new MemoryBusyException("Too many pending creates, retry later", RETRY_AFTER);
+        }
+        if (!accepting && queue.remove(create)) {
+            // stopped while queueing, and the writer may already be gone
+            throw new MemoryBusyException("Shutting down, retry later", RETRY_AFTER);
+        }
+        return create;
+    }
+
+    private MemoryBusyException timedOut(PendingCreate create) {
+        if (queue.remove(create)) {
+            return new MemoryBusyException("Create not written after " + createTimeout + ", retry later", RETRY_AFTER);
+        }
+        // already handed to the writer, so it may still commit
+        return new MemoryBusyException("Create not committed after " + createTimeout + ", its outcome is unknown",
+                RETRY_AFTER);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        accepting = true;
+        writer = new Thread(this::run, "memories-write-behind");
+        writer.start();
+    }
+
+    @Override
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        accepting = false;
+        try {
+            writer.join(shutdownTimeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            LOGGER.warn("Write-behind queue not drained after {}, {} creates left", shutdownTimeout, queue.size());
+            writer.interrupt();
+        }
+        writer = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return writer != null;
+    }
+
+    /**
+     * Stops after the web server, so requests still in flight can queue, and before the data source closes.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("memories.write-behind.queue", queue, BlockingQueue::size)
+                .description("Creates waiting for the write-behind writer")
+                .register(registry);
+    }
+
+    private void run() {
+        List<PendingCreate> batch = new ArrayList<>(batchSize);
+        try {
+            while (accepting || !queue.isEmpty()) {
+                PendingCreate first = queue.poll(POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelay.toNanos();
+                while (batch.size() < batchSize) {
+                    PendingCreate next = queue.poll();
+                    if (next == null) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0 || !accepting) {
+                            break;
+                        }
+                        next = queue.poll(Math.min(remaining, POLL_INTERVAL.toNanos()), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            continue;
+                        }
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(batch, new MemoryBusyException("Create aborted on shutdown", RETRY_AFTER));
+        } catch (Throwable e) {
+            LOGGER.error("Write-behind writer died, rejecting creates until restart", e);
+            accepting = false;
+            abort(batch, new MemoryBusyException("Write-behind writer died, retry later", RETRY_AFTER));
+        }
+    }
+
+    private void abort(List<PendingCreate> batch, MemoryBusyException aborted) {
+        batch.forEach(create -> create.future.completeExceptionally(aborted));
+        PendingCreate create;
+        while ((create = queue.poll()) != null) {
+            create.future.completeExceptionally(aborted);
+        }
+    }
+
+    void flush(List<PendingCreate> batch) {
+        List<Memory> memories = new ArrayList<>(batch.size());
+        batch.forEach(create -> memories.add(create.memory));
+        try {
+            complete(batch, service.getObject().createAll(memories));
+        } catch (MemoryNotCreateException e) {
+            // a title was created concurrently and the whole batch rolled back, so find out which one
+            batch.forEach(this::flushAlone);
+        } catch (RuntimeException e) {
+            batch.forEach(create -> create.future.completeExceptionally(e));
+        } catch (Error e) {
+            // failing the batch keeps the writer alive for the creates queued behind it
+            LOGGER.error("Write-behind batch of {} creates failed", batch.size(), e);
+            batch.forEach(create -> create.future.completeExceptionally(e));
+        }
+    }
+
+    private void flushAlone(PendingCreate create) {
+        try {
+            complete(Collections.singletonList(create),
+                    service.getObject().createAll(Collections.singletonList(create.memory)));
+        } catch (Throwable e) {
+            create.future.completeExceptionally(e);
+        }
+    }
+
+    private static void complete(List<PendingCreate> batch, MemoryBatchResult result) {
+        for (MemoryBatchResult.Item item : result.getItems()) {
+            PendingCreate create = batch.get(item.getIndex());
+            if (item.getStatus() == MemoryBatchResult.Status.CREATED) {
+                create.future.complete(create.memory);
+            } else {
+                create.future.completeExceptionally(new MemoryNotCreateException(item.getMessage()));
+            }
+        }
+    }
+
+    static final class PendingCreate {
+
+        private final Memory memory;
+        private final CompletableFuture<Memory> future = new CompletableFuture<>();
+
+        PendingCreate(Memory memory) {
+            this.memory = memory;
+        }
+    }
+}
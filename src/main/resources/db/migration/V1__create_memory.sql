@@ -0,0 +1,23 @@
+-- Schemas created by the former ddl-auto=create have a memory table but no history table. Flyway baselines them at
+-- version 0 (spring.flyway.baseline-on-migrate), so this script still runs there: their memory table is kept as it
+-- is and gets the index below, and db.migration.V2__Adopt_legacy_memory_table adds what it lacks.
+
+create table if not exists memory_id_sequence (
+    sequence_name varchar(255) not null,
+    next_val bigint,
+    primary key (sequence_name)
+);
+
+create table if not exists memory (
+    id bigint not null,
+    title varchar(255),
+    size integer not null,
+    in_stock boolean not null,
+    version bigint not null default 0,
+    deleted boolean not null default false,
+    primary key (id),
+    constraint uk_memory_title unique (title)
+);
+
+-- findBySizeAndInStockIsTrue and findBySizeGreaterThanEqualAndInStockIsTrue: equality on in_stock, then size
+create index idx_memory_in_stock_size on memory (in_stock, size);
@@ -2,8 +2,10 @@ package hellospringboot.memories;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
 
 @SpringBootTest
+@TestPropertySource({"classpath:application-test.properties"})
 class MemoriesApplicationTests {
 
 	@Test
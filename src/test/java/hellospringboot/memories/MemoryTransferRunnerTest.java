@@ -0,0 +1,50 @@
+package hellospringboot.memories;
+
+import hellospringboot.memories.model.MemoryFormat;
+import hellospringboot.memories.model.MemoryTransferResult;
+import hellospringboot.memories.service.MemoryTransfer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MemoryTransferRunnerTest {
+
+	private final MemoryTransfer transfer = mock(MemoryTransfer.class);
+
+	private final MemoryTransferRunner runner = new MemoryTransferRunner(provider());
+
+	@Test
+	void run_shouldDoNothing_withoutATransferOption() throws Exception {
+		runner.run(new DefaultApplicationArguments("--server.port=0"));
+
+		assertFalse(runner.isTransferred());
+		assertEquals(0, runner.getExitCode());
+		verifyNoInteractions(transfer);
+	}
+
+	@Test
+	void run_shouldReportTheExitCode_insteadOfExiting() throws Exception {
+		doReturn(new MemoryTransferResult(MemoryFormat.CSV, 2, 1, 1,
+				Collections.singletonList("Line 2: Memory with title = peixe already exists"), 10))
+				.when(transfer).importFrom(Paths.get("memories.csv"));
+
+		runner.run(new DefaultApplicationArguments("--import=memories.csv"));
+
+		assertTrue(runner.isTransferred());
+		assertEquals(1, runner.getExitCode());
+	}
+
+	private ObjectProvider<MemoryTransfer> provider() {
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		beanFactory.registerSingleton("memoryTransfer", transfer);
+		return beanFactory.getBeanProvider(MemoryTransfer.class);
+	}
+
+}
@@ -0,0 +1,71 @@
+package hellospringboot.memories;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryColumns;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.service.MemoryService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource({"classpath:application-test.properties"})
+class ResponseCompressionTest {
+
+	@Autowired
+	private MemoryService service;
+
+	@LocalServerPort
+	private int port;
+
+	@Test
+	void compactFormats_shouldBeCompressedAboveTheThreshold() throws IOException {
+		List<Memory> memories = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			memories.add(MemoryCreatorUtil.create("compressed-" + i, 4096));
+		}
+		service.createAll(memories);
+
+		HttpURLConnection columns = get("/memories/size/4096", MemoryColumns.MEDIA_TYPE.toString());
+		assertEquals("gzip", columns.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+		try (InputStream body = new GZIPInputStream(columns.getInputStream())) {
+			assertEquals(500, MemoryColumns.read(body).size());
+		}
+
+		HttpURLConnection cbor = get("/memories/size/4096", "application/cbor");
+		assertEquals("gzip", cbor.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+		cbor.getInputStream().close();
+	}
+
+	@Test
+	void smallResponses_shouldNotBeCompressed() throws IOException {
+		service.create(MemoryCreatorUtil.create("uncompressed", 2048));
+
+		HttpURLConnection connection = get("/memories/size/2048", MemoryColumns.MEDIA_TYPE.toString());
+
+		assertEquals(200, connection.getResponseCode());
+		assertNull(connection.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+		connection.getInputStream().close();
+	}
+
+	private HttpURLConnection get(String path, String accept) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+		connection.setRequestProperty(HttpHeaders.ACCEPT, accept);
+		connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
+		return connection;
+	}
+
+}
@@ -0,0 +1,60 @@
+package hellospringboot.memories;
+
+import hellospringboot.memories.controller.MemoryController;
+import hellospringboot.memories.service.MemoryPurger;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("fast-startup")
+@TestPropertySource({"classpath:application-test.properties"})
+class StartupReportTest {
+
+	@Autowired
+	private ConfigurableApplicationContext context;
+
+	@Autowired
+	private StartupReport report;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private TestRestTemplate rest;
+
+	@Test
+	void fastStartup_shouldDeferBeansUntilTheFirstRequestAndReportIt() {
+		assertTrue(report.getReadyMillis() > 0);
+		assertEquals(-1, report.getFirstRequestMillis());
+		assertFalse(isCreated(MemoryController.class), "controller created before any request");
+		assertTrue(isCreated(MemoryPurger.class), "purger must be created to be scheduled");
+
+		assertEquals(HttpStatus.OK, rest.getForEntity("/memories", String.class).getStatusCode());
+
+		assertTrue(isCreated(MemoryController.class));
+		assertTrue(report.getFirstRequestMillis() >= report.getReadyMillis());
+		assertEquals(report.getFirstRequestMillis(),
+				registry.get("memories.startup.first-request").timeGauge().value(TimeUnit.MILLISECONDS), 0.001);
+	}
+
+	private boolean isCreated(Class<?> type) {
+		for (String name : context.getBeanNamesForType(type, false, false)) {
+			if (context.getBeanFactory().containsSingleton(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,113 @@
+package hellospringboot.memories.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimitTest {
+
+    private static final Duration TARGET = Duration.ofMillis(20);
+    private static final Duration WINDOW = Duration.ofMillis(20);
+    private static final int CLIENTS = 64;
+    private static final int CONNECTIONS = 4;
+    private static final Duration QUERY = Duration.ofMillis(5);
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void tryAcquire_shouldRejectOverTheLimit() {
+        AdaptiveLimit limit = new AdaptiveLimit("read", 1, 4, TARGET, WINDOW, 0.9);
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        assertEquals(2, limit.getInflight());
+        assertEquals(1, limit.getRejected());
+
+        limit.release(-1);
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    void release_shouldBackOff_whenTheWindowIsSlow() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit("read", 2, 40, TARGET, Duration.ZERO, 0.5);
+
+        assertTrue(limit.tryAcquire());
+        limit.release(TARGET.toNanos() + 1);
+        assertEquals(10, limit.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(TARGET.toNanos() + 1);
+        }
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    void release_shouldGrowOnlyWhileTheLimitIsUsed() {
+        AdaptiveLimit limit = new AdaptiveLimit("read", 1, 8, TARGET, Duration.ZERO, 0.9);
+
+        assertTrue(limit.tryAcquire());
+        limit.release(1);
+        assertEquals(4, limit.getLimit());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+        for (int i = 0; i < 4; i++) {
+            limit.release(1);
+        }
+        // releases at 4 and 3 in flight used at least half the limit, those at 2 and 1 did not
+        assertEquals(6, limit.getLimit());
+    }
+
+    @Test
+    void limit_shouldConvergeToWhatTheBackendServesWithinTarget() {
+        AdaptiveLimit limit = new AdaptiveLimit("read", 1, 64, TARGET, WINDOW, 0.9, nanos::get);
+
+        List<Integer> settled = new ArrayList<>();
+        for (int round = 0; round < 500; round++) {
+            serve(limit);
+            if (round >= 400) {
+                settled.add(limit.getLimit());
+            }
+        }
+
+        // 16 in flight are served in 20 ms; the limit climbs one past that, then two slow windows cut it to 13
+        assertTrue(settled.stream().allMatch(value -> value >= 13 && value <= 17), "limits " + settled);
+        assertTrue(limit.getRejected() > 0);
+    }
+
+    @Test
+    void limit_shouldGrowToTheMaximum_whileTheBackendKeepsUp() {
+        AdaptiveLimit limit = new AdaptiveLimit("read", 1, 64, Duration.ofHours(1), WINDOW, 0.9, nanos::get);
+
+        for (int round = 0; round < 500; round++) {
+            serve(limit);
+        }
+
+        assertEquals(64, limit.getLimit());
+    }
+
+    /**
+     * One round of {@link #CLIENTS} clients against a backend with {@link #CONNECTIONS} connections and
+     * {@link #QUERY} queries: every request let through waits for the ones queued before it, so latency grows
+     * with the number in flight. The fake clock advances by the round's latency.
+     */
+    private void serve(AdaptiveLimit limit) {
+        int admitted = 0;
+        while (admitted < CLIENTS && limit.tryAcquire()) {
+            admitted++;
+        }
+        long latency = (admitted + CONNECTIONS - 1) / CONNECTIONS * QUERY.toNanos();
+        nanos.addAndGet(Math.max(latency, QUERY.toNanos()));
+        for (int i = 0; i < admitted; i++) {
+            limit.release(latency);
+        }
+    }
+}
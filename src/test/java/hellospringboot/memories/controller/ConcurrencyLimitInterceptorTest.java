@@ -0,0 +1,133 @@
+package hellospringboot.memories.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hellospringboot.memories.exception.MemoryNotFoundException;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.service.MemoryChangeCounter;
+import hellospringboot.memories.service.MemoryChangeFeed;
+import hellospringboot.memories.service.MemoryService;
+import hellospringboot.memories.service.MemoryTransfer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(MemoryController.class)
+@ContextConfiguration(classes = {MemoryController.class, MemoryChangeCounter.class, MemoryAPIExceptionHandler.class,
+        ConcurrencyLimitInterceptor.class, MemoryChangeFeed.class})
+@TestPropertySource(properties = {"memories.limiter.enabled=true", "memories.limiter.min-limit=1",
+        "memories.limiter.read.max-limit=2", "memories.limiter.write.max-limit=2", "memories.limiter.retry-after=3s"})
+class ConcurrencyLimitInterceptorTest {
+
+    private static final String ENDPOINT = "/memories";
+
+    @MockBean
+    private MemoryService service;
+
+    @MockBean
+    private MemoryTransfer transfer;
+
+    @Autowired
+    private ConcurrencyLimitInterceptor interceptor;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private AdaptiveLimit held;
+
+    private int heldSlots;
+
+    @AfterEach
+    void tearDown() {
+        for (; heldSlots > 0; heldSlots--) {
+            held.release(-1);
+        }
+    }
+
+    @Test
+    void read_shouldBeShedWithRetryAfter_whenReadsAreSaturated() throws Exception {
+        AdaptiveLimit reads = hold("GET");
+        long rejected = reads.getRejected();
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/1"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "3"));
+
+        verify(service, never()).findById(any());
+        assertEquals(rejected + 1, reads.getRejected());
+        assertEquals(heldSlots, reads.getInflight());
+    }
+
+    @Test
+    void write_shouldPass_whenOnlyReadsAreSaturated() throws Exception {
+        hold("GET");
+        Memory memory = MemoryCreatorUtil.create("peixe", 8192);
+        doReturn(memory).when(service).create(memory);
+
+        mockMvc.perform(MockMvcRequestBuilders.post(ENDPOINT).content(objectMapper.writeValueAsString(memory))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        assertEquals(0, interceptor.limitFor(request("POST")).getInflight());
+    }
+
+    @Test
+    void read_shouldReleaseItsSlot_whenTheHandlerFails() throws Exception {
+        doReturn(Collections.emptyList()).when(service).findAll();
+        doThrow(new MemoryNotFoundException(1L)).when(service).findById(1L);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT)).andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/1")).andExpect(status().isNotFound());
+
+        assertEquals(0, interceptor.limitFor(request("GET")).getInflight());
+    }
+
+    @Test
+    void bindTo_shouldExportLimiterState() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        interceptor.bindTo(registry);
+
+        assertEquals(interceptor.limitFor(request("GET")).getLimit(),
+                registry.get("memories.limiter.limit").tag("kind", "read").gauge().value());
+        assertEquals(0, registry.get("memories.limiter.inflight").tag("kind", "write").gauge().value());
+        assertTrue(registry.get("memories.limiter.rejected").tag("kind", "read").functionCounter().count() >= 0);
+    }
+
+    private AdaptiveLimit hold(String method) {
+        held = interceptor.limitFor(request(method));
+        for (int i = held.getLimit(); i > 0 && held.tryAcquire(); i--) {
+            heldSlots++;
+        }
+        return held;
+    }
+
+    private static MockHttpServletRequest request(String method) {
+        return new MockHttpServletRequest(method, ENDPOINT);
+    }
+}
@@ -2,37 +2,75 @@ package hellospringboot.memories.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import hellospringboot.memories.exception.MemoryBusyException;
+import hellospringboot.memories.exception.MemoryConflictException;
 import hellospringboot.memories.exception.MemoryNotCreateException;
 import hellospringboot.memories.exception.MemoryNotFoundException;
 import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryBatchResult;
+import hellospringboot.memories.model.MemoryColumns;
 import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.model.MemoryFormat;
+import hellospringboot.memories.model.MemoryPatch;
+import hellospringboot.memories.model.MemoryStats;
+import hellospringboot.memories.model.MemoryTransferResult;
+import hellospringboot.memories.service.MemoryChangeCounter;
+import hellospringboot.memories.service.MemoryChangeFeed;
+import hellospringboot.memories.service.MemoryChangedEvent;
 import hellospringboot.memories.service.MemoryService;
+import hellospringboot.memories.service.MemoryTransfer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.servlet.error.ErrorAttributes;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(MemoryController.class)
-@ContextConfiguration(classes = {MemoryController.class, MemoryAPIExceptionHandler.class})
+@ContextConfiguration(classes = {MemoryController.class, MemoryChangeCounter.class, MemoryAPIExceptionHandler.class,
+        MemoryMessageConverters.class, MemoryChangeFeed.class})
+@TestPropertySource(properties = {"memories.change-feed.enabled=true", "memories.list-etag.enabled=true"})
 public class MemoryControllerTest {
 
     private static final String ENDPOINT = "/memories";
@@ -41,6 +79,15 @@ public class MemoryControllerTest {
     @MockBean
     private MemoryService service;
 
+    @MockBean
+    private MemoryTransfer transfer;
+
+    @Autowired
+    private MemoryChangeCounter changes;
+
+    @Autowired
+    private MemoryChangeFeed feed;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -76,6 +123,35 @@ public class MemoryControllerTest {
         verify(service, only()).create(memory);
     }
 
+    @Test
+    void create_shouldReturnServiceUnavailable_whenBusy() throws Exception {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        doThrow(new MemoryBusyException("Too many pending creates, retry later", Duration.ofSeconds(2)))
+                .when(service).create(memory);
+
+        mockMvc.perform(MockMvcRequestBuilders.post(ENDPOINT).content(objectMapper.writeValueAsString(memory))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "2"));
+    }
+
+    @Test
+    void createAll_shouldReturnOK() throws Exception {
+        List<Memory> memories = Arrays.asList(MemoryCreatorUtil.create("salmão", size), MemoryCreatorUtil.create("peixe", size));
+        MemoryBatchResult result = new MemoryBatchResult();
+        result.created(0, memories.get(0));
+        result.rejected(1, "peixe", "Memory with title = peixe already exists");
+
+        doReturn(result).when(service).createAll(memories);
+
+        mockMvc.perform(MockMvcRequestBuilders.post(ENDPOINT + "/batch").content(objectMapper.writeValueAsString(memories))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(result)));
+
+        verify(service, only()).createAll(memories);
+    }
+
     @Test
     void delete_shouldReturnOK() throws Exception {
         doNothing().when(service).delete(ID);
@@ -116,6 +192,148 @@ public class MemoryControllerTest {
         verify(service, only()).findAll();
     }
 
+    @Test
+    void findAll_shouldNegotiateCompactFormats() throws Exception {
+        Memory memory = MemoryCreatorUtil.create("salmão", size);
+        memory.setId(ID);
+        List<Memory> memories = Collections.singletonList(memory);
+        doReturn(memories).when(service).findAll();
+
+        for (ObjectMapper mapper : Arrays.asList(new ObjectMapper(new CBORFactory()), new ObjectMapper(new SmileFactory()))) {
+            MediaType mediaType = mediaType(mapper);
+            byte[] body = mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT).accept(mediaType))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(mediaType))
+                    .andReturn().getResponse().getContentAsByteArray();
+
+            Memory[] read = mapper.readValue(body, Memory[].class);
+            assertEquals(memories, Arrays.asList(read), mediaType.toString());
+        }
+    }
+
+    @Test
+    void findBySize_shouldReturnColumns() throws Exception {
+        Memory memory = MemoryCreatorUtil.create("salmão", size, false);
+        memory.setId(ID);
+        doReturn(Collections.singletonList(memory)).when(service).findBySize(size);
+
+        byte[] body = mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/size/" + size).accept(MemoryColumns.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MemoryColumns.MEDIA_TYPE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        List<Memory> read = MemoryColumns.read(new ByteArrayInputStream(body));
+        assertEquals(Collections.singletonList(memory), read);
+        assertFalse(read.get(0).isInStock());
+    }
+
+    @Test
+    void findAll_shouldPreferJson_whenAnyTypeIsAccepted() throws Exception {
+        doReturn(Collections.emptyList()).when(service).findAll();
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT).accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void findById_shouldNotBeColumnar() throws Exception {
+        doReturn(MemoryCreatorUtil.create("salmão", size)).when(service).findById(ID);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/" + ID).accept(MemoryColumns.MEDIA_TYPE))
+                .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    void findAllPage_shouldReturnOk_withNextLink() throws Exception {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        memory.setId(ID);
+        List<Memory> memories = Collections.singletonList(memory);
+        doReturn(memories).when(service).findAll(null, 1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "?limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Link", "<http://localhost/memories?limit=1&after=" + ID + ">; rel=\"next\""))
+                .andExpect(content().json(objectMapper.writeValueAsString(memories)));
+
+        verify(service, only()).findAll(null, 1);
+    }
+
+    @Test
+    void findAllPage_shouldReturnOk_withoutNextLinkOnLastPage() throws Exception {
+        List<Memory> memories = Collections.singletonList(MemoryCreatorUtil.create("peixe", size));
+        doReturn(memories).when(service).findAll(ID, 2);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT).param("after", ID.toString()).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Link"));
+
+        verify(service, only()).findAll(ID, 2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void streamAll_shouldReturnNdjson() throws Exception {
+        Memory memory1 = MemoryCreatorUtil.create("lula", size);
+        Memory memory2 = MemoryCreatorUtil.create("peixe", size);
+        doAnswer(invocation -> {
+            Consumer<Memory> consumer = invocation.getArgument(0);
+            consumer.accept(memory1);
+            consumer.accept(memory2);
+            return null;
+        }).when(service).streamAll(any(Consumer.class));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT).accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted()).andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(objectMapper.writeValueAsString(memory1) + "\n"
+                        + objectMapper.writeValueAsString(memory2)));
+    }
+
+    @Test
+    void export_shouldStreamTheRequestedFormatAsAttachment() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write("id,title,size,inStock\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(transfer).export(eq(MemoryFormat.CSV), any(OutputStream.class));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/export").param("format", "CSV"))
+                .andExpect(request().asyncStarted()).andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"memories.csv\""))
+                .andExpect(content().string("id,title,size,inStock\n"));
+    }
+
+    @Test
+    void import_shouldReturnTheTransferResult() throws Exception {
+        MemoryTransferResult imported = new MemoryTransferResult(MemoryFormat.NDJSON, 3, 2, 1,
+                Collections.singletonList("Record 2: title is required"), 10);
+        doReturn(imported).when(transfer).importFrom(eq(MemoryFormat.NDJSON), any(InputStream.class));
+
+        mockMvc.perform(MockMvcRequestBuilders.post(ENDPOINT + "/import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"title\":\"peixe\"}\n{}\n{\"title\":\"lula\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"format\":\"NDJSON\",\"processed\":3,\"created\":2,\"rejected\":1,"
+                        + "\"errors\":[\"Record 2: title is required\"],\"rowsPerSecond\":300}"));
+    }
+
+    @Test
+    void import_shouldRejectUnsupportedMediaType() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post(ENDPOINT + "/import")
+                        .contentType(MediaType.APPLICATION_XML)
+                        .content("<memories/>"))
+                .andExpect(status().isUnsupportedMediaType());
+        verify(transfer, never()).importFrom(any(MemoryFormat.class), any(InputStream.class));
+    }
+
     @Test
     void findById_shouldReturnOk() throws Exception {
         Memory memory = MemoryCreatorUtil.create("peixe", size);
@@ -137,6 +355,15 @@ public class MemoryControllerTest {
         verify(service, only()).findById(ID);
     }
 
+    @Test
+    void findById_shouldExposeHandledExceptionToMetrics() throws Exception {
+        doThrow(new MemoryNotFoundException(ID)).when(service).findById(ID);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/" + ID))
+                .andExpect(status().isNotFound())
+                .andExpect(request().attribute(ErrorAttributes.ERROR_ATTRIBUTE, instanceOf(MemoryNotFoundException.class)));
+    }
+
     @Test
     void findBySize_shouldReturnOk() throws Exception {
         List<Memory> memories = Arrays.asList(MemoryCreatorUtil.create("salmão", size), MemoryCreatorUtil.create("peixe", size));
@@ -159,42 +386,283 @@ public class MemoryControllerTest {
         verify(service, only()).findBySizeGreaterThanEqualAndInStockIsTrue(size);
     }
 
+    @Test
+    void search_shouldReturnOk() throws Exception {
+        List<Memory> memories = Arrays.asList(MemoryCreatorUtil.create("peixe", size), MemoryCreatorUtil.create("pescada", size));
+        doReturn(memories).when(service).search("pe", true, 10);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/search").param("title", "pe")
+                        .param("prefix", "true").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(memories)));
+
+        verify(service, only()).search("pe", true, 10);
+    }
+
     @Test
     void update_shouldReturnOk() throws Exception {
         Memory memoryUpdate = MemoryCreatorUtil.create("peixe", size);
-        doReturn(memoryUpdate).when(service).update(memoryUpdate, ID);
+        doReturn(memoryUpdate).when(service).update(memoryUpdate, ID, null);
         String json = objectMapper.writeValueAsString(memoryUpdate);
 
         mockMvc.perform(MockMvcRequestBuilders.put(ENDPOINT + "/"+ ID).content(json)
                         .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk()).andReturn().equals(json);
 
-        verify(service, only()).update(memoryUpdate, ID);
+        verify(service, only()).update(memoryUpdate, ID, null);
     }
 
     @Test
     void update_shouldReturnBadRequest_TitleAlreadyExist() throws Exception {
         Memory memoryUpdate = MemoryCreatorUtil.create("peixe", size);
-        doThrow(MemoryNotCreateException.class).when(service).update(memoryUpdate, ID);
+        doThrow(MemoryNotCreateException.class).when(service).update(memoryUpdate, ID, null);
         String json = objectMapper.writeValueAsString(memoryUpdate);
 
         mockMvc.perform(MockMvcRequestBuilders.put(ENDPOINT + "/" +ID).content(json)
                         .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest());
 
-        verify(service, only()).update(memoryUpdate, ID);
+        verify(service, only()).update(memoryUpdate, ID, null);
     }
 
     @Test
     void update_shouldReturnNotFound() throws Exception {
         Memory memoryUpdate = MemoryCreatorUtil.create("peixe", size);
-        doThrow(MemoryNotFoundException.class).when(service).update(memoryUpdate, ID);
+        doThrow(MemoryNotFoundException.class).when(service).update(memoryUpdate, ID, null);
 
         String json = objectMapper.writeValueAsString(memoryUpdate);
         mockMvc.perform(MockMvcRequestBuilders.put(ENDPOINT + "/"+ ID).content(json)
                         .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNotFound());
 
-        verify(service, only()).update(memoryUpdate, ID);
+        verify(service, only()).update(memoryUpdate, ID, null);
+    }
+
+    @Test
+    void findById_shouldReturnETag() throws Exception {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        doReturn(memory).when(service).findById(ID);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/" + ID))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"0\""));
+    }
+
+    @Test
+    void findById_shouldReturnNotModified_whenETagMatches() throws Exception {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        doReturn(memory).when(service).findById(ID);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/" + ID).header("If-None-Match", "W/\"0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void findAll_shouldReturnNotModified_withoutQuerying() throws Exception {
+        String etag = changes.etag();
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag));
+
+        verify(service, never()).findAll();
+    }
+
+    @Test
+    void findAll_shouldReturnOk_afterChange() throws Exception {
+        String etag = changes.etag();
+        doReturn(Collections.emptyList()).when(service).findAll();
+
+        changes.onChange(MemoryChangedEvent.deleted(ID));
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", changes.etag()));
+
+        verify(service, only()).findAll();
+    }
+
+    @Test
+    void update_shouldPassIfMatchVersion() throws Exception {
+        Memory memoryUpdate = MemoryCreatorUtil.create("peixe", size);
+        doReturn(memoryUpdate).when(service).update(memoryUpdate, ID, 3L);
+
+        mockMvc.perform(MockMvcRequestBuilders.put(ENDPOINT + "/" + ID).header("If-Match", "\"3\"")
+                        .content(objectMapper.writeValueAsString(memoryUpdate))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"0\""));
+
+        verify(service, only()).update(memoryUpdate, ID, 3L);
+    }
+
+    @Test
+    void update_shouldReturnConflict() throws Exception {
+        Memory memoryUpdate = MemoryCreatorUtil.create("peixe", size);
+        doThrow(new MemoryConflictException(ID)).when(service).update(memoryUpdate, ID, 3L);
+
+        mockMvc.perform(MockMvcRequestBuilders.put(ENDPOINT + "/" + ID).header("If-Match", "\"3\"")
+                        .content(objectMapper.writeValueAsString(memoryUpdate))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void update_shouldAcceptTheWeakTagItServed() throws Exception {
+        Memory memoryUpdate = MemoryCreatorUtil.create("peixe", size);
+        doReturn(memoryUpdate).when(service).update(memoryUpdate, ID, 3L);
+
+        mockMvc.perform(MockMvcRequestBuilders.put(ENDPOINT + "/" + ID).header("If-Match", "W/\"3\"")
+                        .content(objectMapper.writeValueAsString(memoryUpdate))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        verify(service, only()).update(memoryUpdate, ID, 3L);
+    }
+
+    @Test
+    void update_shouldReturnConflict_whenIfMatchIsNotAVersion() throws Exception {
+        Memory memoryUpdate = MemoryCreatorUtil.create("peixe", size);
+
+        mockMvc.perform(MockMvcRequestBuilders.put(ENDPOINT + "/" + ID).header("If-Match", "W/\"abc\"")
+                        .content(objectMapper.writeValueAsString(memoryUpdate))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isConflict());
+
+        verify(service, never()).update(any(), any(), any());
+    }
+
+    @Test
+    void patch_shouldReturnNoContent() throws Exception {
+        MemoryPatch patch = new MemoryPatch(null, size, false);
+
+        mockMvc.perform(MockMvcRequestBuilders.patch(ENDPOINT + "/" + ID).header("If-Match", "\"3\"")
+                        .content("{\"size\":" + size + ",\"inStock\":false}").contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("ETag", "W/\"4\""));
+
+        verify(service, only()).patch(ID, patch, 3L);
+    }
+
+    @Test
+    void patch_shouldReturnNotFound() throws Exception {
+        MemoryPatch patch = new MemoryPatch("peixe", null, null);
+        doThrow(MemoryNotFoundException.class).when(service).patch(ID, patch, null);
+
+        mockMvc.perform(MockMvcRequestBuilders.patch(ENDPOINT + "/" + ID)
+                        .content("{\"title\":\"peixe\"}").contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void deleteAll_shouldDeleteIds() throws Exception {
+        doReturn(2).when(service).deleteAll(Arrays.asList(1L, 2L, 3L));
+
+        mockMvc.perform(MockMvcRequestBuilders.delete(ENDPOINT + "?ids=1,2,3"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("2"));
+    }
+
+    @Test
+    void deleteAll_shouldDeleteByFilter() throws Exception {
+        doReturn(5).when(service).deleteAll(false, null);
+
+        mockMvc.perform(MockMvcRequestBuilders.delete(ENDPOINT + "?inStock=false"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("5"));
+
+        verify(service, only()).deleteAll(false, null);
+    }
+
+    @Test
+    void deleteAll_shouldNotDeleteEverything_withoutIdsOrFilter() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.delete(ENDPOINT)).andExpect(status().isBadRequest());
+
+        verify(service, never()).deleteAll(any());
+    }
+
+    @Test
+    void findAllById_shouldReturnMemoriesForIds() throws Exception {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        memory.setId(2L);
+        doReturn(Collections.singletonList(memory)).when(service).findAllById(Arrays.asList(2L, 3L));
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT).param("ids", "2,3"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":2,\"title\":\"peixe\"}]"));
+
+        verify(service, only()).findAllById(Arrays.asList(2L, 3L));
+    }
+
+    @Test
+    void findAllById_shouldReturnBadRequest_forTooManyIds() throws Exception {
+        String[] ids = new String[MemoryService.MAX_PAGE_SIZE + 1];
+        Arrays.fill(ids, "1");
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT).param("ids", String.join(",", ids)))
+                .andExpect(status().isBadRequest());
+
+        verify(service, never()).findAllById(any());
+    }
+
+    @Test
+    void stats_shouldReturnCounts() throws Exception {
+        SortedMap<Integer, long[]> counts = new TreeMap<>();
+        counts.put(4096, new long[]{1, 2});
+        counts.put(8192, new long[]{0, 3});
+        doReturn(new MemoryStats(counts)).when(service).stats();
+
+        mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/stats"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"total\":6,\"inStock\":5,\"outOfStock\":1,"
+                        + "\"sizes\":[{\"size\":4096,\"inStock\":2,\"outOfStock\":1},{\"size\":8192,\"inStock\":3,\"outOfStock\":0}],"
+                        + "\"histogram\":[{\"from\":4096,\"to\":8191,\"inStock\":2,\"outOfStock\":1},"
+                        + "{\"from\":8192,\"to\":16383,\"inStock\":3,\"outOfStock\":0}]}", true));
+    }
+
+    @Test
+    void changes_shouldStreamCommittedChanges() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/changes")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        memory.setId(ID);
+
+        feed.onChange(MemoryChangedEvent.created(memory));
+        feed.onChange(MemoryChangedEvent.deleted(ID));
+
+        String body = awaitContent(result, "event:deleted");
+        assertTrue(body.contains("event:created\ndata:{\"sequence\":"), body);
+        assertTrue(body.contains("\"title\":\"peixe\""), body);
+        assertEquals(2, body.split("id:", -1).length - 1, body);
+        assertEquals(MediaType.TEXT_EVENT_STREAM_VALUE, result.getResponse().getContentType());
+    }
+
+    @Test
+    void changes_shouldReset_whenTheLastEventIdIsUnknown() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(ENDPOINT + "/changes")
+                        .header("Last-Event-ID", "0-42"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertTrue(awaitContent(result, "event:reset").contains("data:reload"));
+    }
+
+    private static String awaitContent(MvcResult result, String expected) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        while (!body.contains(expected)) {
+            assertTrue(System.nanoTime() < deadline, body);
+            Thread.sleep(5);
+            body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        }
+        return body;
+    }
+
+    private static MediaType mediaType(ObjectMapper mapper) {
+        return mapper.getFactory() instanceof CBORFactory
+                ? MediaType.valueOf("application/cbor") : MediaType.valueOf("application/x-jackson-smile");
     }
 }
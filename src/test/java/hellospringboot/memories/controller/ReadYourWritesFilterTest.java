@@ -0,0 +1,94 @@
+package hellospringboot.memories.controller;
+
+import hellospringboot.memories.repository.ReplicaRoutingDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.Cookie;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadYourWritesFilterTest {
+
+    private final String primaryUrl = "jdbc:h2:mem:primary-" + UUID.randomUUID();
+
+    private final String replicaUrl = "jdbc:h2:mem:replica-" + UUID.randomUUID();
+
+    private final ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(
+            new DriverManagerDataSource(primaryUrl, "sa", ""),
+            Collections.singletonList(new DriverManagerDataSource(replicaUrl, "sa", "")),
+            ReplicaRoutingDataSource.Selection.ROUND_ROBIN, Duration.ofSeconds(5));
+
+    private final ReadYourWritesFilter filter = new ReadYourWritesFilter(Duration.ofSeconds(5));
+
+    @Test
+    void write_shouldSetTheCookie_andReadFromThePrimaryAfterwards() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        List<String> urls = new ArrayList<>();
+
+        filter.doFilter(new MockHttpServletRequest(), response, chain(urls, true, false, true));
+
+        assertEquals(List.of(replicaUrl, primaryUrl, primaryUrl), urls);
+        Cookie cookie = response.getCookie(ReadYourWritesFilter.COOKIE);
+        assertNotNull(cookie);
+        assertEquals(5, cookie.getMaxAge());
+        assertTrue(System.currentTimeMillis() - Long.parseLong(cookie.getValue()) < 5000);
+    }
+
+    @Test
+    void recentWriteCookie_shouldReadFromThePrimary() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, Long.toString(System.currentTimeMillis() - 1000)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        List<String> urls = new ArrayList<>();
+
+        filter.doFilter(request, response, chain(urls, true));
+
+        assertEquals(List.of(primaryUrl), urls);
+        assertNull(response.getCookie(ReadYourWritesFilter.COOKIE));
+    }
+
+    @Test
+    void oldOrInvalidCookie_shouldReadFromTheReplica() throws Exception {
+        List<String> urls = new ArrayList<>();
+        for (String value : new String[]{Long.toString(System.currentTimeMillis() - 60_000), "peixe"}) {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, value));
+
+            filter.doFilter(request, new MockHttpServletResponse(), chain(urls, true));
+        }
+
+        assertEquals(List.of(replicaUrl, replicaUrl), urls);
+    }
+
+    /**
+     * A chain that opens one connection per entry of {@code readOnly}, as a transaction of that kind would.
+     */
+    private FilterChain chain(List<String> urls, boolean... readOnly) {
+        return (request, response) -> {
+            for (boolean transactionReadOnly : readOnly) {
+                TransactionSynchronizationManager.setActualTransactionActive(true);
+                TransactionSynchronizationManager.setCurrentTransactionReadOnly(transactionReadOnly);
+                try (Connection connection = routing.getConnection()) {
+                    urls.add(connection.getMetaData().getURL());
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+                    TransactionSynchronizationManager.setActualTransactionActive(false);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package hellospringboot.memories.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryColumnsTest {
+
+    @Test
+    void read_shouldReturnWhatWasWritten() throws IOException {
+        List<Memory> memories = new ArrayList<>();
+        long[] ids = {7, 3, 1000000000000L, 8, 9, 10, 11, 12, 13};
+        for (int i = 0; i < ids.length; i++) {
+            Memory memory = MemoryCreatorUtil.create(i == 1 ? "salmão, \"fresco\"" : "memory-" + i, 512 << i, i % 3 == 0);
+            memory.setId(ids[i]);
+            memory.setVersion(i * 300L);
+            memories.add(memory);
+        }
+
+        List<Memory> read = MemoryColumns.read(new ByteArrayInputStream(write(memories)));
+
+        assertEquals(memories, read);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(memories.get(i).isInStock(), read.get(i).isInStock(), "inStock of " + i);
+            assertEquals(memories.get(i).getVersion(), read.get(i).getVersion(), "version of " + i);
+        }
+    }
+
+    @Test
+    void write_shouldEncodeAnEmptyListAsVersionAndCount() throws IOException {
+        byte[] bytes = write(Collections.emptyList());
+
+        assertArrayEquals(new byte[]{MemoryColumns.FORMAT_VERSION, 0}, bytes);
+        assertTrue(MemoryColumns.read(new ByteArrayInputStream(bytes)).isEmpty());
+    }
+
+    @Test
+    void write_shouldBeSmallerThanJson() throws IOException {
+        List<Memory> memories = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Memory memory = MemoryCreatorUtil.create("memory-" + i, 8192, i % 2 == 0);
+            memory.setId(i + 1L);
+            memories.add(memory);
+        }
+
+        int json = new ObjectMapper().writeValueAsBytes(memories).length;
+        int columns = write(memories).length;
+
+        assertTrue(columns * 3 < json, columns + " bytes against " + json + " in JSON");
+    }
+
+    @Test
+    void read_shouldRejectTruncatedInput() throws IOException {
+        byte[] bytes = write(Arrays.asList(MemoryCreatorUtil.create("peixe", 8192), MemoryCreatorUtil.create("lula", 8192)));
+
+        assertThrows(EOFException.class,
+                () -> MemoryColumns.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1))));
+        assertThrows(IOException.class, () -> MemoryColumns.read(new ByteArrayInputStream(new byte[]{2, 0})));
+    }
+
+    private static byte[] write(List<Memory> memories) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MemoryColumns.write(memories, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,65 @@
+package hellospringboot.memories.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterIdGeneratorTest {
+
+    private final AtomicLong clock = new AtomicLong(Instant.parse("2026-10-18T12:00:00Z").toEpochMilli());
+
+    @Test
+    void next_shouldIncrease_withinAndAcrossMilliseconds() {
+        ClusterIdGenerator ids = new ClusterIdGenerator(3, clock::get);
+
+        long previous = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 100 == 0) {
+                clock.incrementAndGet();
+            }
+            long id = ids.next();
+            assertTrue(id > previous);
+            assertEquals(3, ClusterIdGenerator.nodeOf(id));
+            previous = id;
+        }
+    }
+
+    @Test
+    void next_shouldKeepIncreasing_whenTheSequenceRunsOutOrTheClockStepsBack() {
+        ClusterIdGenerator ids = new ClusterIdGenerator(0, clock::get);
+
+        long previous = ids.next();
+        for (int i = 0; i < 1000; i++) {
+            long id = ids.next();
+            assertTrue(id > previous);
+            previous = id;
+        }
+        clock.addAndGet(-5000);
+        assertTrue(ids.next() > previous);
+    }
+
+    @Test
+    void next_shouldNotCollideAcrossNodes() {
+        ClusterIdGenerator first = new ClusterIdGenerator(1, clock::get);
+        ClusterIdGenerator second = new ClusterIdGenerator(2, clock::get);
+
+        assertNotEquals(first.next(), second.next());
+    }
+
+    @Test
+    void next_shouldStaySafeForJavaScriptClients_forDecades() {
+        clock.set(Instant.parse("2090-01-01T00:00:00Z").toEpochMilli());
+        ClusterIdGenerator ids = new ClusterIdGenerator(ClusterIdGenerator.MAX_NODE_ID, clock::get);
+
+        assertTrue(ids.next() < 1L << 53);
+    }
+
+    @Test
+    void constructor_shouldRejectNodeIdsThatDoNotFit() {
+        assertThrows(IllegalArgumentException.class, () -> new ClusterIdGenerator(ClusterIdGenerator.MAX_NODE_ID + 1));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterIdGenerator(-1));
+    }
+}
@@ -0,0 +1,53 @@
+package hellospringboot.memories.repository;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Boots against a schema left by the former {@code ddl-auto=create}, which Flyway has to adopt before
+ * {@code ddl-auto=validate} accepts it.
+ */
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(locations = "classpath:application-test.properties")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class LegacySchemaAdoptionTest {
+
+    @Autowired
+    private MemoryRepository repository;
+
+    @DynamicPropertySource
+    static void legacySchema(DynamicPropertyRegistry registry) {
+        String url = "jdbc:h2:mem:legacy-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        JdbcTemplate legacy = new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+        legacy.execute("create table memory (id bigint generated by default as identity, "
+                + "in_stock boolean not null, size integer not null, title varchar(255), primary key (id))");
+        legacy.update("insert into memory (id, in_stock, size, title) values (120, true, 8192, 'peixe')");
+        registry.add("spring.datasource.url", () -> url);
+    }
+
+    @Test
+    void legacyRows_shouldBeReadable_andNewIdsShouldNotCollide() {
+        Memory peixe = repository.findByTitle("peixe");
+        Memory lula = repository.saveAndFlush(MemoryCreatorUtil.create("lula", 1024));
+
+        assertEquals(120L, peixe.getId());
+        assertEquals(0L, peixe.getVersion());
+        assertTrue(lula.getId() > 120, "id " + lula.getId());
+    }
+}
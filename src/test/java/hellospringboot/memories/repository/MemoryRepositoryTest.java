@@ -2,6 +2,8 @@ package hellospringboot.memories.repository;
 
 import hellospringboot.memories.model.Memory;
 import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.model.MemoryStockCount;
+import org.hibernate.Session;
 import org.hibernate.engine.jdbc.Size;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
@@ -9,12 +11,20 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import javax.persistence.EntityManager;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,6 +37,12 @@ public class MemoryRepositoryTest {
     @Autowired
     private MemoryRepository repository;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     private static final int SIZE = 8192;
     private static final String TITLE = "peixe";
 
@@ -47,7 +63,7 @@ public class MemoryRepositoryTest {
     void findBySizeAndInStockIsTrue_shouldReturnMemory() {
         saveMemory(TITLE, SIZE);
         int size = SIZE * 2;
-        Memory memory = saveMemory(TITLE, size);
+        Memory memory = saveMemory(TITLE + "salmão", size);
 
         List<Memory> memories = repository.findBySizeAndInStockIsTrue(size);
 
@@ -78,7 +94,7 @@ public class MemoryRepositoryTest {
     @Test
     void findBySizeBetween() {
         Memory memory1 = repository.save(MemoryCreatorUtil.create(TITLE, SIZE, true));
-        Memory memory2 = repository.save(MemoryCreatorUtil.create(TITLE, SIZE + 1, true));
+        Memory memory2 = repository.save(MemoryCreatorUtil.create(TITLE + "salmão", SIZE + 1, true));
 
         List<Memory> result = repository.findBySizeBetween(SIZE - 1, SIZE + 2);
 
@@ -117,6 +133,67 @@ public class MemoryRepositoryTest {
         assertNull(memory);
     }
 
+    @Test
+    void save_shouldThrowsDataIntegrityViolationException_titleAlreadyExists() {
+        saveMemory(TITLE, SIZE);
+
+        DataIntegrityViolationException e = assertThrows(DataIntegrityViolationException.class, () -> {
+            repository.saveAndFlush(MemoryCreatorUtil.create(TITLE, SIZE * 2));
+        });
+        assertTrue(MemoryRepository.violates(e, Memory.TITLE_CONSTRAINT));
+    }
+
+    @Test
+    void violates_shouldNotMatchTheTitleConstraint_whenTheIdIsTaken() {
+        Memory memory = saveMemory(TITLE, SIZE);
+        repository.flush();
+        entityManager.clear();
+
+        DataIntegrityViolationException e = assertThrows(DataIntegrityViolationException.class, () ->
+                jdbcTemplate.update("insert into memory (id, title, size, in_stock, version, deleted) "
+                        + "values (?, ?, ?, true, 0, false)", memory.getId(), TITLE + "lula", SIZE));
+        assertFalse(MemoryRepository.violates(e, Memory.TITLE_CONSTRAINT));
+    }
+
+    @Test
+    void listQueries_shouldLoadReadOnlyEntities() {
+        repository.saveAndFlush(MemoryCreatorUtil.create(TITLE, SIZE));
+        entityManager.clear();
+        Session session = entityManager.unwrap(Session.class);
+
+        assertTrue(session.isReadOnly(repository.findAll().get(0)));
+        entityManager.clear();
+        assertTrue(session.isReadOnly(repository.findBySizeAndInStockIsTrue(SIZE).get(0)));
+        entityManager.clear();
+        assertTrue(session.isReadOnly(repository.findBySizeGreaterThanEqualAndInStockIsTrue(SIZE, Sort.by("size")).get(0)));
+        entityManager.clear();
+        assertFalse(session.isReadOnly(repository.findByTitle(TITLE)));
+    }
+
+    @Test
+    void findTitlesByTitleIn_shouldReturnExistingTitles() {
+        saveMemory(TITLE, SIZE);
+        saveMemory(TITLE + "lula", SIZE);
+
+        List<String> result = repository.findTitlesByTitleIn(Arrays.asList(TITLE, TITLE + "salmão"));
+
+        assertEquals(Arrays.asList(TITLE), result);
+    }
+
+    @Test
+    void saveAll_shouldAssignIdsToNewMemories() {
+        Memory memory1 = MemoryCreatorUtil.create(TITLE, SIZE);
+        Memory memory2 = MemoryCreatorUtil.create(TITLE + "lula", SIZE);
+        memory1.setId(null);
+        memory2.setId(null);
+
+        repository.saveAll(Arrays.asList(memory1, memory2));
+
+        assertNotNull(memory1.getId());
+        assertNotNull(memory2.getId());
+        assertTrue(memory1.getId() < memory2.getId());
+    }
+
     @Test
     void findByTitleContaining_shouldReturnInStockOk() {
 
@@ -131,6 +208,221 @@ public class MemoryRepositoryTest {
         assertEquals(3, result.size());
     }
 
+    @Test
+    void findByIdGreaterThanOrderByIdAsc_shouldReturnNextPage() {
+        Memory memory1 = saveMemory(TITLE + "salmão", SIZE);
+        Memory memory2 = saveMemory(TITLE + "lula", SIZE);
+        Memory memory3 = saveMemory(TITLE + "polvo", SIZE);
+
+        List<Memory> firstPage = repository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2));
+        List<Memory> secondPage = repository.findByIdGreaterThanOrderByIdAsc(firstPage.get(1).getId(), PageRequest.of(0, 2));
+
+        assertEquals(2, firstPage.size());
+        assertEquals(memory1, firstPage.get(0));
+        assertEquals(memory2, firstPage.get(1));
+        assertEquals(1, secondPage.size());
+        assertEquals(memory3, secondPage.get(0));
+    }
+
+    @Test
+    void streamAll_shouldReturnMemoriesOrderedById() {
+        Memory memory1 = saveMemory(TITLE + "salmão", SIZE);
+        Memory memory2 = saveMemory(TITLE + "lula", SIZE * 2);
+
+        List<Memory> result;
+        try (Stream<Memory> memories = repository.streamAll()) {
+            result = memories.collect(Collectors.toList());
+        }
+
+        assertEquals(2, result.size());
+        assertEquals(memory1, result.get(0));
+        assertEquals(memory2, result.get(1));
+    }
+
+    @Test
+    void save_shouldIncrementVersion() {
+        Memory memory = repository.saveAndFlush(MemoryCreatorUtil.create(TITLE, SIZE));
+        entityManager.clear();
+
+        Memory loaded = repository.findById(memory.getId()).get();
+        loaded.setTitle(TITLE + "salmão");
+        Memory updated = repository.saveAndFlush(loaded);
+
+        assertEquals(memory.getVersion() + 1, updated.getVersion());
+    }
+
+    @Test
+    void save_shouldRejectStaleVersion() {
+        Memory memory = repository.saveAndFlush(MemoryCreatorUtil.create(TITLE, SIZE));
+        Memory stale = new Memory(memory);
+        entityManager.clear();
+
+        Memory loaded = repository.findById(memory.getId()).get();
+        loaded.setTitle(TITLE + "salmão");
+        repository.saveAndFlush(loaded);
+        entityManager.clear();
+
+        stale.setTitle(TITLE + "lula");
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> repository.saveAndFlush(stale));
+    }
+
+    @Test
+    void patch_shouldUpdateSuppliedFieldsAndVersion() {
+        Memory memory = repository.saveAndFlush(MemoryCreatorUtil.create(TITLE, SIZE));
+        entityManager.clear();
+
+        int updated = repository.patch(memory.getId(), null, SIZE * 2, false, null);
+        Memory result = repository.findById(memory.getId()).get();
+
+        assertEquals(1, updated);
+        assertEquals(TITLE, result.getTitle());
+        assertEquals(SIZE * 2, result.getSize());
+        assertFalse(result.isInStock());
+        assertEquals(memory.getVersion() + 1, result.getVersion());
+    }
+
+    @Test
+    void patch_shouldNotUpdate_whenVersionDiffers() {
+        Memory memory = repository.saveAndFlush(MemoryCreatorUtil.create(TITLE, SIZE));
+        entityManager.clear();
+
+        assertEquals(0, repository.patch(memory.getId(), TITLE + "lula", null, null, memory.getVersion() + 1));
+        assertEquals(1, repository.patch(memory.getId(), TITLE + "lula", null, null, memory.getVersion()));
+        assertEquals(0, repository.patch(memory.getId() + 1000, TITLE + "polvo", null, null, null));
+    }
+
+    @Test
+    void patch_shouldRejectDuplicateTitle() {
+        saveMemory(TITLE + "lula", SIZE);
+        Memory memory = repository.saveAndFlush(MemoryCreatorUtil.create(TITLE, SIZE));
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> repository.patch(memory.getId(), TITLE + "lula", null, null, null));
+    }
+
+    @Test
+    void deleteByIdIn_shouldDeleteExistingIds() {
+        Memory memory1 = saveMemory(TITLE + "salmão", SIZE);
+        Memory memory2 = saveMemory(TITLE + "lula", SIZE);
+        Memory memory3 = saveMemory(TITLE + "polvo", SIZE);
+        repository.flush();
+
+        int deleted = repository.deleteByIdIn(Arrays.asList(memory1.getId(), memory3.getId(), memory3.getId() + 1000));
+        entityManager.clear();
+
+        assertEquals(2, deleted);
+        assertEquals(Arrays.asList(memory2), repository.findAll());
+    }
+
+    @Test
+    void deleteExisting_shouldReturnOnlyMemoriesThatWereThere() {
+        Memory memory1 = saveMemory(TITLE + "salmão", SIZE);
+        Memory memory2 = repository.save(new Memory(TITLE + "lula", SIZE * 2, false));
+        Memory memory3 = saveMemory(TITLE + "polvo", SIZE);
+        repository.flush();
+        repository.softDeleteByIdIn(Arrays.asList(memory3.getId()));
+        entityManager.clear();
+
+        List<Memory> deleted = repository.deleteExisting(Arrays.asList(memory2.getId(), memory3.getId(),
+                memory3.getId() + 1000), false);
+        entityManager.clear();
+
+        assertEquals(Arrays.asList(memory2), deleted);
+        assertFalse(deleted.get(0).isInStock());
+        assertEquals(Arrays.asList(memory1), repository.findAll());
+        assertTrue(repository.deleteExisting(Arrays.asList(memory2.getId()), true).isEmpty());
+    }
+
+    @Test
+    void findIdsByInStockAndSize_shouldReturnMatchingIds() {
+        Memory memory1 = repository.save(new Memory(TITLE + "salmão", SIZE, false));
+        repository.save(new Memory(TITLE + "lula", SIZE, true));
+        Memory memory3 = repository.save(new Memory(TITLE + "polvo", SIZE * 2, false));
+
+        PageRequest page = PageRequest.of(0, 10);
+
+        assertEquals(Arrays.asList(memory1.getId(), memory3.getId()),
+                repository.findIdsByInStockAndSize(0L, false, null, page));
+        assertEquals(Arrays.asList(memory3.getId()), repository.findIdsByInStockAndSize(0L, false, SIZE * 2, page));
+    }
+
+    @Test
+    void findIdsByInStockAndSize_shouldReturnTheNextPageAfterTheGivenId() {
+        Memory memory1 = repository.save(new Memory(TITLE + "salmão", SIZE, false));
+        Memory memory2 = repository.save(new Memory(TITLE + "lula", SIZE, false));
+        Memory memory3 = repository.save(new Memory(TITLE + "polvo", SIZE, false));
+        PageRequest page = PageRequest.of(0, 1);
+
+        assertEquals(Arrays.asList(memory1.getId()), repository.findIdsByInStockAndSize(0L, false, null, page));
+        assertEquals(Arrays.asList(memory2.getId()),
+                repository.findIdsByInStockAndSize(memory1.getId(), false, null, page));
+        assertEquals(Arrays.asList(memory3.getId()),
+                repository.findIdsByInStockAndSize(memory2.getId(), false, null, page));
+        assertTrue(repository.findIdsByInStockAndSize(memory3.getId(), false, null, page).isEmpty());
+    }
+
+    @Test
+    void softDeleteByIdIn_shouldHideMemoryAndReleaseTitle() {
+        Memory memory = saveMemory(TITLE, SIZE);
+        repository.flush();
+
+        assertEquals(1, repository.softDeleteByIdIn(Arrays.asList(memory.getId())));
+        assertEquals(0, repository.softDeleteByIdIn(Arrays.asList(memory.getId())));
+        entityManager.clear();
+
+        assertFalse(repository.findById(memory.getId()).isPresent());
+        assertFalse(repository.existsById(memory.getId()));
+        assertTrue(repository.findAll().isEmpty());
+        assertNotNull(repository.saveAndFlush(MemoryCreatorUtil.create(TITLE, SIZE)).getId());
+    }
+
+    @Test
+    void patch_shouldNotUpdate_whenSoftDeleted() {
+        Memory memory = saveMemory(TITLE, SIZE);
+        repository.flush();
+        repository.softDeleteByIdIn(Arrays.asList(memory.getId()));
+
+        assertEquals(0, repository.patch(memory.getId(), TITLE + "lula", SIZE * 2, null, null));
+        assertEquals(0, repository.patch(memory.getId(), null, SIZE * 2, null, memory.getVersion() + 1));
+        entityManager.clear();
+
+        assertFalse(repository.existsById(memory.getId()));
+        assertNotNull(repository.saveAndFlush(MemoryCreatorUtil.create(TITLE + "lula", SIZE)).getId());
+    }
+
+    @Test
+    void purgeDeleted_shouldRemoveFlaggedRowsInChunks() {
+        Memory memory1 = saveMemory(TITLE + "salmão", SIZE);
+        Memory memory2 = saveMemory(TITLE + "lula", SIZE);
+        Memory memory3 = saveMemory(TITLE + "polvo", SIZE);
+        repository.flush();
+        repository.softDeleteByIdIn(Arrays.asList(memory1.getId(), memory3.getId()));
+
+        assertEquals(1, repository.purgeDeleted(1));
+        assertEquals(1, repository.purgeDeleted(1));
+        assertEquals(0, repository.purgeDeleted(1));
+        entityManager.clear();
+
+        assertEquals(Arrays.asList(memory2), repository.findAll());
+        assertEquals(0, repository.deleteByIdIn(Arrays.asList(memory1.getId(), memory3.getId())));
+    }
+
+    @Test
+    void countBySizeAndInStock_shouldGroupCounts() {
+        repository.save(new Memory(TITLE + "salmão", SIZE, true));
+        repository.save(new Memory(TITLE + "lula", SIZE, true));
+        repository.save(new Memory(TITLE + "polvo", SIZE, false));
+        repository.save(new Memory(TITLE + "peixe", SIZE * 2, true));
+
+        List<MemoryStockCount> counts = repository.countBySizeAndInStock();
+
+        assertEquals(3, counts.size());
+        assertEquals(2, counts.stream().filter(count -> count.getSize() == SIZE && count.isInStock())
+                .mapToLong(MemoryStockCount::getCount).sum());
+        assertEquals(1, counts.stream().filter(count -> count.getSize() == SIZE && !count.isInStock())
+                .mapToLong(MemoryStockCount::getCount).sum());
+    }
+
     private Memory saveMemory(String title, int size) {
        Memory memory = MemoryCreatorUtil.create(title, size);
        return repository.save(memory);
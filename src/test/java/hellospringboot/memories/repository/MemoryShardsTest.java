@@ -0,0 +1,40 @@
+package hellospringboot.memories.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryShardsTest {
+
+    @Test
+    void merge_shouldInterleaveSortedLists() {
+        List<List<Integer>> shards = Arrays.asList(Arrays.asList(1, 4, 7), Collections.emptyList(),
+                Arrays.asList(2, 2, 9), Arrays.asList(3, 5));
+
+        assertEquals(Arrays.asList(1, 2, 2, 3, 4, 5, 7, 9),
+                MemoryShards.merge(shards, Comparator.naturalOrder(), Integer.MAX_VALUE));
+    }
+
+    @Test
+    void merge_shouldStopAtTheLimit() {
+        List<List<Integer>> shards = Arrays.asList(Arrays.asList(10, 20, 30), Arrays.asList(15, 25));
+
+        assertEquals(Arrays.asList(10, 15, 20), MemoryShards.merge(shards, Comparator.naturalOrder(), 3));
+    }
+
+    @Test
+    void configuration_shouldRefuseToStart_withoutANodeId() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> new ShardDataSourceConfiguration(new MockEnvironment()));
+
+        assertTrue(e.getMessage().contains("memories.shards.node-id"));
+        assertDoesNotThrow(() -> new ShardDataSourceConfiguration(
+                new MockEnvironment().withProperty("memories.shards.node-id", "3")));
+    }
+}
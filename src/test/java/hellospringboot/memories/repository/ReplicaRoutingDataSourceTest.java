@@ -0,0 +1,198 @@
+package hellospringboot.memories.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(locations = "classpath:application-test.properties", properties = "memories.replicas.enabled=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ReplicaDataSourceConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReplicaRoutingDataSourceTest {
+
+    private static final int SIZE = 8192;
+
+    private static final String REPLICA_URL = "jdbc:h2:mem:replica-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private static final JdbcTemplate REPLICA = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @Autowired
+    private MemoryRepository repository;
+
+    @Autowired
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void replicas(DynamicPropertyRegistry registry) {
+        registry.add("memories.replicas.urls", () -> REPLICA_URL);
+    }
+
+    @BeforeAll
+    static void migrateReplica() {
+        // a real replica gets its schema from the primary's binlog
+        Flyway.configure().dataSource(REPLICA.getDataSource()).load().migrate();
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAllInBatch();
+        REPLICA.update("delete from memory");
+    }
+
+    @Test
+    void readOnlyTransactions_shouldReadFromTheReplica() {
+        repository.save(MemoryCreatorUtil.create("peixe", SIZE, true));
+        REPLICA.update("insert into memory (id, title, size, in_stock, version, deleted) values (1000, 'lula', ?, true, 0, false)",
+                SIZE);
+
+        assertEquals(Collections.singletonList("lula"), titles(repository.findAll()));
+        assertEquals(Collections.singletonList("lula"), titles(repository.findBySizeAndInStockIsTrue(SIZE)));
+        assertTrue(repository.findById(1000L).isPresent());
+
+        TransactionTemplate write = new TransactionTemplate(transactionManager);
+        assertEquals(Collections.singletonList("peixe"), write.execute(status -> titles(repository.findAll())));
+    }
+
+    @Test
+    void writes_shouldGoToThePrimary() {
+        Memory saved = repository.save(MemoryCreatorUtil.create("peixe", SIZE, true));
+
+        JdbcTemplate primary = new JdbcTemplate(primaryDataSource);
+        assertEquals(1, primary.queryForObject("select count(*) from memory where id = ?", Integer.class, saved.getId()));
+        assertEquals(0, REPLICA.queryForObject("select count(*) from memory", Integer.class));
+    }
+
+    @Test
+    void roundRobin_shouldAlternateReplicas() {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(new DriverManagerDataSource(),
+                Arrays.asList(new DriverManagerDataSource(), new DriverManagerDataSource()),
+                ReplicaRoutingDataSource.Selection.ROUND_ROBIN, Duration.ZERO);
+
+        assertEquals(Arrays.asList("primary", "primary"), keys(routing, false, 2));
+        assertEquals(Arrays.asList("replica-0", "replica-1", "replica-0"), keys(routing, true, 3));
+    }
+
+    @Test
+    void leastLoaded_shouldAvoidTheBusyReplica() throws Exception {
+        try (HikariDataSource busy = pool(); HikariDataSource idle = pool()) {
+            ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(new DriverManagerDataSource(),
+                    Arrays.asList(busy, idle), ReplicaRoutingDataSource.Selection.LEAST_LOADED, Duration.ZERO);
+            idle.getConnection().close();
+
+            try (Connection held = busy.getConnection()) {
+                assertEquals(Arrays.asList("replica-1", "replica-1", "replica-1"), keys(routing, true, 3));
+            }
+            assertEquals(2, keys(routing, true, 4).stream().distinct().count());
+        }
+    }
+
+    @Test
+    void stickyAfterWrite_shouldFollowTheClientsLastWrite() {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(new DriverManagerDataSource(),
+                Collections.singletonList(new DriverManagerDataSource()), ReplicaRoutingDataSource.Selection.ROUND_ROBIN,
+                Duration.ofSeconds(10));
+
+        // a write outside of a request leaves the thread's next reads alone
+        assertEquals(Collections.singletonList("primary"), keys(routing, false, 1));
+        assertEquals(Collections.singletonList("replica-0"), keys(routing, true, 1));
+
+        try (ReplicaRoutingDataSource.Request request =
+                     ReplicaRoutingDataSource.beginRequest(System.currentTimeMillis() - 1000, () -> { })) {
+            assertEquals(Collections.singletonList("primary"), keys(routing, true, 1));
+        }
+        try (ReplicaRoutingDataSource.Request request =
+                     ReplicaRoutingDataSource.beginRequest(System.currentTimeMillis() - 60_000, () -> { })) {
+            assertEquals(Collections.singletonList("replica-0"), keys(routing, true, 1));
+        }
+        assertEquals(Collections.singletonList("replica-0"), keys(routing, true, 1));
+    }
+
+    @Test
+    void write_shouldKeepTheRestOfTheRequestOnThePrimary() {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(new DriverManagerDataSource(),
+                Collections.singletonList(new DriverManagerDataSource()), ReplicaRoutingDataSource.Selection.ROUND_ROBIN,
+                Duration.ZERO);
+        AtomicInteger writes = new AtomicInteger();
+
+        try (ReplicaRoutingDataSource.Request request = ReplicaRoutingDataSource.beginRequest(0, writes::incrementAndGet)) {
+            assertEquals(Collections.singletonList("replica-0"), keys(routing, true, 1));
+            assertEquals(Arrays.asList("primary", "primary"), keys(routing, false, 2));
+            assertEquals(Collections.singletonList("primary"), keys(routing, true, 1));
+        }
+        assertEquals(1, writes.get());
+        assertEquals(Collections.singletonList("replica-0"), keys(routing, true, 1));
+    }
+
+    @Test
+    void onPrimary_shouldReadFromThePrimary() {
+        repository.save(MemoryCreatorUtil.create("peixe", SIZE, true));
+
+        assertTrue(repository.findAll().isEmpty());
+        assertEquals(Collections.singletonList("peixe"),
+                ReplicaRoutingDataSource.onPrimary(() -> titles(repository.findAll())));
+        assertTrue(repository.findAll().isEmpty());
+    }
+
+    private static List<Object> keys(ReplicaRoutingDataSource routing, boolean readOnly, int count) {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+        try {
+            Object[] keys = new Object[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = routing.determineCurrentLookupKey();
+            }
+            return Arrays.asList(keys);
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    private static HikariDataSource pool() {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID());
+        pool.setMaximumPoolSize(2);
+        return pool;
+    }
+
+    private static List<String> titles(List<Memory> memories) {
+        return memories.stream().map(Memory::getTitle).collect(Collectors.toList());
+    }
+}
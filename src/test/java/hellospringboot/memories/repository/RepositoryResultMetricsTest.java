@@ -0,0 +1,73 @@
+package hellospringboot.memories.repository;
+
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+@TestPropertySource({"classpath:application-test.properties"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({RepositoryResultMetrics.class, RepositoryResultMetricsTest.Registry.class})
+class RepositoryResultMetricsTest {
+
+    private static final int SIZE = 8192;
+
+    @Autowired
+    private MemoryRepository repository;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAllInBatch();
+    }
+
+    @Test
+    void listQuery_shouldRecordResultSize() {
+        repository.save(MemoryCreatorUtil.create("peixe", SIZE));
+        repository.save(MemoryCreatorUtil.create("salmão", SIZE));
+
+        repository.findBySizeAndInStockIsTrue(SIZE);
+        repository.findBySizeAndInStockIsTrue(SIZE + 1);
+
+        DistributionSummary summary = registry.get("memories.repository.results")
+                .tag("repository", "MemoryRepository")
+                .tag("method", "findBySizeAndInStockIsTrue")
+                .summary();
+        assertEquals(2, summary.count());
+        assertEquals(2, summary.totalAmount());
+        assertEquals(2, summary.max());
+    }
+
+    @Test
+    void singleResultQuery_shouldNotRecordResultSize() {
+        repository.findByTitle("peixe");
+
+        assertNull(registry.find("memories.repository.results").tag("method", "findByTitle").summary());
+    }
+
+    @TestConfiguration
+    static class Registry {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package hellospringboot.memories.repository;
+
+import db.migration.V2__Adopt_legacy_memory_table;
+import org.flywaydb.core.Flyway;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.flyway.FlywayProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(locations = "classpath:application-test.properties", properties =
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "hellospringboot.memories.repository.SchemaMigrationTest$Statements")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class SchemaMigrationTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MemoryRepository repository;
+
+    @Autowired
+    private FlywayProperties flywayProperties;
+
+    @BeforeEach
+    void setUp() {
+        Statements.SQL.clear();
+    }
+
+    @Test
+    void migrations_shouldHaveBeenApplied() {
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "select count(*) from \"flyway_schema_history\" where \"version\" in ('1', '2') and \"success\" = true",
+                Integer.class));
+    }
+
+    @Test
+    void migrations_shouldAdoptSchemasCreatedByHibernate() {
+        DriverManagerDataSource legacy = new DriverManagerDataSource(
+                "jdbc:h2:mem:legacy-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate legacyTemplate = new JdbcTemplate(legacy);
+        // what ddl-auto=create made of the original entity, with an IDENTITY id
+        legacyTemplate.execute("create table memory (id bigint generated by default as identity, "
+                + "in_stock boolean not null, size integer not null, title varchar(255), primary key (id))");
+        legacyTemplate.update("insert into memory (id, in_stock, size, title) values (7, true, 8192, 'peixe')");
+        legacyTemplate.update("insert into memory (id, in_stock, size, title) values (120, false, 1024, 'lula')");
+
+        Flyway.configure()
+                .dataSource(legacy)
+                .locations(flywayProperties.getLocations().toArray(new String[0]))
+                .baselineOnMigrate(flywayProperties.isBaselineOnMigrate())
+                .baselineVersion(flywayProperties.getBaselineVersion())
+                .load()
+                .migrate();
+
+        assertEquals(Arrays.asList("0", "1", "2"), legacyTemplate.queryForList(
+                "select \"version\" from \"flyway_schema_history\" where \"version\" is not null "
+                        + "order by \"installed_rank\"", String.class));
+        assertEquals(1, legacyTemplate.queryForObject("select count(distinct index_name) "
+                + "from information_schema.indexes where index_name = 'IDX_MEMORY_IN_STOCK_SIZE'", Integer.class));
+        assertEquals(Arrays.asList(0L, 0L), legacyTemplate.queryForList(
+                "select version from memory where deleted = false order by id", Long.class));
+        assertThrows(DataIntegrityViolationException.class, () -> legacyTemplate.update(
+                "insert into memory (id, in_stock, size, title) values (121, true, 8192, 'peixe')"));
+        // the pooled optimizer's first block ends at next_val
+        long nextVal = legacyTemplate.queryForObject(
+                "select next_val from memory_id_sequence where sequence_name = 'memory'", Long.class);
+        assertTrue(nextVal - V2__Adopt_legacy_memory_table.ID_ALLOCATION + 1 > 120, "next_val " + nextVal);
+    }
+
+    @Test
+    void migrations_shouldLeaveTheIdSequenceAlone_whenTheTableIsEmpty() {
+        DriverManagerDataSource fresh = new DriverManagerDataSource(
+                "jdbc:h2:mem:fresh-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+
+        Flyway.configure().dataSource(fresh).locations(flywayProperties.getLocations().toArray(new String[0]))
+                .load().migrate();
+
+        assertEquals(0, new JdbcTemplate(fresh).queryForObject("select count(*) from memory_id_sequence",
+                Integer.class));
+    }
+
+    @Test
+    void findBySizeAndInStockIsTrue_shouldUseTheInStockSizeIndex() {
+        repository.findBySizeAndInStockIsTrue(8192);
+
+        assertUsesIndex("IDX_MEMORY_IN_STOCK_SIZE", generated(), 8192);
+    }
+
+    @Test
+    void findBySizeGreaterThanEqualAndInStockIsTrue_shouldUseTheInStockSizeIndex() {
+        repository.findBySizeGreaterThanEqualAndInStockIsTrue(8192, Sort.by("size"));
+
+        assertUsesIndex("IDX_MEMORY_IN_STOCK_SIZE", generated(), 8192);
+    }
+
+    @Test
+    void titleLookups_shouldUseTheUniqueTitleIndex() {
+        repository.findTitlesByTitleIn(Arrays.asList("peixe", "lula"));
+        assertUsesIndex("UK_MEMORY_TITLE", generated(), "peixe", "lula");
+
+        Statements.SQL.clear();
+        repository.findByTitle("peixe");
+        assertUsesIndex("UK_MEMORY_TITLE", generated(), "peixe");
+    }
+
+    /**
+     * The one query Hibernate sent since the last {@link Statements#SQL} clear.
+     */
+    private static String generated() {
+        List<String> sql = Statements.SQL;
+        assertEquals(1, sql.size(), sql.toString());
+        return sql.get(0);
+    }
+
+    private void assertUsesIndex(String index, String sql, Object... parameters) {
+        String plan = jdbcTemplate.queryForObject("explain " + sql, String.class, parameters);
+        assertTrue(plan.toUpperCase().contains(index), plan);
+    }
+
+    public static class Statements implements StatementInspector {
+
+        static final List<String> SQL = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            SQL.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package hellospringboot.memories.repository;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import org.hibernate.cache.internal.NoCachingRegionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(locations = "classpath:application-test.properties", properties = "memories.l2-cache.enabled=false")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(SecondLevelCache.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SecondLevelCacheDisabledTest {
+
+    @Autowired
+    private MemoryRepository repository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAllInBatch();
+    }
+
+    @Test
+    void disabled_shouldLeaveHibernateWithoutAnyRegion() {
+        Memory memory = repository.save(MemoryCreatorUtil.create("peixe", 8192, true));
+        repository.findById(memory.getId());
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+
+        assertFalse(sessionFactory.getSessionFactoryOptions().isSecondLevelCacheEnabled());
+        assertFalse(sessionFactory.getSessionFactoryOptions().isQueryCacheEnabled());
+        assertFalse(sessionFactory.getCache().containsEntity(Memory.class, memory.getId()));
+        assertNull(sessionFactory.getCache().getRegion(SecondLevelCache.ENTITY_REGION));
+        assertTrue(sessionFactory.getCache().getRegionFactory() instanceof NoCachingRegionFactory);
+    }
+}
@@ -0,0 +1,135 @@
+package hellospringboot.memories.repository;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(locations = "classpath:application-test.properties", properties = "memories.l2-cache.enabled=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(SecondLevelCache.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SecondLevelCacheTest {
+
+    private static final int SIZE = 8192;
+
+    @Autowired
+    private MemoryRepository repository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private Memory peixe;
+
+    @BeforeEach
+    void setUp() {
+        peixe = repository.save(MemoryCreatorUtil.create("peixe", SIZE, true));
+        repository.save(MemoryCreatorUtil.create("lula", SIZE, true));
+        repository.save(MemoryCreatorUtil.create("polvo", SIZE * 2, false));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAllInBatch();
+    }
+
+    @Test
+    void repeatedQueries_shouldIssueNoSql() {
+        List<String> first = titles(repository.findBySizeAndInStockIsTrue(SIZE));
+        Sort byTitle = Sort.by("title");
+        List<String> firstRange = titles(repository.findBySizeGreaterThanEqualAndInStockIsTrue(SIZE, byTitle));
+        long statements = statistics.getPrepareStatementCount();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(first, titles(repository.findBySizeAndInStockIsTrue(SIZE)));
+            assertEquals(firstRange, titles(repository.findBySizeGreaterThanEqualAndInStockIsTrue(SIZE, byTitle)));
+        }
+
+        assertEquals(Arrays.asList("lula", "peixe"), firstRange);
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertEquals(10, statistics.getQueryCacheHitCount());
+        assertEquals(2, statistics.getQueryCacheMissCount());
+    }
+
+    @Test
+    void findById_shouldBeServedFromTheEntityRegion() {
+        repository.findById(peixe.getId());
+        long statements = statistics.getPrepareStatementCount();
+
+        assertEquals("peixe", repository.findById(peixe.getId()).orElseThrow().getTitle());
+
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertTrue(statistics.getDomainDataRegionStatistics(SecondLevelCache.ENTITY_REGION).getHitCount() > 0);
+    }
+
+    @Test
+    void save_shouldInvalidateCachedQueries() {
+        repository.findBySizeAndInStockIsTrue(SIZE);
+
+        repository.save(MemoryCreatorUtil.create("salmão", SIZE, true));
+
+        assertEquals(Arrays.asList("lula", "peixe", "salmão"), sorted(repository.findBySizeAndInStockIsTrue(SIZE)));
+    }
+
+    @Test
+    void bulkUpdates_shouldInvalidateCachedQueriesAndEntities() {
+        repository.findBySizeAndInStockIsTrue(SIZE);
+        repository.findById(peixe.getId());
+
+        repository.patch(peixe.getId(), null, null, false, null);
+
+        assertEquals(Collections.singletonList("lula"), titles(repository.findBySizeAndInStockIsTrue(SIZE)));
+        assertFalse(repository.findById(peixe.getId()).orElseThrow().isInStock());
+
+        repository.softDeleteByIdIn(Collections.singletonList(peixe.getId()));
+
+        assertFalse(repository.findById(peixe.getId()).isPresent());
+        assertEquals(Collections.singletonList("lula"), titles(repository.findBySizeAndInStockIsTrue(SIZE)));
+    }
+
+    @Test
+    void nativeDeletes_shouldInvalidateCachedQueries() {
+        repository.softDeleteByIdIn(Collections.singletonList(peixe.getId()));
+        assertEquals(Collections.singletonList("lula"), titles(repository.findBySizeAndInStockIsTrue(SIZE)));
+
+        repository.purgeDeleted(10);
+        repository.deleteById(repository.findBySizeAndInStockIsTrue(SIZE).get(0).getId());
+
+        assertTrue(repository.findBySizeAndInStockIsTrue(SIZE).isEmpty());
+    }
+
+    private static List<String> titles(List<Memory> memories) {
+        return memories.stream().map(Memory::getTitle).collect(Collectors.toList());
+    }
+
+    private static List<String> sorted(List<Memory> memories) {
+        return memories.stream().map(Memory::getTitle).sorted().collect(Collectors.toList());
+    }
+}
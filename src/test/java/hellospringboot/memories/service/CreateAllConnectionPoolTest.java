@@ -0,0 +1,79 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryBatchResult;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.repository.MemoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Batches larger than the table generator's allocation, from more callers than there are connections: a
+ * batch that held a connection while its ids were allocated on another would wait out the pool's timeout.
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.datasource.url=" + CreateAllConnectionPoolTest.URL, "spring.datasource.hikari.maximum-pool-size=1",
+        "spring.datasource.hikari.connection-timeout=2000",
+        // Flyway holds a connection of its own while migrating, so it gets its own data source
+        "spring.flyway.url=" + CreateAllConnectionPoolTest.URL, "spring.flyway.user=sa"})
+class CreateAllConnectionPoolTest {
+
+    static final String URL = "jdbc:h2:mem:create-all-pool;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private static final int CALLERS = 4;
+    private static final int BATCHES = 3;
+    private static final int BATCH_SIZE = 120;
+
+    @Autowired
+    private MemoryService service;
+
+    @Autowired
+    private MemoryRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAllInBatch();
+    }
+
+    @Test
+    void createAll_shouldNotExhaustThePool_whenCallersOutnumberConnections() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int caller = 0; caller < CALLERS; caller++) {
+                int prefix = caller;
+                results.add(executor.submit(() -> {
+                    int created = 0;
+                    for (int batch = 0; batch < BATCHES; batch++) {
+                        List<Memory> memories = new ArrayList<>();
+                        for (int i = 0; i < BATCH_SIZE; i++) {
+                            memories.add(MemoryCreatorUtil.create(prefix + "-" + batch + "-" + i, 8192));
+                        }
+                        MemoryBatchResult result = service.createAll(memories);
+                        created += result.getCreated();
+                    }
+                    return created;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(BATCHES * BATCH_SIZE, result.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(CALLERS * BATCHES * BATCH_SIZE, repository.count());
+    }
+}
@@ -0,0 +1,112 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.repository.MemoryRepository;
+import hellospringboot.memories.repository.MemoryShards;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FindByIdBatcherTest {
+
+    private static final MemoryShards SHARDS = new MemoryShards(false, 0, null, null);
+
+    @Mock
+    private MemoryRepository repository;
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void load_shouldMergeConcurrentLookupsIntoOneQuery() throws Exception {
+        FindByIdBatcher batcher = new FindByIdBatcher(true, Duration.ofMillis(200), 100, repository, SHARDS);
+        doAnswer(invocation -> {
+            List<Memory> memories = new ArrayList<>();
+            for (Long id : invocation.<Collection<Long>>getArgument(0)) {
+                if (id != 4L) {
+                    memories.add(memory(id));
+                }
+            }
+            return memories;
+        }).when(repository).findAllById(any());
+
+        List<Future<Memory>> results = new ArrayList<>();
+        for (long id : new long[]{1, 2, 3, 4, 2}) {
+            results.add(callers.submit(() -> batcher.load(id)));
+        }
+
+        assertEquals(1L, results.get(0).get().getId());
+        assertEquals(2L, results.get(1).get().getId());
+        assertEquals(3L, results.get(2).get().getId());
+        assertNull(results.get(3).get());
+        assertSame(results.get(1).get(), results.get(4).get());
+        verify(repository, times(1)).findAllById(new HashSet<>(Arrays.asList(1L, 2L, 3L, 4L)));
+    }
+
+    @Test
+    void load_shouldNotWaitOutTheWindow_whenTheBatchIsFull() throws Exception {
+        FindByIdBatcher batcher = new FindByIdBatcher(true, Duration.ofMinutes(1), 2, repository, SHARDS);
+        doAnswer(invocation -> Arrays.asList(memory(1L), memory(2L))).when(repository).findAllById(any());
+
+        Future<Memory> first = callers.submit(() -> batcher.load(1L));
+        Future<Memory> second = callers.submit(() -> batcher.load(2L));
+
+        assertEquals(1L, first.get().getId());
+        assertEquals(2L, second.get().getId());
+    }
+
+    @Test
+    void load_shouldStartANewBatch_afterTheLastOneWasSent() {
+        FindByIdBatcher batcher = new FindByIdBatcher(true, Duration.ZERO, 10, repository, SHARDS);
+        doAnswer(invocation -> Arrays.asList(memory(1L), memory(2L))).when(repository).findAllById(any());
+
+        assertEquals(1L, batcher.load(1L).getId());
+        assertEquals(2L, batcher.load(2L).getId());
+
+        verify(repository, times(2)).findAllById(any());
+    }
+
+    @Test
+    void load_shouldFailEveryCallerOfABatch_whenTheQueryFails() {
+        FindByIdBatcher batcher = new FindByIdBatcher(true, Duration.ofMillis(200), 100, repository, SHARDS);
+        doThrow(new QueryTimeoutException("timeout")).when(repository).findAllById(any());
+
+        Future<Memory> first = callers.submit(() -> batcher.load(1L));
+        Future<Memory> second = callers.submit(() -> batcher.load(2L));
+
+        for (Future<Memory> result : Arrays.asList(first, second)) {
+            ExecutionException e = assertThrows(ExecutionException.class, result::get);
+            assertTrue(e.getCause() instanceof QueryTimeoutException);
+        }
+    }
+
+    private static Memory memory(Long id) {
+        Memory memory = MemoryCreatorUtil.create("peixe" + id, 8192);
+        memory.setId(id);
+        return memory;
+    }
+}
@@ -0,0 +1,153 @@
+package hellospringboot.memories.service;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryCacheTest {
+
+    private static final Long ID = 1L;
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final Ticker ticker = nanos::get;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void get_shouldCountHitsAndMisses() {
+        MemoryCache cache = new MemoryCache(10, Duration.ofMinutes(5), ticker, Runnable::run);
+
+        cache.get(ID, this::load);
+        cache.get(ID, this::load);
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    void get_shouldNotCacheMissingMemory() {
+        MemoryCache cache = new MemoryCache(10, Duration.ofMinutes(5), ticker, Runnable::run);
+
+        assertNull(cache.get(ID, id -> null));
+
+        assertEquals(MemoryCreatorUtil.create("peixe", 8192), cache.get(ID, this::load));
+    }
+
+    @Test
+    void get_shouldReload_afterExpiration() {
+        MemoryCache cache = new MemoryCache(10, Duration.ofMinutes(5), ticker, Runnable::run);
+
+        cache.get(ID, this::load);
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        cache.get(ID, this::load);
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.stats().evictionCount());
+    }
+
+    @Test
+    void get_shouldEvict_whenMaximumSizeExceeded() {
+        MemoryCache cache = new MemoryCache(2, Duration.ofMinutes(5), ticker, Runnable::run);
+
+        for (long id = 1; id <= 3; id++) {
+            cache.get(id, this::load);
+        }
+        cache.cleanUp();
+
+        assertEquals(1, cache.stats().evictionCount());
+    }
+
+    @Test
+    void invalidate_shouldReloadOnNextGet() {
+        MemoryCache cache = new MemoryCache(10, Duration.ofMinutes(5), ticker, Runnable::run);
+
+        cache.get(ID, this::load);
+        cache.invalidate(ID);
+        cache.get(ID, this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_shouldLoadOutsideTheMapsLocks_andShareTheLoad() throws Exception {
+        MemoryCache cache = new MemoryCache(10, Duration.ofMinutes(5), ticker, Runnable::run);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Memory> first = executor.submit(() -> cache.get(ID, id -> {
+                loading.countDown();
+                await(release);
+                return load(id);
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<Memory> second = executor.submit(() -> cache.get(ID, this::load));
+
+            // a synchronous cache would block here until the load above finished
+            assertNull(cache.peek(ID));
+            cache.invalidate(2L);
+            release.countDown();
+
+            assertEquals(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void get_shouldRethrowTheLoadersException_andNotCacheIt() {
+        MemoryCache cache = new MemoryCache(10, Duration.ofMinutes(5), ticker, Runnable::run);
+
+        assertThrows(IllegalStateException.class, () -> cache.get(ID, id -> {
+            throw new IllegalStateException();
+        }));
+
+        assertEquals(MemoryCreatorUtil.create("peixe", 8192), cache.get(ID, this::load));
+    }
+
+    @Test
+    void getAll_shouldLoadOnlyMissingIds() {
+        MemoryCache cache = new MemoryCache(10, Duration.ofMinutes(5), ticker, Runnable::run);
+        cache.get(ID, this::load);
+
+        Map<Long, Memory> memories = cache.getAll(Arrays.asList(ID, 2L, 3L), missing -> {
+            assertEquals(new HashSet<>(Arrays.asList(2L, 3L)), missing);
+            return Collections.singletonMap(2L, load(2L));
+        });
+
+        assertEquals(new HashSet<>(Arrays.asList(ID, 2L)), memories.keySet());
+        assertNull(cache.peek(3L));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Memory load(Long id) {
+        loads.incrementAndGet();
+        return MemoryCreatorUtil.create("peixe", 8192);
+    }
+}
@@ -0,0 +1,221 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.exception.MemoryBusyException;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryChange;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryChangeFeedTest {
+
+    private MemoryChangeFeed feed = feed(100);
+
+    @AfterEach
+    void tearDown() {
+        feed.destroy();
+    }
+
+    @Test
+    void subscribe_shouldDeliverChangesInSequence() throws Exception {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        feed.subscribe(null, first);
+        feed.subscribe(null, second);
+
+        feed.onChange(MemoryChangedEvent.created(memory(1L)));
+        feed.onChange(MemoryChangedEvent.updated(memory(1L)));
+        feed.onChange(MemoryChangedEvent.deleted(1L));
+
+        for (Recorder recorder : new Recorder[]{first, second}) {
+            await(() -> recorder.changes.size() == 3);
+            assertEquals(1, recorder.changes.get(0).getSequence());
+            assertEquals("created", recorder.changes.get(0).getType());
+            assertEquals("peixe", recorder.changes.get(0).getMemory().getTitle());
+            assertEquals("updated", recorder.changes.get(1).getType());
+            assertEquals("deleted", recorder.changes.get(2).getType());
+            assertNull(recorder.changes.get(2).getMemory());
+            assertEquals(feed.eventId(3), recorder.eventIds.get(2));
+        }
+    }
+
+    @Test
+    void subscribe_shouldStartAtTheEnd_withoutLastEventId() throws Exception {
+        feed.onChange(MemoryChangedEvent.created(memory(1L)));
+        Recorder recorder = new Recorder();
+        feed.subscribe(null, recorder);
+
+        feed.onChange(MemoryChangedEvent.created(memory(2L)));
+
+        await(() -> recorder.changes.size() == 1);
+        assertEquals(2L, recorder.changes.get(0).getId());
+        assertTrue(recorder.resets.isEmpty());
+    }
+
+    @Test
+    void subscribe_shouldReplayWhatWasMissed() throws Exception {
+        for (long id = 1; id <= 5; id++) {
+            feed.onChange(MemoryChangedEvent.created(memory(id)));
+        }
+        Recorder recorder = new Recorder();
+
+        feed.subscribe(feed.eventId(2), recorder);
+
+        await(() -> recorder.changes.size() == 3);
+        assertEquals(3, recorder.changes.get(0).getSequence());
+        assertEquals(5, recorder.changes.get(2).getSequence());
+        assertTrue(recorder.resets.isEmpty());
+    }
+
+    @Test
+    void subscribe_shouldReset_whenTheBufferNoLongerHoldsTheLastEventId() throws Exception {
+        feed = feed(4);
+        for (long id = 1; id <= 10; id++) {
+            feed.onChange(MemoryChangedEvent.created(memory(id)));
+        }
+        Recorder lapped = new Recorder();
+        Recorder foreign = new Recorder();
+
+        feed.subscribe(feed.eventId(5), lapped);
+        feed.subscribe("0-3", foreign);
+
+        await(() -> lapped.resets.size() == 1 && foreign.resets.size() == 1);
+        assertEquals(feed.eventId(10), lapped.resets.get(0));
+        assertEquals(feed.eventId(10), foreign.resets.get(0));
+        assertTrue(lapped.changes.isEmpty());
+        feed.onChange(MemoryChangedEvent.created(memory(11L)));
+        await(() -> lapped.changes.size() == 1);
+        assertEquals(11, lapped.changes.get(0).getSequence());
+    }
+
+    @Test
+    void onChange_shouldNotWaitForSlowSubscribers() throws Exception {
+        feed = feed(16);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder slow = new Recorder() {
+            @Override
+            public void send(String eventId, MemoryChange change) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(eventId, change);
+            }
+        };
+        Recorder fast = new Recorder();
+        feed.subscribe(null, slow);
+        feed.subscribe(null, fast);
+
+        for (long id = 1; id <= 100; id++) {
+            feed.onChange(MemoryChangedEvent.created(memory(id)));
+            if (id % 10 == 0) {
+                long seen = id;
+                // the fast subscriber keeps up while the slow one is stuck on its first change
+                await(() -> fast.changes.size() == seen);
+            }
+        }
+        release.countDown();
+
+        await(() -> slow.resets.size() == 1);
+        assertEquals(1, slow.changes.get(0).getSequence());
+        assertEquals(feed.eventId(100), slow.resets.get(0));
+        assertEquals(100, fast.changes.size());
+    }
+
+    @Test
+    void subscription_shouldCloseWhenSendingFails() throws Exception {
+        Recorder broken = new Recorder() {
+            @Override
+            public void send(String eventId, MemoryChange change) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        feed.subscribe(null, broken);
+
+        feed.onChange(MemoryChangedEvent.created(memory(1L)));
+
+        await(() -> broken.closed.getCount() == 0);
+        assertEquals(0, feed.getSubscriberCount());
+    }
+
+    @Test
+    void heartbeat_shouldReachIdleSubscribers() throws Exception {
+        Recorder recorder = new Recorder();
+        MemoryChangeFeed.Subscription subscription = feed.subscribe(null, recorder);
+
+        feed.heartbeat();
+        await(() -> recorder.heartbeats == 1);
+
+        subscription.cancel();
+        feed.heartbeat();
+        assertEquals(0, feed.getSubscriberCount());
+    }
+
+    @Test
+    void subscribe_shouldRejectSubscribersOverTheLimit() {
+        feed = new MemoryChangeFeed(true, 10, 1, Duration.ofMinutes(1), Executors.newCachedThreadPool());
+        feed.subscribe(null, new Recorder());
+
+        assertThrows(MemoryBusyException.class, () -> feed.subscribe(null, new Recorder()));
+    }
+
+    private static MemoryChangeFeed feed(int bufferSize) {
+        return new MemoryChangeFeed(true, bufferSize, 100, Duration.ofMinutes(1), Executors.newCachedThreadPool());
+    }
+
+    private static Memory memory(Long id) {
+        Memory memory = MemoryCreatorUtil.create("peixe", 8192);
+        memory.setId(id);
+        return memory;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    private static class Recorder implements MemoryChangeFeed.Subscriber {
+
+        final List<MemoryChange> changes = new CopyOnWriteArrayList<>();
+        final List<String> eventIds = new CopyOnWriteArrayList<>();
+        final List<String> resets = new CopyOnWriteArrayList<>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile int heartbeats;
+
+        @Override
+        public void send(String eventId, MemoryChange change) throws IOException {
+            eventIds.add(eventId);
+            changes.add(change);
+        }
+
+        @Override
+        public void reset(String eventId) {
+            resets.add(eventId);
+        }
+
+        @Override
+        public void heartbeat() {
+            heartbeats++;
+        }
+
+        @Override
+        public void closed() {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.repository.MemoryRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class MemoryPurgerTest {
+
+    @Mock
+    private MemoryRepository repository;
+
+    @Test
+    void purge_shouldDoNothing_whenDisabled() {
+        new MemoryPurger(false, 10, Duration.ZERO, repository).purge();
+
+        verify(repository, never()).purgeDeleted(anyInt());
+    }
+
+    @Test
+    void purge_shouldDeleteChunksUntilOneIsShort() {
+        doReturn(10, 10, 3).when(repository).purgeDeleted(10);
+
+        new MemoryPurger(true, 10, Duration.ZERO, repository).purge();
+
+        verify(repository, times(3)).purgeDeleted(10);
+    }
+}
@@ -1,11 +1,20 @@
 package hellospringboot.memories.service;
 
+import hellospringboot.memories.exception.MemoryConflictException;
 import hellospringboot.memories.exception.MemoryNotCreateException;
 import hellospringboot.memories.exception.MemoryNotFoundException;
 import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryBatchResult;
 import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.model.MemoryPatch;
+import hellospringboot.memories.model.MemoryStats;
+import hellospringboot.memories.model.MemoryStockCount;
+import hellospringboot.memories.model.MemorySizeView;
+import hellospringboot.memories.model.MemoryTitleView;
 import hellospringboot.memories.repository.MemoryRepository;
+import hellospringboot.memories.repository.MemoryShards;
 import org.apache.catalina.LifecycleState;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,13 +22,21 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.internal.verification.VerificationModeFactory;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 
+import javax.persistence.EntityManager;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -29,9 +46,29 @@ class MemoryServiceTest {
 
     private static final Long ID = 1L;
 
+    private static final MemoryShards SHARDS = new MemoryShards(false, 0, null, null);
+
     @Mock
     private MemoryRepository repository;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private ApplicationEventPublisher publisher;
+
+    private TitleFilter titleFilter;
+
+    private SizeIndex sizeIndex;
+
+    private TitleIndex titleIndex;
+
+    private StockCounters stockCounters;
+
+    private WriteBehindQueue writeBehind;
+
+    private FindByIdBatcher findByIdBatcher;
+
     private MemoryService service;
 
     private int size = 8192;
@@ -40,54 +77,132 @@ class MemoryServiceTest {
 
     @BeforeEach
     void setup() {
-        service = new MemoryService(repository);
+        titleFilter = new TitleFilter(false, 100, 0.01, repository);
+        sizeIndex = new SizeIndex(false, repository);
+        titleIndex = new TitleIndex(false, false, repository);
+        stockCounters = new StockCounters(false, Duration.ofMinutes(5), repository);
+        writeBehind = new WriteBehindQueue(false, 10, 10, Duration.ZERO, Duration.ZERO, Duration.ZERO, null);
+        findByIdBatcher = new FindByIdBatcher(false, Duration.ZERO, 1, repository, SHARDS);
+        service = newService();
     }
 
     @Test
     void create_shouldCallCreate() {
         Memory memory = MemoryCreatorUtil.create("peixe", size);
 
-
-        doReturn(null).when(repository).findByTitle(memory.getTitle());
         doReturn(memory).when(repository).save(memory);
 
         Memory result = service.create(memory);
 
         assertEquals(memory, result);
-        verify(repository, times(1)).save(memory);
-        verify(repository, times(1)).findByTitle(memory.getTitle());
+        verify(repository, only()).save(memory);
     }
 
     @Test
     void create_shouldThrowsMemoryNotCreateException_titleAlreadyExists() {
         Memory memory = MemoryCreatorUtil.create("peixe", size);
 
-        doReturn(memory).when(repository).findByTitle(memory.getTitle());
+        doThrow(violation(Memory.TITLE_CONSTRAINT)).when(repository).save(memory);
 
         assertThrows(MemoryNotCreateException.class, () -> {
            service.create(memory);
         });
-        verify(repository, only()).findByTitle(memory.getTitle());
+        verify(repository, only()).save(memory);
+    }
+
+    @Test
+    void create_shouldSkipTitleCheck_whenFilterHasNotSeenTitle() {
+        enableTitleFilter("salmão");
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+
+        doReturn(memory).when(repository).save(memory);
+
+        service.create(memory);
+
+        verify(repository, never()).findByTitle(any());
+        verify(repository, times(1)).save(memory);
+    }
+
+    @Test
+    void create_shouldThrowsMemoryNotCreateException_whenFilterHasSeenTitle() {
+        enableTitleFilter("peixe");
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        Memory existing = MemoryCreatorUtil.create("peixe", size);
+        existing.setId(ID);
+
+        doReturn(existing).when(repository).findByTitle("peixe");
+
+        assertThrows(MemoryNotCreateException.class, () -> {
+            service.create(memory);
+        });
+        verify(repository, never()).save(any());
     }
 
     @Test
-    void delete_shouldCallDeleteById() {
-        doNothing().when(repository).deleteById(ID);
+    void create_shouldPublishCreatedEvent() {
+        Memory memory = memory(ID, "peixe", size);
+
+        doReturn(memory).when(repository).save(memory);
+
+        service.create(memory);
+
+        verify(publisher, times(1)).publishEvent(argThat((MemoryChangedEvent event) ->
+                event.getType() == MemoryChangedEvent.Type.CREATED && memory.equals(event.getMemory())));
+    }
+
+    @Test
+    void createAll_shouldCreateNewTitlesAndRejectDuplicates() {
+        Memory memory1 = MemoryCreatorUtil.create("salmão", size);
+        Memory memory2 = MemoryCreatorUtil.create("peixe", size);
+        Memory memory3 = MemoryCreatorUtil.create("salmão", size);
+        List<Memory> memories = Arrays.asList(memory1, memory2, memory3);
+
+        doReturn(Collections.singletonList("peixe")).when(repository).findTitlesByTitleIn(Arrays.asList("salmão", "peixe"));
+
+        MemoryBatchResult result = service.createAll(memories);
+
+        assertEquals(1, result.getCreated());
+        assertEquals(2, result.getRejected());
+        assertEquals(MemoryBatchResult.Status.CREATED, result.getItems().get(0).getStatus());
+        assertEquals(MemoryBatchResult.Status.REJECTED, result.getItems().get(1).getStatus());
+        assertEquals(MemoryBatchResult.Status.REJECTED, result.getItems().get(2).getStatus());
+        assertNull(memory1.getId());
+        verify(repository, times(1)).findTitlesByTitleIn(Arrays.asList("salmão", "peixe"));
+        verify(repository, times(1)).saveAllAndFlush(Collections.singletonList(memory1));
+        verify(repository, never()).findByTitle(any());
+    }
+
+    @Test
+    void delete_shouldCallDeleteExisting() {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        doReturn(Collections.singletonList(memory)).when(repository)
+                .deleteExisting(Collections.singletonList(ID), false);
+
+        service.delete(ID);
+
+        verify(repository, only()).deleteExisting(Collections.singletonList(ID), false);
+    }
+
+    @Test
+    void delete_shouldPublishDeletedEvent() {
+        doReturn(Collections.singletonList(MemoryCreatorUtil.create("peixe", size))).when(repository)
+                .deleteExisting(Collections.singletonList(ID), false);
 
         service.delete(ID);
 
-        verify(repository, only()).deleteById(ID);
+        verify(publisher, only()).publishEvent(argThat((MemoryChangedEvent event) ->
+                event.getType() == MemoryChangedEvent.Type.DELETED && ID.equals(event.getId())));
     }
 
     @Test
     void delete_shouldThrowsMemoryNotFoundException() {
-        doThrow(EmptyResultDataAccessException.class).when(repository).deleteById(ID);
+        doReturn(Collections.emptyList()).when(repository).deleteExisting(Collections.singletonList(ID), false);
 
         assertThrows(MemoryNotFoundException.class, () -> {
            service.delete(ID);
         });
 
-        verify(repository, only()).deleteById(ID);
+        verify(publisher, never()).publishEvent(any());
     }
 
     @Test
@@ -103,6 +218,41 @@ class MemoryServiceTest {
         verify(repository, only()).findAll();
     }
 
+    @Test
+    void findAllPage_shouldReturnMemoriesAfterCursor() {
+        List<Memory> memories = Arrays.asList(MemoryCreatorUtil.create("salmão", size), MemoryCreatorUtil.create("peixe", size));
+        doReturn(memories).when(repository).findByIdGreaterThanOrderByIdAsc(ID, PageRequest.of(0, 2));
+
+        List<Memory> result = service.findAll(ID, 2);
+
+        assertEquals(memories, result);
+        verify(repository, only()).findByIdGreaterThanOrderByIdAsc(ID, PageRequest.of(0, 2));
+    }
+
+    @Test
+    void findAllPage_shouldStartAtBeginningAndCapLimit() {
+        doReturn(new ArrayList<>()).when(repository)
+                .findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, MemoryService.MAX_PAGE_SIZE));
+
+        service.findAll(null, Integer.MAX_VALUE);
+
+        verify(repository, only()).findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, MemoryService.MAX_PAGE_SIZE));
+    }
+
+    @Test
+    void streamAll_shouldPassEachMemoryAndDetachIt() {
+        Memory memory1 = MemoryCreatorUtil.create("salmão", size);
+        Memory memory2 = MemoryCreatorUtil.create("peixe", size);
+        doReturn(Stream.of(memory1, memory2)).when(repository).streamAll();
+        List<Memory> result = new ArrayList<>();
+
+        service.streamAll(result::add);
+
+        assertEquals(Arrays.asList(memory1, memory2), result);
+        verify(entityManager, times(1)).detach(memory1);
+        verify(entityManager, times(1)).detach(memory2);
+    }
+
     @Test
     void findById_shouldReturnMemory() {
         Memory memory = MemoryCreatorUtil.create("peixe", size);
@@ -115,6 +265,96 @@ class MemoryServiceTest {
         verify(repository, only()).findById(ID);
     }
 
+    @Test
+    void findById_shouldServeRepeatedReadsFromCache() {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+
+        doReturn(Optional.of(memory)).when(repository).findById(ID);
+
+        service.findById(ID);
+        Memory result = service.findById(ID);
+
+        assertEquals(memory, result);
+        verify(repository, only()).findById(ID);
+    }
+
+    @Test
+    void findById_shouldLoadThroughBatcher_whenBatchingIsEnabled() {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        memory.setId(ID);
+        findByIdBatcher = new FindByIdBatcher(true, Duration.ZERO, 10, repository, SHARDS);
+        service = newService();
+
+        doReturn(Collections.singletonList(memory)).when(repository).findAllById(any());
+
+        assertEquals(memory, service.findById(ID));
+        assertThrows(MemoryNotFoundException.class, () -> service.findById(2L));
+        verify(repository, never()).findById(any());
+    }
+
+    @Test
+    void findAllById_shouldKeepRequestedOrder_andLeaveOutUnknownIds() {
+        Memory memory1 = MemoryCreatorUtil.create("peixe", size);
+        memory1.setId(1L);
+        Memory memory2 = MemoryCreatorUtil.create("salmão", size);
+        memory2.setId(2L);
+
+        doReturn(Arrays.asList(memory1, memory2)).when(repository).findAllById(any());
+
+        List<Memory> result = service.findAllById(Arrays.asList(2L, 3L, 1L, 2L));
+
+        assertEquals(Arrays.asList(memory2, memory1), result);
+        verify(repository, only()).findAllById(Arrays.asList(2L, 3L, 1L));
+    }
+
+    @Test
+    void findAllById_shouldOnlyQueryIdsMissingFromCache() {
+        Memory memory1 = MemoryCreatorUtil.create("peixe", size);
+        memory1.setId(1L);
+        Memory memory2 = MemoryCreatorUtil.create("salmão", size);
+        memory2.setId(2L);
+
+        doReturn(Optional.of(memory1)).when(repository).findById(1L);
+        service.findById(1L);
+        doReturn(Collections.singletonList(memory2)).when(repository).findAllById(any());
+
+        assertEquals(Arrays.asList(memory1, memory2), service.findAllById(Arrays.asList(1L, 2L)));
+        verify(repository, times(1)).findAllById(Collections.singletonList(2L));
+    }
+
+    @Test
+    void findById_shouldNotReturnStaleMemory_afterUpdate() {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        Memory memoryUpdate = MemoryCreatorUtil.create("salmão", size);
+
+        doReturn(Optional.of(memory)).when(repository).findById(ID);
+        assertEquals("peixe", service.findById(ID).getTitle());
+
+        doReturn(Optional.of(MemoryCreatorUtil.create("peixe", size))).when(repository).findById(ID);
+        doReturn(memoryUpdate).when(repository).save(any());
+        service.update(memoryUpdate, ID);
+
+        doReturn(Optional.of(memoryUpdate)).when(repository).findById(ID);
+        assertEquals("salmão", service.findById(ID).getTitle());
+    }
+
+    @Test
+    void findById_shouldThrowsException_afterDelete() {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+
+        doReturn(Optional.of(memory)).when(repository).findById(ID);
+        service.findById(ID);
+        doReturn(Collections.singletonList(memory)).when(repository)
+                .deleteExisting(Collections.singletonList(ID), false);
+
+        service.delete(ID);
+
+        doReturn(Optional.empty()).when(repository).findById(ID);
+        assertThrows(MemoryNotFoundException.class, () -> {
+            service.findById(ID);
+        });
+    }
+
     @Test
     void findById_shouldThrowsException_memoryNotFound() {
         doReturn(Optional.empty()).when(repository).findById(ID);
@@ -138,6 +378,37 @@ class MemoryServiceTest {
         verify(repository, only()).findBySizeAndInStockIsTrue(size);
     }
 
+    @Test
+    void findBySize_shouldUseSizeIndex_whenReady() {
+        Memory memory1 = memory(1L, "salmão", size);
+        Memory memory2 = memory(2L, "peixe", size);
+        enableSizeIndex(sizeView(2L, size), sizeView(1L, size), sizeView(3L, size * 2));
+
+        doReturn(Arrays.asList(memory2, memory1)).when(repository).findAllById(any());
+
+        List<Memory> result = service.findBySize(size);
+
+        assertEquals(Arrays.asList(memory1, memory2), result);
+        verify(repository, never()).findBySizeAndInStockIsTrue(size);
+    }
+
+    @Test
+    void findBySizeGreaterThanEqualAndInStockIsTrue_shouldUseSizeIndex_whenReady() {
+        Memory memory1 = memory(1L, "salmão", size * 2);
+        Memory memory2 = memory(2L, "peixe", size);
+        enableSizeIndex(sizeView(1L, size * 2), sizeView(2L, size), sizeView(3L, size - 1));
+
+        doReturn(Arrays.asList(memory1, memory2)).when(repository).findAllById(any());
+
+        List<Memory> first = service.findBySizeGreaterThanEqualAndInStockIsTrue(size);
+        List<Memory> second = service.findBySizeGreaterThanEqualAndInStockIsTrue(size);
+
+        assertEquals(Arrays.asList(memory2, memory1), first);
+        assertEquals(first, second);
+        verify(repository, times(1)).findAllById(any());
+        verify(repository, never()).findBySizeGreaterThanEqualAndInStockIsTrue(anyInt(), any());
+    }
+
     @Test
     void findBySizeGreaterThanEqual_shouldReturnMemories() {
         List<Memory> memories = Arrays.asList(MemoryCreatorUtil.create("salmão", size), MemoryCreatorUtil.create("peixe", size));
@@ -173,6 +444,36 @@ class MemoryServiceTest {
 
     }
 
+    @Test
+    void search_shouldQueryRepository_whenTitleIndexIsNotReady() {
+        List<Memory> memories = Arrays.asList(MemoryCreatorUtil.create("salmão", size), MemoryCreatorUtil.create("peixe", size));
+        doReturn(memories).when(repository).findByTitleContainingOrderByIdAsc(title, PageRequest.of(0, 10));
+        doReturn(memories).when(repository).findByTitleStartingWithOrderByIdAsc(title, PageRequest.of(0, 10));
+
+        assertEquals(memories, service.search(title, false, 10));
+        assertEquals(memories, service.search(title, true, 10));
+
+        verify(repository, times(1)).findByTitleContainingOrderByIdAsc(title, PageRequest.of(0, 10));
+        verify(repository, times(1)).findByTitleStartingWithOrderByIdAsc(title, PageRequest.of(0, 10));
+    }
+
+    @Test
+    void search_shouldUseTitleIndex_whenReady() {
+        Memory memory1 = memory(1L, "peixe", size);
+        Memory memory3 = memory(3L, "pescada", size);
+        doReturn(Stream.of(titleView(1L, "peixe"), titleView(2L, "salmão"), titleView(3L, "pescada")))
+                .when(repository).streamIdsAndTitles();
+        titleIndex = new TitleIndex(true, false, repository);
+        titleIndex.load();
+        service = newService();
+        doReturn(Arrays.asList(memory3, memory1)).when(repository).findAllById(any());
+
+        List<Memory> result = service.search(title, true, 10);
+
+        assertEquals(Arrays.asList(memory1, memory3), result);
+        verify(repository, never()).findByTitleStartingWithOrderByIdAsc(any(), any());
+    }
+
     @Test
     void update_shouldUpdateMemory() {
         Memory memory = MemoryCreatorUtil.create("peixe", size);
@@ -180,15 +481,15 @@ class MemoryServiceTest {
         Memory memoryUpdate = MemoryCreatorUtil.create("salmão", size);
 
         doReturn(Optional.of(memory)).when(repository).findById(ID);
-        doReturn(null).when(repository).findByTitle(memoryUpdate.getTitle());
-        doReturn(memoryUpdate).when(repository).save(memoryUpdate);
+        doReturn(memoryUpdate).when(repository).save(memory);
 
         Memory result = service.update(memoryUpdate, ID);
 
         assertEquals(memoryUpdate, result);
+        assertEquals("salmão", memory.getTitle());
         verify(repository, times(1)).findById(ID);
-        verify(repository, times(1)).findByTitle(memoryUpdate.getTitle());
-        verify(repository, times(1)).save(memoryUpdate);
+        verify(repository, never()).findByTitle(any());
+        verify(repository, times(1)).save(memory);
     }
 
     @Test
@@ -203,18 +504,297 @@ class MemoryServiceTest {
         verify(repository, only()).findById(ID);
     }
 
+    @Test
+    void create_shouldRethrow_whenAnotherConstraintIsViolated() {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        doThrow(violation("PRIMARY")).when(repository).save(memory);
+
+        assertThrows(DataIntegrityViolationException.class, () -> service.create(memory));
+    }
+
     @Test
     void update_shouldThrowsMemoryNotCreateException_titleAlreadyExists() {
         Memory memory = MemoryCreatorUtil.create("peixe", size);
         doReturn(Optional.of(memory)).when(repository).findById(ID);
-        doReturn(memory).when(repository).findByTitle(memory.getTitle());
+        doThrow(violation(Memory.TITLE_CONSTRAINT)).when(repository).save(memory);
 
         assertThrows(MemoryNotCreateException.class, () -> {
             service.update(memory, ID);
         });
 
         verify(repository, times(1)).findById(ID);
-        verify(repository, times(1)).findByTitle(memory.getTitle());
+        verify(repository, never()).findByTitle(any());
+    }
+
+    @Test
+    void update_shouldKeepOwnTitle_whenFilterHasSeenTitle() {
+        enableTitleFilter("peixe");
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        memory.setId(ID);
+        doReturn(Optional.of(memory)).when(repository).findById(ID);
+        doReturn(memory).when(repository).findByTitle("peixe");
+        doReturn(memory).when(repository).save(memory);
+
+        Memory result = service.update(MemoryCreatorUtil.create("peixe", size), ID);
+
+        assertEquals(memory, result);
+        verify(repository, times(1)).save(memory);
+    }
+
+    @Test
+    void update_shouldThrowsMemoryConflictException_versionDiffers() {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        doReturn(Optional.of(memory)).when(repository).findById(ID);
+
+        assertThrows(MemoryConflictException.class, () -> service.update(MemoryCreatorUtil.create("salmão", size), ID, 1L));
+
+        assertEquals("peixe", memory.getTitle());
         verify(repository, never()).save(any());
     }
+
+    @Test
+    void update_shouldThrowsMemoryConflictException_concurrentUpdate() {
+        Memory memory = MemoryCreatorUtil.create("peixe", size);
+        doReturn(Optional.of(memory)).when(repository).findById(ID);
+        doThrow(ObjectOptimisticLockingFailureException.class).when(repository).save(memory);
+
+        assertThrows(MemoryConflictException.class, () -> service.update(MemoryCreatorUtil.create("salmão", size), ID, 0L));
+
+        verify(publisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void patch_shouldUpdateWithSingleStatement() {
+        MemoryPatch patch = new MemoryPatch(null, size * 2, false);
+        doReturn(1).when(repository).patch(ID, null, size * 2, false, null);
+
+        service.patch(ID, patch, null);
+
+        verify(repository, only()).patch(ID, null, size * 2, false, null);
+        verify(publisher, only()).publishEvent(argThat((MemoryChangedEvent event) ->
+                event.getId().equals(ID) && patch.equals(event.getPatch()) && event.getMemory() == null));
+    }
+
+    @Test
+    void patch_shouldThrowsMemoryNotFoundException_idNotExists() {
+        doReturn(0).when(repository).patch(ID, "peixe", null, null, null);
+
+        assertThrows(MemoryNotFoundException.class, () -> service.patch(ID, new MemoryPatch("peixe", null, null), null));
+
+        verify(repository, never()).existsById(any());
+        verify(publisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void patch_shouldThrowsMemoryConflictException_versionDiffers() {
+        doReturn(0).when(repository).patch(ID, "peixe", null, null, 2L);
+        doReturn(true).when(repository).existsById(ID);
+
+        assertThrows(MemoryConflictException.class, () -> service.patch(ID, new MemoryPatch("peixe", null, null), 2L));
+    }
+
+    @Test
+    void patch_shouldThrowsMemoryNotCreateException_titleAlreadyExists() {
+        doThrow(violation(Memory.TITLE_CONSTRAINT)).when(repository).patch(ID, "peixe", null, null, null);
+
+        assertThrows(MemoryNotCreateException.class, () -> service.patch(ID, new MemoryPatch("peixe", null, null), null));
+    }
+
+    @Test
+    void delete_shouldFlagMemory_whenSoftDeleteEnabled() {
+        service = newService(true);
+        doReturn(Collections.singletonList(MemoryCreatorUtil.create("peixe", size))).when(repository)
+                .deleteExisting(Collections.singletonList(ID), true);
+
+        service.delete(ID);
+
+        verify(repository, only()).deleteExisting(Collections.singletonList(ID), true);
+        verify(publisher, only()).publishEvent(argThat((MemoryChangedEvent event) ->
+                event.getType() == MemoryChangedEvent.Type.DELETED && event.getId().equals(ID)));
+    }
+
+    @Test
+    void delete_shouldThrowsMemoryNotFoundException_whenSoftDeleteFindsNothing() {
+        service = newService(true);
+        doReturn(Collections.emptyList()).when(repository).deleteExisting(Collections.singletonList(ID), true);
+
+        assertThrows(MemoryNotFoundException.class, () -> service.delete(ID));
+
+        verify(publisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void deleteAll_shouldDeleteDistinctIdsInChunks() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 1500; id++) {
+            ids.add(id);
+        }
+        ids.add(1L);
+        doReturn(memories(1, 1000), memories(1001, 1400)).when(repository).deleteExisting(any(), eq(false));
+
+        int deleted = service.deleteAll(ids);
+
+        assertEquals(1400, deleted);
+        verify(repository, times(1)).deleteExisting(ids.subList(0, 1000), false);
+        verify(repository, times(1)).deleteExisting(ids.subList(1000, 1500), false);
+        verify(publisher, times(1400)).publishEvent(any(MemoryChangedEvent.class));
+    }
+
+    @Test
+    void deleteAll_shouldPublishOnlyDeletedMemories_withTheirStoredState() {
+        Memory stored = new Memory("peixe", size, false);
+        stored.setId(3L);
+        doReturn(Collections.singletonList(stored)).when(repository).deleteExisting(Arrays.asList(3L, 4L), false);
+
+        assertEquals(1, service.deleteAll(Arrays.asList(3L, 4L)));
+
+        verify(publisher, only()).publishEvent(argThat((MemoryChangedEvent event) ->
+                event.getType() == MemoryChangedEvent.Type.DELETED && event.getId().equals(3L)
+                        && stored.equals(event.getPrevious()) && !event.getPrevious().isInStock()));
+    }
+
+    @Test
+    void deleteAll_shouldDeleteMatchingIds() {
+        List<Long> ids = Arrays.asList(3L, 5L);
+        doReturn(ids).when(repository).findIdsByInStockAndSize(eq(0L), eq(false), isNull(), any());
+        doReturn(memories(3, 4)).when(repository).deleteExisting(ids, true);
+        service = newService(true);
+
+        assertEquals(2, service.deleteAll(false, null));
+
+        verify(repository, never()).deleteByIdIn(any());
+    }
+
+    @Test
+    void deleteAll_shouldPageThroughMatchingIdsByKey() {
+        doReturn(Arrays.asList(3L, 5L)).when(repository).findIdsByInStockAndSize(eq(0L), eq(true), eq(size), any());
+        doReturn(Collections.singletonList(9L)).when(repository)
+                .findIdsByInStockAndSize(eq(5L), eq(true), eq(size), any());
+        doReturn(memories(3, 4)).when(repository).deleteExisting(Arrays.asList(3L, 5L), false);
+        doReturn(memories(9, 9)).when(repository).deleteExisting(Collections.singletonList(9L), false);
+
+        assertEquals(3, service.deleteAll(true, size));
+
+        verify(repository, times(1)).findIdsByInStockAndSize(eq(9L), eq(true), eq(size), any());
+        verify(publisher, times(3)).publishEvent(any(MemoryChangedEvent.class));
+    }
+
+    @Test
+    void delete_shouldPublishTheLockedRowAsPrevious_notTheCachedMemory() {
+        doReturn(Optional.of(MemoryCreatorUtil.create("peixe", size))).when(repository).findById(ID);
+        service.findById(ID);
+        Memory locked = MemoryCreatorUtil.create("peixe", size * 2);
+        doReturn(Collections.singletonList(locked)).when(repository)
+                .deleteExisting(Collections.singletonList(ID), false);
+
+        service.delete(ID);
+
+        verify(publisher, times(1)).publishEvent(argThat((MemoryChangedEvent event) ->
+                event.getType() == MemoryChangedEvent.Type.DELETED && locked.equals(event.getPrevious())));
+    }
+
+    @Test
+    void stats_shouldGroupInDatabase_whenCountersNotReady() {
+        doReturn(Arrays.asList(stockCount(8192, true, 3), stockCount(8192, false, 1), stockCount(4096, true, 2)))
+                .when(repository).countBySizeAndInStock();
+
+        MemoryStats stats = service.stats();
+
+        assertEquals(6, stats.getTotal());
+        assertEquals(5, stats.getInStock());
+        assertEquals(2, stats.getSizes().size());
+        assertEquals(4096, stats.getSizes().get(0).getSize());
+        assertEquals(1, stats.getSizes().get(1).getOutOfStock());
+    }
+
+    private void enableTitleFilter(String... titles) {
+        doReturn(Stream.of(titles)).when(repository).streamTitles();
+        titleFilter = new TitleFilter(true, 100, 0.01, repository);
+        titleFilter.load();
+        service = newService();
+    }
+
+    private void enableSizeIndex(MemorySizeView... rows) {
+        doReturn(Stream.of(rows)).when(repository).streamInStockSizes();
+        sizeIndex = new SizeIndex(true, repository);
+        sizeIndex.load();
+        service = newService();
+    }
+
+    private static DataIntegrityViolationException violation(String constraint) {
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("could not execute statement", new SQLException(), constraint));
+    }
+
+    private static List<Memory> memories(long from, long to) {
+        List<Memory> memories = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            Memory memory = MemoryCreatorUtil.create("memory-" + id, 8192);
+            memory.setId(id);
+            memories.add(memory);
+        }
+        return memories;
+    }
+
+    private MemoryService newService() {
+        return newService(false);
+    }
+
+    private MemoryService newService(boolean softDelete) {
+        return new MemoryService(repository, entityManager, new MemoryCache(100, Duration.ofMinutes(5)), titleFilter,
+                sizeIndex, titleIndex, stockCounters, writeBehind, findByIdBatcher, SHARDS, publisher, softDelete);
+    }
+
+    static MemoryStockCount stockCount(int size, boolean inStock, long count) {
+        return new MemoryStockCount() {
+            @Override
+            public int getSize() {
+                return size;
+            }
+
+            @Override
+            public boolean isInStock() {
+                return inStock;
+            }
+
+            @Override
+            public long getCount() {
+                return count;
+            }
+        };
+    }
+
+    private static MemorySizeView sizeView(Long id, int size) {
+        return new MemorySizeView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public int getSize() {
+                return size;
+            }
+        };
+    }
+
+    private static MemoryTitleView titleView(Long id, String title) {
+        return new MemoryTitleView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getTitle() {
+                return title;
+            }
+        };
+    }
+
+    private static Memory memory(Long id, String title, int size) {
+        Memory memory = MemoryCreatorUtil.create(title, size);
+        memory.setId(id);
+        return memory;
+    }
 }
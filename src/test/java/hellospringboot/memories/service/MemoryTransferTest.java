@@ -0,0 +1,208 @@
+package hellospringboot.memories.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hellospringboot.memories.exception.MemoryNotCreateException;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryBatchResult;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.model.MemoryFormat;
+import hellospringboot.memories.model.MemoryTransferResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MemoryTransferTest {
+
+    private static final int SIZE = 8192;
+
+    @Mock
+    private MemoryService service;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<List<Memory>> chunks = new ArrayList<>();
+
+    private final Set<String> titles = new HashSet<>();
+
+    private MemoryTransfer transfer;
+
+    @BeforeEach
+    void setUp() {
+        transfer = new MemoryTransfer(service, objectMapper, 2, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void export_shouldWriteCsvWithQuotedTitles() throws Exception {
+        streamAll(memory(1L, "peixe", true), memory(2L, "lula, \"fresca\"", false));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MemoryTransferResult result = transfer.export(MemoryFormat.CSV, out);
+
+        assertEquals("id,title,size,inStock\n1,peixe,8192,true\n2,\"lula, \"\"fresca\"\"\",8192,false\n",
+                out.toString(StandardCharsets.UTF_8));
+        assertEquals(2, result.getProcessed());
+    }
+
+    @Test
+    void export_shouldWriteOneJsonObjectPerLine() throws Exception {
+        Memory peixe = memory(1L, "peixe", true);
+        Memory lula = memory(2L, "lula", false);
+        streamAll(peixe, lula);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.export(MemoryFormat.NDJSON, out);
+
+        assertEquals(objectMapper.writeValueAsString(peixe) + "\n" + objectMapper.writeValueAsString(lula) + "\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void import_shouldCreateCsvRecordsInChunks() throws Exception {
+        createAll();
+        String csv = "title,size,inStock\r\npeixe,10,true\n\"lula,\n\"\"fresca\"\"\",20,false\n\npolvo,30,true\n";
+
+        MemoryTransferResult result = transfer.importFrom(MemoryFormat.CSV, input(csv));
+
+        assertEquals(3, result.getProcessed());
+        assertEquals(3, result.getCreated());
+        assertEquals(0, result.getRejected());
+        assertEquals(2, chunks.size());
+        Memory lula = chunks.get(0).get(1);
+        assertEquals("lula,\n\"fresca\"", lula.getTitle());
+        assertEquals(20, lula.getSize());
+        assertFalse(lula.isInStock());
+        assertEquals("polvo", chunks.get(1).get(0).getTitle());
+    }
+
+    @Test
+    void import_shouldRejectBadRecordsAndKeepGoing() throws Exception {
+        titles.add("peixe");
+        createAll();
+        String ndjson = "{\"id\":7,\"title\":\"peixe\",\"size\":10}\n{\"size\":10}\n{\"title\":\"lula\",\"size\":\"x\"}\n"
+                + "{\"title\":\"polvo\",\"size\":30,\"inStock\":true}\n";
+
+        MemoryTransferResult result = transfer.importFrom(MemoryFormat.NDJSON, input(ndjson));
+
+        assertEquals(4, result.getProcessed());
+        assertEquals(1, result.getCreated());
+        assertEquals(3, result.getRejected());
+        assertEquals(Arrays.asList("Record 2: title is required", "Record 3: size must be an integer",
+                "Record 1: Memory title already exists: peixe"), result.getErrors());
+        Memory polvo = chunks.get(0).get(1);
+        assertEquals(30, polvo.getSize());
+        assertTrue(polvo.isInStock());
+    }
+
+    @Test
+    void import_shouldRetryRecordsAloneWhenTheChunkRollsBack() throws Exception {
+        when(service.createAll(anyList()))
+                .thenThrow(new MemoryNotCreateException("Batch rejected, a title was created concurrently"))
+                .thenAnswer(invocation -> created(invocation.getArgument(0)))
+                .thenThrow(new MemoryNotCreateException("Memory title already exists: lula"));
+
+        MemoryTransferResult result = transfer.importFrom(MemoryFormat.CSV, input("title\npeixe\nlula\n"));
+
+        assertEquals(1, result.getCreated());
+        assertEquals(1, result.getRejected());
+        assertEquals("Record 2: Memory title already exists: lula", result.getErrors().get(0));
+        verify(service, times(3)).createAll(anyList());
+    }
+
+    @Test
+    void import_shouldStopAtMalformedJson() {
+        createAll();
+
+        MemoryNotCreateException exception = assertThrows(MemoryNotCreateException.class,
+                () -> transfer.importFrom(MemoryFormat.NDJSON, input("{\"title\":\"peixe\"}\n{\"title\":\n")));
+
+        assertTrue(exception.getMessage().startsWith("Record 2 is not valid JSON"), exception.getMessage());
+        assertTrue(exception.getMessage().endsWith("1 memories were created before it"), exception.getMessage());
+    }
+
+    @Test
+    void import_shouldRequireATitleColumn() {
+        assertThrows(MemoryNotCreateException.class,
+                () -> transfer.importFrom(MemoryFormat.CSV, input("name,size\npeixe,10\n")));
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void exportTo_shouldRoundTripThroughImportFrom(@TempDir Path directory) throws Exception {
+        streamAll(memory(1L, "peixe", true), memory(2L, "lula, \"fresca\"", false));
+        createAll();
+
+        for (String name : Arrays.asList("memories.csv", "memories.ndjson")) {
+            chunks.clear();
+            titles.clear();
+            Path file = directory.resolve(name);
+            transfer.exportTo(file);
+            assertTrue(Files.size(file) > 0);
+
+            MemoryTransferResult result = transfer.importFrom(file);
+
+            assertEquals(2, result.getCreated(), name);
+            assertEquals("lula, \"fresca\"", chunks.get(0).get(1).getTitle(), name);
+            assertEquals(SIZE, chunks.get(0).get(1).getSize(), name);
+            assertFalse(chunks.get(0).get(1).isInStock(), name);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void streamAll(Memory... memories) {
+        doAnswer(invocation -> {
+            Consumer<Memory> consumer = invocation.getArgument(0);
+            Arrays.asList(memories).forEach(consumer);
+            return null;
+        }).when(service).streamAll(any(Consumer.class));
+    }
+
+    private void createAll() {
+        lenient().when(service.createAll(anyList())).thenAnswer(invocation -> created(invocation.getArgument(0)));
+    }
+
+    private MemoryBatchResult created(List<Memory> memories) {
+        chunks.add(new ArrayList<>(memories));
+        MemoryBatchResult result = new MemoryBatchResult();
+        for (int index = 0; index < memories.size(); index++) {
+            Memory memory = memories.get(index);
+            if (titles.add(memory.getTitle())) {
+                result.created(index, memory);
+            } else {
+                result.rejected(index, memory.getTitle(), "Memory title already exists: " + memory.getTitle());
+            }
+        }
+        return result;
+    }
+
+    private static Memory memory(Long id, String title, boolean inStock) {
+        Memory memory = MemoryCreatorUtil.create(title, SIZE, inStock);
+        memory.setId(id);
+        return memory;
+    }
+
+    private static ByteArrayInputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,200 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.exception.MemoryNotCreateException;
+import hellospringboot.memories.exception.MemoryNotFoundException;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryBatchResult;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.repository.MemoryShards;
+import hellospringboot.memories.repository.ShardRoutingDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {"memories.shards.enabled=true",
+        "memories.shards.node-id=1"})
+class ShardedMemoryServiceTest {
+
+    private static final int SHARDS = 3;
+
+    @Autowired
+    private MemoryService service;
+
+    @Autowired
+    private MemoryShards shards;
+
+    @Autowired
+    private ShardRoutingDataSource routing;
+
+    @DynamicPropertySource
+    static void shards(DynamicPropertyRegistry registry) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 1; i < SHARDS; i++) {
+            urls.add("jdbc:h2:mem:shard-" + i + "-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        }
+        registry.add("memories.shards.urls", () -> String.join(",", urls));
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (DataSource shard : routing.getShards()) {
+            // the pools do not auto-commit
+            new TransactionTemplate(new DataSourceTransactionManager(shard))
+                    .executeWithoutResult(status -> new JdbcTemplate(shard).update("delete from memory"));
+        }
+    }
+
+    @Test
+    void create_shouldStoreEachMemoryOnTheShardOfItsId() {
+        List<Memory> created = create(60, 8192);
+
+        Set<Long> ids = new HashSet<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            List<Long> stored = shard(shard).queryForList("select id from memory", Long.class);
+            assertFalse(stored.isEmpty(), "shard " + shard + " is empty");
+            for (Long id : stored) {
+                assertEquals(shard, shards.shardOf(id));
+                assertTrue(id < 1L << 53);
+            }
+            ids.addAll(stored);
+        }
+        assertEquals(created.stream().map(Memory::getId).collect(Collectors.toSet()), ids);
+    }
+
+    @Test
+    void findByIdUpdateAndDelete_shouldReachTheOwningShard() {
+        Memory memory = service.create(MemoryCreatorUtil.create("peixe", 8192));
+        JdbcTemplate owner = shard(shards.shardOf(memory.getId()));
+
+        assertEquals("peixe", service.findById(memory.getId()).getTitle());
+
+        service.update(MemoryCreatorUtil.create("salmão", 8192), memory.getId());
+        assertEquals("salmão", owner.queryForObject("select title from memory where id = ?", String.class,
+                memory.getId()));
+
+        service.delete(memory.getId());
+        assertEquals(0, owner.queryForObject("select count(*) from memory", Integer.class));
+        assertThrows(MemoryNotFoundException.class, () -> service.findById(memory.getId()));
+        assertThrows(MemoryNotFoundException.class, () -> service.delete(memory.getId()));
+    }
+
+    @Test
+    void findAll_shouldMergeEveryShardInIdOrder() {
+        List<Long> ids = create(25, 8192).stream().map(Memory::getId).sorted().collect(Collectors.toList());
+
+        assertEquals(ids, service.findAll().stream().map(Memory::getId).collect(Collectors.toList()));
+
+        List<Long> paged = new ArrayList<>();
+        Long after = null;
+        List<Memory> page;
+        while (!(page = service.findAll(after, 7)).isEmpty()) {
+            assertTrue(page.size() <= 7);
+            page.forEach(memory -> paged.add(memory.getId()));
+            after = page.get(page.size() - 1).getId();
+        }
+        assertEquals(ids, paged);
+    }
+
+    @Test
+    void findBySizeGreaterThanEqualAndInStockIsTrue_shouldMergeInSizeOrder() {
+        int[] sizes = {4096, 1024, 65536, 2048, 16384, 8192, 32768, 512, 131072, 256};
+        for (int i = 0; i < sizes.length; i++) {
+            service.create(MemoryCreatorUtil.create("peixe-" + i, sizes[i], i != 4));
+        }
+
+        List<Integer> found = service.findBySizeGreaterThanEqualAndInStockIsTrue(2048).stream()
+                .map(Memory::getSize).collect(Collectors.toList());
+
+        assertEquals(Arrays.asList(2048, 4096, 8192, 32768, 65536, 131072), found);
+    }
+
+    @Test
+    void titles_shouldStayUniqueAcrossShards() {
+        List<Memory> created = create(SHARDS * 4, 8192);
+        Memory other = created.stream().filter(memory -> shards.shardOf(memory.getId())
+                != shards.shardOf(created.get(0).getId())).findFirst().orElseThrow(AssertionError::new);
+
+        assertThrows(MemoryNotCreateException.class,
+                () -> service.create(MemoryCreatorUtil.create(created.get(0).getTitle(), 4096)));
+        assertThrows(MemoryNotCreateException.class,
+                () -> service.update(MemoryCreatorUtil.create(created.get(0).getTitle(), 4096), other.getId()));
+
+        MemoryBatchResult result = service.createAll(Arrays.asList(MemoryCreatorUtil.create("novo", 4096),
+                MemoryCreatorUtil.create(other.getTitle(), 4096)));
+        assertEquals(1, result.getCreated());
+        assertEquals(1, result.getRejected());
+    }
+
+    @Test
+    void createAll_shouldReportWhatEachShardCommitted_whenATitleIsTakenConcurrently() {
+        // a row the title check cannot see still holds the title on every shard, as if created concurrently
+        for (int shard = 0; shard < SHARDS; shard++) {
+            int target = shard;
+            new TransactionTemplate(new DataSourceTransactionManager(routing.getShards().get(shard)))
+                    .executeWithoutResult(status -> shard(target).update("insert into memory "
+                            + "(id, title, size, in_stock, version, deleted) values (?, 'taken', 8192, true, 0, true)",
+                            target + 1));
+        }
+        List<Memory> batch = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            batch.add(MemoryCreatorUtil.create(i == 5 ? "taken" : "batch-" + i, 8192));
+        }
+
+        MemoryBatchResult result = service.createAll(batch);
+
+        assertEquals(11, result.getCreated());
+        assertEquals(1, result.getRejected());
+        MemoryBatchResult.Item rejected = result.getItems().stream()
+                .filter(item -> item.getStatus() == MemoryBatchResult.Status.REJECTED)
+                .findFirst().orElseThrow(AssertionError::new);
+        assertEquals(5, rejected.getIndex());
+        assertEquals("Memory with title = taken already exists", rejected.getMessage());
+        for (MemoryBatchResult.Item item : result.getItems()) {
+            if (item.getStatus() == MemoryBatchResult.Status.CREATED) {
+                assertEquals(item.getTitle(), service.findById(item.getId()).getTitle());
+            }
+        }
+    }
+
+    @Test
+    void findAllByIdAndStats_shouldCoverEveryShard() {
+        List<Memory> created = create(12, 8192);
+        List<Long> ids = created.stream().map(Memory::getId).collect(Collectors.toList());
+
+        assertEquals(ids, service.findAllById(ids).stream().map(Memory::getId).collect(Collectors.toList()));
+        assertEquals(12, service.stats().getTotal());
+        assertEquals(12, service.deleteAll(ids));
+        assertEquals(0, service.stats().getTotal());
+    }
+
+    private List<Memory> create(int count, int size) {
+        List<Memory> created = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            created.add(service.create(MemoryCreatorUtil.create("peixe-" + i, size)));
+        }
+        return created;
+    }
+
+    private JdbcTemplate shard(int shard) {
+        return new JdbcTemplate(routing.getShards().get(shard));
+    }
+}
@@ -0,0 +1,163 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.model.MemoryPatch;
+import hellospringboot.memories.model.MemorySizeView;
+import hellospringboot.memories.repository.MemoryRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+
+@ExtendWith(MockitoExtension.class)
+class SizeIndexTest {
+
+    @Mock
+    private MemoryRepository repository;
+
+    @Test
+    void isReady_shouldBeFalse_whenDisabled() {
+        SizeIndex index = new SizeIndex(false, repository);
+
+        index.load();
+        index.onChange(MemoryChangedEvent.created(memory(1L, 8192, true)));
+
+        assertFalse(index.isReady());
+        assertEquals(0, index.findBySize(8192).length);
+    }
+
+    @Test
+    void load_shouldIndexInStockIdsBySize() {
+        doReturn(Stream.of(view(3L, 8192), view(1L, 8192), view(2L, 4096))).when(repository).streamInStockSizes();
+        SizeIndex index = new SizeIndex(true, repository);
+
+        index.load();
+
+        assertTrue(index.isReady());
+        assertArrayEquals(new long[]{1L, 3L}, index.findBySize(8192));
+        assertArrayEquals(new long[]{2L, 1L, 3L}, index.findBySizeGreaterThanEqual(4000));
+        assertArrayEquals(new long[]{1L, 3L}, index.findBySizeGreaterThanEqual(8192));
+        assertArrayEquals(new long[0], index.findBySizeGreaterThanEqual(8193));
+    }
+
+    @Test
+    void load_shouldReplayChangesReceivedWhileLoading() {
+        SizeIndex index = new SizeIndex(true, repository);
+        doAnswer(invocation -> {
+            index.onChange(MemoryChangedEvent.deleted(1L));
+            index.onChange(MemoryChangedEvent.created(memory(4L, 8192, true)));
+            return Stream.of(view(1L, 8192), view(2L, 8192));
+        }).when(repository).streamInStockSizes();
+
+        index.load();
+
+        assertArrayEquals(new long[]{2L, 4L}, index.findBySize(8192));
+    }
+
+    @Test
+    void onChange_shouldMoveAndDropIds() {
+        doReturn(Stream.of(view(1L, 8192), view(2L, 8192))).when(repository).streamInStockSizes();
+        SizeIndex index = new SizeIndex(true, repository);
+        index.load();
+
+        index.onChange(MemoryChangedEvent.updated(memory(1L, 4096, true)));
+        index.onChange(MemoryChangedEvent.updated(memory(2L, 8192, false)));
+
+        assertArrayEquals(new long[]{1L}, index.findBySize(4096));
+        assertArrayEquals(new long[0], index.findBySize(8192));
+
+        index.onChange(MemoryChangedEvent.deleted(1L));
+
+        assertArrayEquals(new long[0], index.findBySizeGreaterThanEqual(0));
+    }
+
+    @Test
+    void onChange_shouldApplyPatches() {
+        doReturn(Stream.of(view(1L, 8192), view(2L, 8192))).when(repository).streamInStockSizes();
+        SizeIndex index = new SizeIndex(true, repository);
+        index.load();
+
+        index.onChange(MemoryChangedEvent.patched(1L, new MemoryPatch(null, 4096, null)));
+        index.onChange(MemoryChangedEvent.patched(2L, new MemoryPatch("lula", null, false)));
+        index.onChange(MemoryChangedEvent.patched(3L, new MemoryPatch(null, 2048, null)));
+        index.onChange(MemoryChangedEvent.patched(4L, new MemoryPatch(null, 2048, true)));
+
+        assertArrayEquals(new long[]{4L, 1L}, index.findBySizeGreaterThanEqual(0));
+    }
+
+    @Test
+    void onChange_shouldReadRow_whenPatchRestocksWithoutSize() {
+        doReturn(Stream.empty()).when(repository).streamInStockSizes();
+        doReturn(Optional.of(memory(5L, 1024, true))).when(repository).findById(5L);
+        SizeIndex index = new SizeIndex(true, repository);
+        index.load();
+
+        index.onChange(MemoryChangedEvent.patched(5L, new MemoryPatch(null, null, true)));
+
+        assertArrayEquals(new long[]{5L}, index.findBySize(1024));
+    }
+
+    @Test
+    void onChange_shouldMatchReferenceModel() {
+        doReturn(Stream.empty()).when(repository).streamInStockSizes();
+        SizeIndex index = new SizeIndex(true, repository);
+        index.load();
+        TreeMap<Long, Integer> reference = new TreeMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            long id = 1 + random.nextInt(2_000);
+            int size = 512 * (1 + random.nextInt(16));
+            if (random.nextInt(4) == 0) {
+                index.onChange(MemoryChangedEvent.deleted(id));
+                reference.remove(id);
+            } else {
+                boolean inStock = random.nextBoolean();
+                index.onChange(MemoryChangedEvent.updated(memory(id, size, inStock)));
+                if (inStock) {
+                    reference.put(id, size);
+                } else {
+                    reference.remove(id);
+                }
+            }
+        }
+
+        int from = 512 * 8;
+        TreeMap<Integer, TreeSet<Long>> bySize = new TreeMap<>();
+        reference.forEach((id, size) -> bySize.computeIfAbsent(size, key -> new TreeSet<>()).add(id));
+        long[] expected = bySize.tailMap(from).values().stream().flatMap(TreeSet::stream)
+                .mapToLong(Long::longValue).toArray();
+        assertArrayEquals(expected, index.findBySizeGreaterThanEqual(from));
+    }
+
+    private static Memory memory(Long id, int size, boolean inStock) {
+        Memory memory = MemoryCreatorUtil.create("peixe" + id, size, inStock);
+        memory.setId(id);
+        return memory;
+    }
+
+    private static MemorySizeView view(Long id, int size) {
+        return new MemorySizeView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public int getSize() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryPatch;
+import hellospringboot.memories.model.MemoryStats;
+import hellospringboot.memories.repository.MemoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static hellospringboot.memories.service.MemoryServiceTest.stockCount;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class StockCountersTest {
+
+    @Mock
+    private MemoryRepository repository;
+
+    @Test
+    void load_shouldStartFromGroupedCounts() {
+        doReturn(Arrays.asList(stockCount(8192, true, 3), stockCount(100, false, 2))).when(repository)
+                .countBySizeAndInStock();
+        StockCounters counters = new StockCounters(true, Duration.ofMinutes(5), repository);
+
+        counters.load();
+
+        MemoryStats stats = counters.snapshot();
+        assertTrue(counters.isReady());
+        assertEquals(5, stats.getTotal());
+        assertEquals(3, stats.getInStock());
+        assertEquals(64, stats.getHistogram().get(0).getFrom());
+        assertEquals(127, stats.getHistogram().get(0).getTo());
+    }
+
+    @Test
+    void onChange_shouldCountChangesWithKnownState() {
+        StockCounters counters = loaded();
+
+        counters.onChange(MemoryChangedEvent.created(memory(1L, 8192, true)));
+        counters.onChange(MemoryChangedEvent.created(memory(2L, 8192, true)));
+        counters.onChange(MemoryChangedEvent.updated(memory(1L, 8192, true), memory(1L, 8192, true)));
+        counters.onChange(MemoryChangedEvent.patched(2L, memory(2L, 8192, true), new MemoryPatch(null, 4096, false)));
+        counters.onChange(MemoryChangedEvent.patched(2L, new MemoryPatch("lula", null, null)));
+        counters.onChange(MemoryChangedEvent.deleted(1L, memory(1L, 8192, true)));
+
+        MemoryStats stats = counters.snapshot();
+        assertEquals(1, stats.getTotal());
+        assertEquals(1, stats.getOutOfStock());
+        assertEquals(4096, stats.getSizes().get(0).getSize());
+
+        counters.reconcileIfNeeded();
+        verify(repository, times(1)).countBySizeAndInStock();
+    }
+
+    @Test
+    void reconcileIfNeeded_shouldCorrectChangesWithoutPreviousState() {
+        StockCounters counters = loaded();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        counters.bindTo(registry);
+        counters.onChange(MemoryChangedEvent.created(memory(1L, 8192, true)));
+        counters.onChange(MemoryChangedEvent.created(memory(2L, 8192, true)));
+
+        counters.onChange(MemoryChangedEvent.deleted(1L));
+        doReturn(Collections.singletonList(stockCount(8192, true, 1))).when(repository).countBySizeAndInStock();
+        counters.reconcileIfNeeded();
+
+        assertEquals(1, counters.snapshot().getInStock());
+        assertEquals(1, registry.get("memories.stats.drift").functionCounter().count());
+    }
+
+    @Test
+    void onChange_shouldIgnoreChanges_whenDisabled() {
+        StockCounters counters = new StockCounters(false, Duration.ofMinutes(5), repository);
+
+        counters.load();
+        counters.onChange(MemoryChangedEvent.created(memory(1L, 8192, true)));
+
+        assertFalse(counters.isReady());
+        assertEquals(0, counters.snapshot().getTotal());
+    }
+
+    private StockCounters loaded() {
+        doReturn(Collections.emptyList()).when(repository).countBySizeAndInStock();
+        StockCounters counters = new StockCounters(true, Duration.ofMinutes(5), repository);
+        counters.load();
+        return counters;
+    }
+
+    private static Memory memory(Long id, int size, boolean inStock) {
+        Memory memory = new Memory("memory " + id, size, inStock);
+        memory.setId(id);
+        return memory;
+    }
+}
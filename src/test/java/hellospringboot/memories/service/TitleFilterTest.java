@@ -0,0 +1,67 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.repository.MemoryRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class TitleFilterTest {
+
+    @Mock
+    private MemoryRepository repository;
+
+    @Test
+    void mayExist_shouldAlwaysBeFalse_whenDisabled() {
+        TitleFilter filter = new TitleFilter(false, 100, 0.01, repository);
+
+        filter.load();
+        filter.add("peixe");
+
+        assertFalse(filter.mayExist("peixe"));
+        verify(repository, never()).streamTitles();
+    }
+
+    @Test
+    void mayExist_shouldBeTrue_untilLoaded() {
+        TitleFilter filter = new TitleFilter(true, 100, 0.01, repository);
+
+        assertTrue(filter.mayExist("peixe"));
+    }
+
+    @Test
+    void mayExist_shouldFindLoadedAndAddedTitles() {
+        doReturn(Stream.of("peixe", "salmão")).when(repository).streamTitles();
+        TitleFilter filter = new TitleFilter(true, 100, 0.01, repository);
+
+        filter.load();
+        filter.add("lula");
+
+        assertTrue(filter.mayExist("peixe"));
+        assertTrue(filter.mayExist("salmão"));
+        assertTrue(filter.mayExist("lula"));
+        assertFalse(filter.mayExist(null));
+    }
+
+    @Test
+    void mayExist_shouldKeepFalsePositivesNearConfiguredRate() {
+        int titles = 10_000;
+        doReturn(IntStream.range(0, titles).mapToObj(i -> "peixe" + i)).when(repository).streamTitles();
+        TitleFilter filter = new TitleFilter(true, titles, 0.01, repository);
+
+        filter.load();
+
+        long falsePositives = IntStream.range(0, titles).filter(i -> filter.mayExist("salmão" + i)).count();
+        assertTrue(falsePositives < titles * 0.03, "false positives: " + falsePositives);
+        assertTrue(IntStream.range(0, titles).allMatch(i -> filter.mayExist("peixe" + i)));
+    }
+}
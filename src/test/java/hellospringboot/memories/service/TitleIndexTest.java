@@ -0,0 +1,153 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import hellospringboot.memories.repository.MemoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+@TestPropertySource({"classpath:application-test.properties"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class TitleIndexTest {
+
+    private static final int SIZE = 8192;
+
+    private static final List<String> TITLES = Arrays.asList("peixe", "peixe-espada", "salmão", "salmão defumado",
+            "lula", "polvo", "pescada", "Peixe Grande", "pe", "aaaa", "aa", "100%_off", "a_b", "x");
+
+    @Autowired
+    private MemoryRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAllInBatch();
+    }
+
+    @Test
+    void search_shouldMatchFindByTitleContaining() {
+        TITLES.forEach(title -> repository.save(MemoryCreatorUtil.create(title, SIZE)));
+        TitleIndex index = new TitleIndex(true, false, repository);
+        index.load();
+
+        List<String> queries = Arrays.asList("", "p", "pe", "pei", "peixe", "eixe", "salmão", "mão d", "aa", "aaa",
+                "aaaa", "aaaaa", "%", "_", "0%_", "Pe", "zzz", "lul", "o");
+        for (String query : queries) {
+            assertArrayEquals(ids(repository.findByTitleContaining(query)), index.search(query, false, Integer.MAX_VALUE),
+                    "query: " + query);
+        }
+    }
+
+    @Test
+    void search_shouldMatchRepository_afterChanges() {
+        List<Memory> memories = new ArrayList<>();
+        TITLES.forEach(title -> memories.add(repository.save(MemoryCreatorUtil.create(title, SIZE))));
+        TitleIndex index = new TitleIndex(true, false, repository);
+        index.load();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 50; i++) {
+            Memory memory = memories.get(random.nextInt(memories.size()));
+            if (repository.existsById(memory.getId()) && random.nextBoolean()) {
+                repository.deleteById(memory.getId());
+                index.onChange(MemoryChangedEvent.deleted(memory.getId()));
+            } else {
+                memory.setTitle(TITLES.get(random.nextInt(TITLES.size())) + i);
+                Memory saved = repository.save(memory);
+                index.onChange(MemoryChangedEvent.updated(saved));
+            }
+        }
+
+        for (String query : Arrays.asList("pe", "peixe", "salm", "1", "a", "aaa")) {
+            assertArrayEquals(ids(repository.findByTitleContaining(query)), index.search(query, false, Integer.MAX_VALUE),
+                    "query: " + query);
+        }
+    }
+
+    @Test
+    void search_shouldHonourPrefixAndLimit() {
+        TITLES.forEach(title -> repository.save(MemoryCreatorUtil.create(title, SIZE)));
+        TitleIndex index = new TitleIndex(true, false, repository);
+        index.load();
+
+        long[] prefixed = index.search("pei", true, Integer.MAX_VALUE);
+        long[] limited = index.search("pe", false, 2);
+
+        assertArrayEquals(new long[]{repository.findByTitle("peixe").getId(), repository.findByTitle("peixe-espada").getId()},
+                prefixed);
+        assertEquals(2, limited.length);
+        assertEquals(repository.findByTitle("peixe").getId(), limited[0]);
+    }
+
+    @Test
+    void search_shouldIgnoreCase_whenConfigured() {
+        TITLES.forEach(title -> repository.save(MemoryCreatorUtil.create(title, SIZE)));
+        TitleIndex index = new TitleIndex(true, true, repository);
+        index.load();
+
+        assertEquals(3, index.search("PEIXE", false, Integer.MAX_VALUE).length);
+        assertArrayEquals(new long[]{repository.findByTitle("salmão").getId(),
+                repository.findByTitle("salmão defumado").getId()}, index.search("SALMAO", true, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void postingList_shouldKeepIdsSortedAcrossAddsAndRemoves() {
+        TitleIndex.PostingList list = new TitleIndex.PostingList();
+
+        list.add(5L);
+        list.add(300L);
+        list.add(1L << 40);
+        list.add(42L);
+        list.add(42L);
+        list.remove(300L);
+        list.remove(7L);
+
+        assertArrayEquals(new long[]{5L, 42L, 1L << 40}, list.toArray());
+        assertEquals(3, list.size());
+    }
+
+    @Test
+    void postingList_shouldMatchASortedSet_acrossBlocks() {
+        TitleIndex.PostingList list = new TitleIndex.PostingList();
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(11);
+
+        for (long id = 1; id <= 10 * TitleIndex.PostingList.BLOCK; id++) {
+            list.add(id);
+            expected.add(id);
+        }
+        for (int i = 0; i < 5000; i++) {
+            long id = 1 + random.nextInt(12 * TitleIndex.PostingList.BLOCK);
+            if (random.nextBoolean()) {
+                list.add(id);
+                expected.add(id);
+            } else {
+                list.remove(id);
+                expected.remove(id);
+            }
+        }
+
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), list.toArray());
+        assertEquals(expected.size(), list.size());
+        assertTrue(list.blocks() > 1);
+    }
+
+    private static long[] ids(List<Memory> memories) {
+        return memories.stream().mapToLong(Memory::getId).sorted().toArray();
+    }
+}
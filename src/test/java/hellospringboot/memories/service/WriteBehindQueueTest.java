@@ -0,0 +1,219 @@
+package hellospringboot.memories.service;
+
+import hellospringboot.memories.exception.MemoryBusyException;
+import hellospringboot.memories.exception.MemoryNotCreateException;
+import hellospringboot.memories.model.Memory;
+import hellospringboot.memories.model.MemoryBatchResult;
+import hellospringboot.memories.model.MemoryCreatorUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class WriteBehindQueueTest {
+
+    @Mock
+    private MemoryService service;
+
+    private WriteBehindQueue queue;
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.stop();
+        }
+    }
+
+    @Test
+    void submit_shouldGroupCreatesIntoOneBatch() {
+        List<List<Memory>> batches = recordBatches();
+        queue = start(3, Duration.ofSeconds(5));
+
+        List<CompletableFuture<Memory>> futures = new ArrayList<>();
+        for (String title : Arrays.asList("peixe", "salmão", "lula")) {
+            futures.add(queue.submit(MemoryCreatorUtil.create(title, 8192)));
+        }
+
+        assertEquals("lula", futures.get(2).join().getTitle());
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+    }
+
+    @Test
+    void submit_shouldFlushPartialBatch_afterMaxDelay() {
+        recordBatches();
+        queue = start(100, Duration.ofMillis(10));
+
+        Memory memory = queue.submit(MemoryCreatorUtil.create("peixe", 8192)).orTimeout(5, TimeUnit.SECONDS).join();
+
+        assertEquals("peixe", memory.getTitle());
+    }
+
+    @Test
+    void create_shouldThrowsMemoryNotCreateException_whenRejectedInBatch() {
+        doAnswer(invocation -> {
+            List<Memory> memories = invocation.getArgument(0);
+            MemoryBatchResult result = new MemoryBatchResult();
+            result.rejected(0, memories.get(0).getTitle(), "Memory with title = peixe already exists");
+            return result;
+        }).when(service).createAll(any());
+        queue = start(1, Duration.ZERO);
+
+        MemoryNotCreateException exception = assertThrows(MemoryNotCreateException.class,
+                () -> queue.create(MemoryCreatorUtil.create("peixe", 8192)));
+
+        assertEquals("Memory with title = peixe already exists", exception.getMessage());
+    }
+
+    @Test
+    void flush_shouldRetryAlone_whenBatchRolledBack() {
+        doThrow(new MemoryNotCreateException("Batch rejected"))
+                .doAnswer(invocation -> created(invocation.getArgument(0)))
+                .when(service).createAll(any());
+        queue = start(2, Duration.ofSeconds(5));
+
+        CompletableFuture<Memory> first = queue.submit(MemoryCreatorUtil.create("peixe", 8192));
+        CompletableFuture<Memory> second = queue.submit(MemoryCreatorUtil.create("salmão", 8192));
+
+        assertEquals("peixe", first.join().getTitle());
+        assertEquals("salmão", second.join().getTitle());
+        verify(service, times(3)).createAll(any());
+    }
+
+    @Test
+    void flush_shouldFailTheBatch_andKeepWriting_whenCreateAllThrowsAnError() {
+        doThrow(new LinkageError("Broken class"))
+                .doAnswer(invocation -> created(invocation.getArgument(0)))
+                .when(service).createAll(any());
+        queue = start(1, Duration.ZERO);
+
+        CompletableFuture<Memory> failed = queue.submit(MemoryCreatorUtil.create("peixe", 8192));
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> failed.orTimeout(5, TimeUnit.SECONDS).join());
+
+        assertTrue(exception.getCause() instanceof LinkageError);
+        assertEquals("salmão", queue.create(MemoryCreatorUtil.create("salmão", 8192)).getTitle());
+    }
+
+    @Test
+    void create_shouldGiveUp_whenTheBatchDoesNotCommitInTime() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return created(invocation.getArgument(0));
+        }).when(service).createAll(any());
+        queue = new WriteBehindQueue(true, 10, 1, Duration.ZERO, Duration.ofSeconds(5), Duration.ofMillis(500),
+                provider());
+        queue.start();
+
+        MemoryBusyException inFlight = assertThrows(MemoryBusyException.class,
+                () -> queue.create(MemoryCreatorUtil.create("peixe", 8192)));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        MemoryBusyException queued = assertThrows(MemoryBusyException.class,
+                () -> queue.create(MemoryCreatorUtil.create("salmão", 8192)));
+
+        assertTrue(inFlight.getMessage().contains("outcome is unknown"));
+        assertTrue(queued.getMessage().contains("not written"));
+        release.countDown();
+    }
+
+    @Test
+    void submit_shouldRejectWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return created(invocation.getArgument(0));
+        }).when(service).createAll(any());
+        queue = new WriteBehindQueue(true, 1, 1, Duration.ZERO, Duration.ofSeconds(5), Duration.ofSeconds(5),
+                provider());
+        queue.start();
+
+        CompletableFuture<Memory> first = queue.submit(MemoryCreatorUtil.create("peixe", 8192));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Memory> second = queue.submit(MemoryCreatorUtil.create("salmão", 8192));
+
+        assertThrows(MemoryBusyException.class, () -> queue.submit(MemoryCreatorUtil.create("lula", 8192)));
+
+        release.countDown();
+        first.join();
+        second.join();
+    }
+
+    @Test
+    void submit_shouldReject_whenNotStarted() {
+        queue = new WriteBehindQueue(true, 10, 10, Duration.ZERO, Duration.ZERO, Duration.ZERO, provider());
+
+        assertThrows(MemoryBusyException.class, () -> queue.submit(MemoryCreatorUtil.create("peixe", 8192)));
+    }
+
+    @Test
+    void stop_shouldDrainQueuedCreates() {
+        recordBatches();
+        queue = start(1000, Duration.ofMinutes(1));
+        List<CompletableFuture<Memory>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(queue.submit(MemoryCreatorUtil.create("memory " + i, 8192)));
+        }
+
+        queue.stop();
+
+        futures.forEach(future -> assertTrue(future.isDone() && !future.isCompletedExceptionally()));
+        assertThrows(MemoryBusyException.class, () -> queue.submit(MemoryCreatorUtil.create("peixe", 8192)));
+    }
+
+    private WriteBehindQueue start(int batchSize, Duration maxDelay) {
+        WriteBehindQueue queue = new WriteBehindQueue(true, 1000, batchSize, maxDelay, Duration.ofSeconds(5),
+                Duration.ofSeconds(5), provider());
+        queue.start();
+        return queue;
+    }
+
+    private List<List<Memory>> recordBatches() {
+        List<List<Memory>> batches = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            List<Memory> memories = invocation.getArgument(0);
+            batches.add(new ArrayList<>(memories));
+            return created(memories);
+        }).when(service).createAll(any());
+        return batches;
+    }
+
+    private ObjectProvider<MemoryService> provider() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("memoryService", service);
+        return beanFactory.getBeanProvider(MemoryService.class);
+    }
+
+    private static MemoryBatchResult created(List<Memory> memories) {
+        MemoryBatchResult result = new MemoryBatchResult();
+        for (int index = 0; index < memories.size(); index++) {
+            result.created(index, memories.get(index));
+        }
+        return result;
+    }
+}